@@ -17,20 +17,74 @@
 
 package com.borasoftware.balau;
 
+import com.borasoftware.balau.builder.CompilerCache;
+import com.borasoftware.balau.builder.ConfigureFingerprint;
+import com.borasoftware.balau.builder.DiagnosticsParser;
+import com.borasoftware.balau.builder.Digests;
+import com.borasoftware.balau.builder.FileStateIndex;
+import com.borasoftware.balau.builder.Generators;
+import com.borasoftware.balau.builder.JobServer;
+import com.borasoftware.balau.builder.LaunchContext;
+import com.borasoftware.balau.builder.Make;
+import com.borasoftware.balau.builder.NinjaLog;
+import com.borasoftware.balau.builder.ProcessOutput;
+import com.borasoftware.balau.builder.Utilities;
+import com.borasoftware.balau.cleaner.SoftCleanSelector;
+import com.borasoftware.balau.fileapi.FileApi;
+import com.borasoftware.balau.fileapi.FileApiReply;
+import com.borasoftware.balau.fileapi.Target;
+import com.borasoftware.balau.listener.BuildListeners;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.eclipse.aether.SessionData;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystem;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Abstract based class of all the CMake mojos.
  *
+ * The mojos are thread safe for parallel Maven builds. Maven creates a mojo instance per
+ * execution, so the instance fields are confined to one thread. State shared between
+ * modules (the job server, the background clean threads) is synchronized, and the
+ * builder helpers copy the supplied environment instead of modifying it.
+ *
  * @author Nicholas Smethurst
  */
-abstract class AbstractCMakeMojo extends AbstractMojo {
+abstract class AbstractCMakeMojo extends AbstractMojo implements Cloneable {
 	@Parameter(defaultValue = "${project.build.directory}", required = true)
 	File projectBuildDirectory;
 
@@ -42,11 +96,23 @@ abstract class AbstractCMakeMojo extends AbstractMojo {
 	@Parameter(defaultValue = "${project.build.directory}/cmake")
 	File cmakeBinaryDirectory;
 
-	// Explicitly specify the generator to be used in the configure goal.
+	// Explicitly specify the generator to be used in the configure goal, or "auto" to select the fastest
+	// generator whose build tool is on the path (Ninja unless a calibration selects otherwise).
 	// Default is to use default generator on Unix like platforms and "NMake Makefiles" on Windows platforms.
 	@Parameter
 	String generator;
 
+	// Benchmark the available generators once per machine when the generator is auto, caching the
+	// result in ~/.cmake-maven-plugin/generator-calibration.properties.
+	@Parameter(defaultValue = "false")
+	boolean generatorCalibration;
+
+	// The build configurations (e.g. Debug and Release), each configured and built concurrently in a
+	// subdirectory of the binary directory. Multi-configuration generators configure all the configurations
+	// in the binary directory in a single CMake run.
+	@Parameter
+	List<String> configurations;
+
 	@Parameter(defaultValue = "false")
 	Boolean verbose;
 
@@ -66,6 +132,18 @@ abstract class AbstractCMakeMojo extends AbstractMojo {
 	@Parameter(defaultValue = "0")
 	int concurrency;
 
+	// The number of threads used to delete the binary directory (default to the number of cores, 1 deletes sequentially).
+	@Parameter(defaultValue = "0")
+	int cleanConcurrency;
+
+	// Rename the binary directory to a tombstone and delete it in a background thread.
+	@Parameter(defaultValue = "false")
+	boolean backgroundClean;
+
+	// Delete object files, libraries and executables only, keeping the configure state and tool caches.
+	@Parameter(defaultValue = "false")
+	boolean softClean;
+
 	// Attach Make targets to the Maven compile phase.
 	// If no targets are defined, Make will be run with its default target.
 	@Parameter
@@ -76,6 +154,24 @@ abstract class AbstractCMakeMojo extends AbstractMojo {
 	@Parameter
 	List<String> testCompileTargets;
 
+	// Build all the compile or test-compile targets in a single build invocation (requires CMake 3.15).
+	// Older CMake versions fall back to building each target in turn.
+	@Parameter(defaultValue = "true")
+	boolean combineTargets = true;
+
+	// Share a single pool of build jobs between all the modules built concurrently in the reactor.
+	@Parameter(defaultValue = "true")
+	boolean shareJobs = true;
+
+	// The size of the shared pool of build jobs (default to the number of cores).
+	@Parameter(defaultValue = "0")
+	int reactorConcurrency;
+
+	// Expose the shared pool of build jobs to the build tool as a GNU make jobserver FIFO.
+	// Requires a POSIX platform and a jobserver aware build tool (GNU Make 4.4, Ninja 1.13).
+	@Parameter(defaultValue = "false")
+	boolean jobServerFifo;
+
 	// Additional command line definitions specified when running CMake.
 	@Parameter
 	Map<String, String> cmakeDefines;
@@ -84,6 +180,133 @@ abstract class AbstractCMakeMojo extends AbstractMojo {
 	@Parameter
 	Map<String, String> environmentVariables;
 
+	// The compiler cache used as the compiler launcher: none, auto, ccache, sccache or the path of the executable.
+	@Parameter(defaultValue = "none")
+	String compilerCache;
+
+	// The compiler cache directory (default to the compiler cache's own default).
+	@Parameter
+	File compilerCacheDirectory;
+
+	// The maximum compiler cache size, e.g. 5G (default to the compiler cache's own default).
+	@Parameter
+	String compilerCacheMaxSize;
+
+	// The languages launched through the compiler cache (default to C and CXX).
+	@Parameter
+	List<String> compilerCacheLanguages;
+
+	// Query the CMake File API (CMake 3.14 and later) for the targets, cache entries and toolchains of the build.
+	@Parameter(defaultValue = "true")
+	boolean fileApi = true;
+
+	// Restore the compile outputs from a local content-addressed cache when the sources and
+	// configuration are unchanged, and store them after a successful build otherwise.
+	@Parameter(defaultValue = "false")
+	boolean outputCache;
+
+	// The output cache directory (default to ~/.cmake-maven-plugin/output-cache).
+	@Parameter
+	File outputCacheDirectory;
+
+	// The maximum output cache size in MiB, beyond which the least recently used entries are evicted.
+	@Parameter(defaultValue = "10240")
+	long outputCacheMaxSize = 10240;
+
+	// Skip the build tool when a scan finds that the sources, configuration and outputs are unchanged
+	// since the last successful build of the same targets.
+	@Parameter(defaultValue = "false")
+	boolean skipUnchangedBuild;
+
+	// Store content hashes in the build index, so that files that are touched without changes do not
+	// cause the build tool to be run.
+	@Parameter(defaultValue = "false")
+	boolean buildIndexHashes;
+
+	// Skip running the CTest tests.
+	@Parameter(property = "skipTests", defaultValue = "false")
+	boolean skipTests;
+
+	// Do not fail the build when tests fail.
+	@Parameter(property = "maven.test.failure.ignore", defaultValue = "false")
+	boolean testFailureIgnore;
+
+	// Additional command line options specified when running CTest, e.g. -L or --output-on-failure.
+	@Parameter
+	List<String> ctestOptions;
+
+	// The directory of the Surefire compatible test reports (default to ${project.build.directory}/surefire-reports).
+	@Parameter
+	File testReportsDirectory;
+
+	// The zero based index of the test shard run by this build.
+	@Parameter(property = "cmake.shardIndex", defaultValue = "0")
+	int shardIndex;
+
+	// The number of test shards, balanced by the costs of the shard cost file (1 runs all tests).
+	@Parameter(property = "cmake.shardCount", defaultValue = "1")
+	int shardCount = 1;
+
+	// A CTestCostData.txt file shared by all the test shards, from which the shards are balanced
+	// (default to balancing the shards by test count). The file must not change between the shard
+	// runs, so it cannot be the cost data that CTest rewrites in the binary directory.
+	@Parameter(property = "cmake.shardCostFile")
+	File shardCostFile;
+
+	// The quiet period in milliseconds that ends a burst of source changes in the watch goal.
+	@Parameter(defaultValue = "300")
+	long watchDebounce = 300;
+
+	// Glob patterns of the cached outputs relative to the binary directory (default to libraries and executables).
+	@Parameter
+	List<String> outputCachePaths;
+
+	// Skip the configure goal when the configure fingerprint is unchanged and the CMake cache exists.
+	@Parameter(defaultValue = "true")
+	boolean skipUnchangedConfigure = true;
+
+	// The charset used to decode the output of CMake and the build tool (default to the platform charset).
+	@Parameter
+	String outputEncoding;
+
+	// Log the error stream of CMake and the build tool separately (at warning level),
+	// instead of merging it into the output stream.
+	@Parameter(defaultValue = "false")
+	boolean separateErrorStream;
+
+	// The output mode of CMake, the build tool and CTest: "full" logs every line, "condensed"
+	// collapses progress lines into periodic summary lines and writes the complete output to
+	// a log file in the binary directory.
+	@Parameter(property = "cmake.outputMode", defaultValue = "full")
+	String outputMode = "full";
+
+	// The minimum interval in milliseconds between the progress summary lines of the condensed output mode.
+	@Parameter(defaultValue = "10000")
+	long outputSummaryInterval = 10000;
+
+	// The number of last output lines of a failed process included in the failure message and report.
+	@Parameter(defaultValue = "50")
+	int failureContextLines = 50;
+
+	// The number of first error lines of a failed process included in the failure message and report.
+	@Parameter(defaultValue = "20")
+	int failureContextErrors = 20;
+
+	// Fail the compile and test-compile goals when the number of unique compiler warnings exceeds
+	// this threshold (a negative value disables the check).
+	@Parameter(defaultValue = "-1")
+	int maxWarnings = -1;
+
+	// Analyse the Ninja build log after the compile and test-compile goals (Ninja generators only),
+	// writing the critical path, slowest steps and parallelism utilisation to the project build directory.
+	@Parameter(defaultValue = "true")
+	boolean ninjaReport = true;
+
+	// Fully qualified class names of build listeners to notify of build events, in addition
+	// to those registered via the ServiceLoader mechanism in the plugin's dependencies.
+	@Parameter
+	List<String> buildListeners;
+
 	// Optional path to CMake binary.
 	@Parameter
 	String cmakePath;
@@ -92,9 +315,879 @@ abstract class AbstractCMakeMojo extends AbstractMojo {
 	@Parameter
 	List<String> makeOptions;
 
+	@Parameter(defaultValue = "${session}", readonly = true)
+	MavenSession session;
+
+	private static final int NINJA_REPORT_LOGGED_EDGES = 5;
+	private static final int NINJA_REPORT_LISTED_EDGES = 50;
+
+	// The job server shared by the JVM when no Maven session is available.
+	private static JobServer sharedJobServer;
+
+	// The launch contexts shared by the JVM when no Maven session is available.
+	private static final Map<String, Object> sharedLaunchContexts = new ConcurrentHashMap<>();
+
+	// Intermediate outputs that are not cached by default.
+	private static final Set<String> INTERMEDIATE_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		"o", "obj", "gch", "pch", "ilk"
+	)));
+
+	// The build listeners, loaded on first use.
+	private BuildListeners listeners;
+
+	private CompilerCache compilerCacheInstance;
+
+	private boolean compilerCacheDetected;
+
+	// The configuration built by a per-configuration copy of the mojo (null for the default configuration).
+	String buildConfiguration;
+
+	// True if the mojo is a per-configuration copy, which executes the goal itself.
+	private boolean configurationCopy;
+
+	// The share of the build jobs of a per-configuration copy built concurrently with the other
+	// configurations (zero to use the concurrency). Unlike the concurrency, one means one job.
+	private int configurationJobs;
+
 	void checkParameters() throws MojoExecutionException {
 		if (projectBuildDirectory == null || projectBuildDirectory.toString().isEmpty()) {
 			throw new MojoExecutionException("Defective system - ${project.build.directory} is not available.");
 		}
 	}
+
+	//
+	// Execute the goal for each of the configurations, concurrently when each configuration has
+	// its own binary directory. Returns false if no configurations are specified, in which case
+	// the caller executes the goal for the single configuration of the binary directory.
+	//
+	boolean executeConfigurations(boolean configure) throws MojoExecutionException {
+		if (configurationCopy || configurations == null || configurations.isEmpty()) {
+			return false;
+		}
+
+		final List<String> names = new ArrayList<>(new LinkedHashSet<>(getConfigurationNames()));
+		final Path binDirectory = Utilities.getCMakeBinaryDirectory(projectBuildDirectory, cmakeBinaryDirectory);
+		final Map<String, String> failures = new LinkedHashMap<>();
+
+		if (Utilities.isMultiConfigGenerator(generator)) {
+			if (configure) {
+				// A single CMake run generates the build files of all the configurations.
+				final StringBuilder types = new StringBuilder();
+
+				for (String name : names) {
+					types.append(types.length() > 0 ? ";" : "").append(name);
+				}
+
+				executeCopy(copyForConfiguration(null, "CMAKE_CONFIGURATION_TYPES", types.toString(), binDirectory, 0));
+				return true;
+			}
+
+			// The configurations share the state of the build tool, so they are built in turn with all the jobs.
+			for (String name : names) {
+				try {
+					executeCopy(copyForConfiguration(name, "CMAKE_BUILD_TYPE", name, binDirectory, 0));
+				} catch (MojoExecutionException e) {
+					failures.put(name, e.getMessage());
+				}
+			}
+		} else {
+			executeConcurrently(names, binDirectory, failures);
+		}
+
+		if (!failures.isEmpty()) {
+			for (Map.Entry<String, String> failure : failures.entrySet()) {
+				getLog().error("Configuration " + failure.getKey() + " failed: " + failure.getValue());
+			}
+
+			throw new MojoExecutionException(
+				"Failed configurations: " + failures.keySet() + " (" + (names.size() - failures.size())
+				+ " of " + names.size() + " configurations succeeded)."
+			);
+		}
+
+		return true;
+	}
+
+	private void executeConcurrently(List<String> names, Path binDirectory, Map<String, String> failures)
+		throws MojoExecutionException {
+		final int[] shares = Utilities.divideConcurrency(concurrency, names.size());
+		final Map<String, Future<Void>> futures = new LinkedHashMap<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(names.size(), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, "cmake-maven-plugin configuration " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try {
+			for (int i = 0; i < names.size(); i++) {
+				final String name = names.get(i);
+				final AbstractCMakeMojo copy = copyForConfiguration(
+					name, "CMAKE_BUILD_TYPE", name, binDirectory.resolve(name), shares[i]
+				);
+
+				getLog().info("Executing configuration " + name + " with " + shares[i] + " jobs.");
+
+				futures.put(name, executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws MojoExecutionException {
+						executeCopy(copy);
+						return null;
+					}
+				}));
+			}
+
+			for (Map.Entry<String, Future<Void>> future : futures.entrySet()) {
+				try {
+					future.getValue().get();
+				} catch (ExecutionException e) {
+					final Throwable cause = e.getCause();
+					failures.put(future.getKey(), cause.getMessage() != null ? cause.getMessage() : cause.toString());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted whilst building the configurations.", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	//
+	// Copy the mojo for the specified configuration, setting the define that selects it.
+	// The copy requests the specified number of jobs, or the concurrency if it is zero.
+	//
+	AbstractCMakeMojo copyForConfiguration(String name,
+	                                               String define,
+	                                               String value,
+	                                               Path binDirectory,
+	                                               int jobs) throws MojoExecutionException {
+		final AbstractCMakeMojo copy;
+
+		try {
+			copy = (AbstractCMakeMojo) clone();
+		} catch (CloneNotSupportedException e) {
+			throw new MojoExecutionException("Cannot copy the mojo for configuration " + name + ".", e);
+		}
+
+		copy.configurationCopy = true;
+		copy.buildConfiguration = name;
+		copy.cmakeBinaryDirectory = binDirectory.toFile();
+		copy.configurationJobs = jobs;
+		copy.cmakeDefines = new LinkedHashMap<>();
+
+		if (cmakeDefines != null) {
+			copy.cmakeDefines.putAll(cmakeDefines);
+		}
+
+		copy.cmakeDefines.put(define, value);
+
+		// The copies share the listener instances, as listeners are thread safe (see BuildListener).
+		copy.listeners = getBuildListeners();
+		copy.setLog(new PrefixedLog(getLog(), "[" + (name != null ? name : value) + "] "));
+		return copy;
+	}
+
+	private static void executeCopy(AbstractCMakeMojo copy) throws MojoExecutionException {
+		try {
+			copy.execute();
+		} catch (MojoFailureException e) {
+			throw new MojoExecutionException(e.getMessage(), e);
+		}
+	}
+
+	private List<String> getConfigurationNames() throws MojoExecutionException {
+		final List<String> names = new ArrayList<>();
+
+		for (String configuration : configurations) {
+			if (configuration != null && !configuration.trim().isEmpty()) {
+				names.add(configuration.trim());
+			}
+		}
+
+		if (names.isEmpty()) {
+			throw new MojoExecutionException("No configuration names are specified in the configurations parameter.");
+		}
+
+		return names;
+	}
+
+	//
+	// Build the supplied targets with jobs leased from the shared pool, writing a summary
+	// of the compiler diagnostics to the project build directory.
+	//
+	void build(List<String> targets, String goal) throws MojoExecutionException {
+		final Path binDirectory = Utilities.getCMakeBinaryDirectory(projectBuildDirectory, cmakeBinaryDirectory);
+		final Map<String, String> environment = getEnvironmentVariables();
+
+		// Configurations sharing a binary directory have separate reports and build indexes.
+		final String name = buildConfiguration != null ? goal + "-" + buildConfiguration : goal;
+		final Path indexFile = binDirectory.resolve("cmake-maven-plugin-" + name + ".index");
+		final String indexKey = Digests.digest(
+			targets + "\n" + makeOptions + "\n" + Utilities.expandEnvironment(environment) + "\n" + cmakePath
+		);
+
+		final List<FileStateIndex.Entry> inputs = skipUnchangedBuild ? scanInputs(binDirectory, targets) : null;
+
+		if (inputs != null && isBuildUnchanged(indexFile, indexKey, inputs, binDirectory, targets)) {
+			getLog().info("Build is skipped (no changes since the last successful build).");
+			return;
+		}
+
+		final ProcessOutput output = createProcessOutput(binDirectory, name);
+		final DiagnosticsParser diagnostics = new DiagnosticsParser();
+
+		output.addConsumer(diagnostics);
+
+		final JobServer.Lease lease = acquireJobs();
+		final int jobs = lease.getConcurrency() > 0 ? lease.getConcurrency() : Utilities.getConcurrency(reactorConcurrency);
+		final boolean ninja = ninjaReport && isNinjaBuild(binDirectory);
+		final NinjaLog.Position ninjaLogPosition = ninja ? NinjaLog.mark(binDirectory) : null;
+		final CompilerCache cache = getCompilerCache();
+		final LaunchContext context = getLaunchContext(environment);
+		final CompilerCache.Stats cacheStatsBefore = cache != null
+			? cache.getStats(getLog(), binDirectory, context)
+			: null;
+		final long start = System.nanoTime();
+
+		try {
+			Make.runMakeTargets(
+				  output
+				, lease
+				, binDirectory
+				, buildConfiguration
+				, targets
+				, makeOptions
+				, context.withEnvironment(lease.getEnvironment(null))
+				, combineTargets
+			);
+		} finally {
+			releaseJobs(lease);
+			writeDiagnosticsSummary(diagnostics, name);
+		}
+
+		if (cacheStatsBefore != null) {
+			logCompilerCacheStats(cache, cacheStatsBefore, binDirectory, context, jobs, System.nanoTime() - start);
+		}
+
+		if (ninja) {
+			writeNinjaReport(binDirectory, ninjaLogPosition, jobs, name);
+		}
+
+		if (maxWarnings >= 0 && diagnostics.getCount(DiagnosticsParser.WARNING) > maxWarnings) {
+			throw new MojoExecutionException(
+				"Build produced " + diagnostics.getCount(DiagnosticsParser.WARNING)
+				+ " warnings, which exceeds the maximum of " + maxWarnings + "."
+			);
+		}
+
+		// Only a build that passed every check is recorded as successful.
+		if (inputs != null) {
+			storeBuildIndex(indexFile, indexKey, inputs, binDirectory, targets);
+		}
+	}
+
+	//
+	// Scan the sources and the configure state before the build, so that changes made
+	// during the build are detected by the next build. Returns null if the scan failed
+	// or the inputs outside of the source directory could not be determined.
+	//
+	private List<FileStateIndex.Entry> scanInputs(Path binDirectory, List<String> targets) throws MojoExecutionException {
+		final Path srcDirectory = Utilities.getCMakeSourceDirectory(projectBuildDirectory, cmakeSourceDirectory);
+		final List<Path> externalDirectories = findExternalInputDirectories(srcDirectory, binDirectory, targets);
+		final List<Path> excludedDirectories = Arrays.asList(binDirectory, projectBuildDirectory.toPath());
+		final int parallelism = Utilities.getConcurrency(0);
+
+		if (externalDirectories == null) {
+			getLog().info("Build cannot be skipped, as there is no CMake File API reply listing the build inputs.");
+			return null;
+		}
+
+		try {
+			List<FileStateIndex.Entry> inputs = FileStateIndex.merge(
+				  FileStateIndex.scanTree(srcDirectory, excludedDirectories, parallelism)
+				, FileStateIndex.scanFiles(Arrays.asList(
+					  binDirectory.resolve("CMakeCache.txt")
+					, binDirectory.resolve(ConfigureFingerprint.FILE_NAME)
+				))
+			);
+
+			for (Path directory : externalDirectories) {
+				// A missing directory is recorded as such, so that its creation is detected.
+				inputs = FileStateIndex.merge(
+					  inputs
+					, Files.isDirectory(directory)
+						? FileStateIndex.scanTree(directory, excludedDirectories, parallelism)
+						: FileStateIndex.scanFiles(Collections.singletonList(directory))
+				);
+			}
+
+			return inputs;
+		} catch (IOException e) {
+			getLog().warn("Failed to scan the build inputs: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private boolean isBuildUnchanged(Path indexFile,
+	                                 String indexKey,
+	                                 List<FileStateIndex.Entry> inputs,
+	                                 Path binDirectory,
+	                                 List<String> targets) {
+		try {
+			if (FileStateIndex.matches(indexFile, indexKey, FileStateIndex.merge(inputs, scanOutputs(binDirectory, targets)))) {
+				return true;
+			}
+
+			// The index is only valid after the build that replaces it has succeeded.
+			FileStateIndex.delete(indexFile);
+		} catch (IOException e) {
+			getLog().warn("Failed to check the build index: " + e.getMessage());
+		}
+
+		return false;
+	}
+
+	private void storeBuildIndex(Path indexFile,
+	                             String indexKey,
+	                             List<FileStateIndex.Entry> inputs,
+	                             Path binDirectory,
+	                             List<String> targets) {
+		try {
+			FileStateIndex.store(
+				indexFile, indexKey, FileStateIndex.merge(inputs, scanOutputs(binDirectory, targets)), buildIndexHashes
+			);
+		} catch (IOException e) {
+			getLog().warn("Failed to store the build index: " + e.getMessage());
+		}
+	}
+
+	private List<FileStateIndex.Entry> scanOutputs(Path binDirectory, List<String> targets) throws IOException {
+		final List<Path> outputs = new ArrayList<>();
+
+		for (String output : findOutputs(binDirectory, targets)) {
+			outputs.add(binDirectory.resolve(output));
+		}
+
+		return FileStateIndex.scanFiles(outputs);
+	}
+
+	//
+	// Log the compiler cache hit rate of the build. The caches do not report the time
+	// saved, so it is estimated from the mean compilation time of the misses. Other
+	// modules building concurrently against the same cache are included in the figures.
+	//
+	private void logCompilerCacheStats(CompilerCache cache,
+	                                   CompilerCache.Stats before,
+	                                   Path binDirectory,
+	                                   LaunchContext context,
+	                                   int jobs,
+	                                   long buildNanos) {
+		final CompilerCache.Stats after = cache.getStats(getLog(), binDirectory, context);
+
+		if (after == null) {
+			return;
+		}
+
+		final CompilerCache.Stats build = after.since(before);
+		final StringBuilder message = new StringBuilder(String.format(
+			  "Compiler cache: %d hits, %d misses (%.0f%% hit rate)"
+			, build.getHits()
+			, build.getMisses()
+			, build.getHitRate() * 100.0
+		));
+
+		if (build.getSize() != 0) {
+			message.append(String.format(", cache grew by %.1f MiB", build.getSize() / (1024.0 * 1024.0)));
+		}
+
+		if (build.getHits() > 0 && build.getMisses() > 0) {
+			final double missMillis = TimeUnit.NANOSECONDS.toMillis(buildNanos) * (double) jobs / build.getMisses();
+			message.append(String.format(", est. %.1fs compile time saved", build.getHits() * missMillis / 1000.0));
+		}
+
+		getLog().info(message.toString());
+	}
+
+	//
+	// Find the outputs of the targets, as paths relative to the binary directory. Without
+	// explicit output cache patterns, the artifacts of the targets reported by the CMake
+	// File API are returned, or the libraries and executables selected by a soft clean
+	// when there is no File API reply.
+	//
+	List<String> findOutputs(final Path binDirectory, List<String> targets) throws IOException {
+		final FileApiReply reply = outputCachePaths == null || outputCachePaths.isEmpty()
+			? readFileApi(binDirectory)
+			: null;
+
+		if (reply != null) {
+			return findArtifacts(reply, binDirectory, targets);
+		}
+
+		final List<String> outputs = new ArrayList<>();
+		final List<PathMatcher> matchers = new ArrayList<>();
+		final FileSystem fileSystem = binDirectory.getFileSystem();
+		final SoftCleanSelector selector = new SoftCleanSelector(binDirectory);
+
+		if (outputCachePaths != null) {
+			for (String pattern : outputCachePaths) {
+				matchers.add(fileSystem.getPathMatcher("glob:" + pattern.trim()));
+			}
+		}
+
+		Files.walkFileTree(binDirectory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				final String pathname = binDirectory.relativize(dir).toString();
+
+				if (matchers.isEmpty() && !selector.couldHoldSelected(pathname)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				final Path relative = binDirectory.relativize(file);
+
+				if (attrs.isRegularFile() && isOutput(relative)) {
+					outputs.add(relative.toString().replace(File.separatorChar, '/'));
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+
+			private boolean isOutput(Path relative) {
+				if (!matchers.isEmpty()) {
+					for (PathMatcher matcher : matchers) {
+						if (matcher.matches(relative)) {
+							return true;
+						}
+					}
+
+					return false;
+				}
+
+				final String name = relative.getFileName().toString().toLowerCase(Locale.ROOT);
+				final int dot = name.lastIndexOf('.');
+
+				return !(dot > 0 && INTERMEDIATE_EXTENSIONS.contains(name.substring(dot + 1)))
+					&& selector.isSelected(relative.toString());
+			}
+		});
+
+		return outputs;
+	}
+
+	private List<String> findArtifacts(FileApiReply reply, Path binDirectory, List<String> targets) {
+		final Set<String> artifacts = new TreeSet<>();
+		final Path root = binDirectory.toAbsolutePath().normalize();
+
+		for (Target target : reply.getTargets(targets)) {
+			if (buildConfiguration != null && !buildConfiguration.equals(target.getConfiguration())) {
+				continue;
+			}
+
+			for (String artifact : target.getArtifacts()) {
+				final Path path = root.resolve(artifact).normalize();
+
+				if (path.startsWith(root) && Files.isRegularFile(path)) {
+					artifacts.add(root.relativize(path).toString().replace(File.separatorChar, '/'));
+				}
+			}
+		}
+
+		return new ArrayList<>(artifacts);
+	}
+
+	//
+	// Find the directories outside of the source directory that hold inputs of the targets:
+	// the include directories reported by the CMake File API and the directories of the
+	// sources outside of the source directory, which hold the headers of quoted includes.
+	// Directories within the binary and project build directories hold generated files and
+	// are not returned. Returns null if there is no File API reply.
+	//
+	List<Path> findExternalInputDirectories(Path srcDirectory, Path binDirectory, List<String> targets) {
+		final FileApiReply reply = readFileApi(binDirectory);
+
+		if (reply == null) {
+			return null;
+		}
+
+		final Path source = srcDirectory.toAbsolutePath().normalize();
+		final Path binary = binDirectory.toAbsolutePath().normalize();
+		final Path build = projectBuildDirectory.toPath().toAbsolutePath().normalize();
+		final Set<Path> directories = new TreeSet<>();
+
+		for (Target target : reply.getTargets(targets)) {
+			if (buildConfiguration != null && !buildConfiguration.equals(target.getConfiguration())) {
+				continue;
+			}
+
+			for (String file : target.getSources()) {
+				final Path parent = source.resolve(file).normalize().getParent();
+
+				if (parent != null) {
+					directories.add(parent);
+				}
+			}
+
+			for (String directory : target.getIncludeDirectories()) {
+				directories.add(source.resolve(directory).normalize());
+			}
+		}
+
+		final List<Path> external = new ArrayList<>();
+
+		for (Path directory : directories) {
+			if (directory.startsWith(source) || directory.startsWith(binary) || directory.startsWith(build)) {
+				continue;
+			}
+
+			boolean nested = false;
+
+			for (Path root : external) {
+				nested |= directory.startsWith(root);
+			}
+
+			if (!nested) {
+				external.add(directory);
+			}
+		}
+
+		return external;
+	}
+
+	//
+	// The number of threads used to delete a binary directory. Unlike the build
+	// concurrency, an explicit value of one deletes sequentially.
+	//
+	int getCleanParallelism() {
+		return cleanConcurrency > 0 ? cleanConcurrency : Utilities.getConcurrency(0);
+	}
+
+	//
+	// Determine whether the binary directory is configured with a Ninja generator. The generator
+	// is read from the CMake cache, as the build files of a previous generator may remain in the
+	// binary directory after the generator has changed.
+	//
+	private boolean isNinjaBuild(Path binDirectory) {
+		try {
+			return Utilities.isNinjaGenerator(Generators.getConfiguredGenerator(binDirectory));
+		} catch (IOException e) {
+			getLog().warn("Failed to read the generator of the CMake cache: " + e.getMessage());
+			return false;
+		}
+	}
+
+	Path getTestReportsDirectory() {
+		return testReportsDirectory != null
+			? testReportsDirectory.toPath()
+			: projectBuildDirectory.toPath().resolve("surefire-reports");
+	}
+
+	//
+	// Read the CMake File API reply written by the last configure.
+	// Returns null if the File API is disabled or there is no valid reply.
+	//
+	FileApiReply readFileApi(Path binDirectory) {
+		if (!fileApi) {
+			return null;
+		}
+
+		try {
+			return FileApi.read(binDirectory);
+		} catch (IOException e) {
+			getLog().warn("Failed to read the CMake File API reply: " + e.getMessage());
+			return null;
+		}
+	}
+
+	//
+	// Get the compiler cache, detecting it on first use.
+	//
+	CompilerCache getCompilerCache() throws MojoExecutionException {
+		if (!compilerCacheDetected) {
+			compilerCacheInstance = CompilerCache.detect(
+				getLog(), compilerCache, Utilities.expandEnvironment(environmentVariables)
+			);
+
+			compilerCacheDetected = true;
+		}
+
+		return compilerCacheInstance;
+	}
+
+	//
+	// Get the extra environment variables of the CMake and build tool processes, which
+	// include the compiler cache variables. Explicitly specified variables take precedence.
+	//
+	Map<String, String> getEnvironmentVariables() throws MojoExecutionException {
+		final CompilerCache cache = getCompilerCache();
+
+		if (cache == null) {
+			return environmentVariables;
+		}
+
+		final Map<String, String> environment = new TreeMap<>(
+			cache.getEnvironment(compilerCacheDirectory, compilerCacheMaxSize)
+		);
+
+		if (environmentVariables != null) {
+			environment.putAll(environmentVariables);
+		}
+
+		return environment;
+	}
+
+	//
+	// Get the CMake defines, which include the compiler launcher defines of the compiler
+	// cache. Explicitly specified defines take precedence.
+	//
+	Map<String, String> getDefines() throws MojoExecutionException {
+		final CompilerCache cache = getCompilerCache();
+
+		if (cache == null) {
+			return cmakeDefines;
+		}
+
+		final Map<String, String> defines = new TreeMap<>(cache.getDefines(compilerCacheLanguages));
+
+		if (cmakeDefines != null) {
+			defines.putAll(cmakeDefines);
+		}
+
+		return defines;
+	}
+
+	private void writeNinjaReport(Path binDirectory, NinjaLog.Position ninjaLogPosition, int jobs, String goal) {
+		final Log log = getLog();
+		final Path reportFile = projectBuildDirectory.toPath().resolve("cmake-ninja-report-" + goal + ".json");
+
+		try {
+			final NinjaLog ninjaLog = NinjaLog.read(binDirectory, ninjaLogPosition);
+
+			if (ninjaLog == null) {
+				log.info("The Ninja log was recompacted or removed by the build, the Ninja report is skipped.");
+				return;
+			}
+
+			if (ninjaLog.getEdges().isEmpty()) {
+				log.debug("No Ninja log entries were recorded by the build.");
+				return;
+			}
+
+			final List<NinjaLog.Edge> criticalPath = ninjaLog.getCriticalPath();
+
+			log.info(String.format(
+				  "Ninja: %d edges (%d runs) in %.1fs, %.0f%% utilisation of %d jobs, critical path %.1fs (%d edges)"
+				, ninjaLog.getEdges().size()
+				, ninjaLog.getRunCount()
+				, ninjaLog.getWallTime() / 1000.0
+				, ninjaLog.getUtilisation(jobs) * 100.0
+				, jobs
+				, NinjaLog.getTotalTime(criticalPath) / 1000.0
+				, criticalPath.size()
+			));
+
+			for (NinjaLog.Edge edge : ninjaLog.getSlowest(true, NINJA_REPORT_LOGGED_EDGES)) {
+				log.info(String.format("  %.1fs %s", edge.getDuration() / 1000.0, edge.getOutput()));
+			}
+
+			ninjaLog.writeReport(reportFile, jobs, NINJA_REPORT_LISTED_EDGES);
+		} catch (IOException e) {
+			log.warn("Failed to write the Ninja report " + reportFile + ": " + e.getMessage());
+		}
+	}
+
+	private void writeDiagnosticsSummary(DiagnosticsParser diagnostics, String goal) {
+		final Path summaryFile = projectBuildDirectory.toPath().resolve("cmake-diagnostics-" + goal + ".json");
+
+		getLog().info("Diagnostics: " + diagnostics.getSummary());
+
+		try {
+			diagnostics.writeSummary(summaryFile, goal);
+		} catch (IOException e) {
+			getLog().warn("Failed to write the diagnostics summary " + summaryFile + ": " + e.getMessage());
+		}
+	}
+
+	//
+	// Create the pump used to log the output of CMake and the build tool. In the condensed
+	// output mode, the complete output is written to cmake-maven-plugin-<name>.log in the
+	// binary directory. The context of a failure is written to cmake-maven-plugin-<name>-failure.txt,
+	// and the report of a previous failure is deleted.
+	//
+	ProcessOutput createProcessOutput(Path binDirectory, String name) throws MojoExecutionException {
+		final ProcessOutput output = new ProcessOutput(getLog());
+
+		if (outputEncoding != null && !outputEncoding.trim().isEmpty()) {
+			try {
+				output.setCharset(Charset.forName(outputEncoding.trim()));
+			} catch (IllegalArgumentException e) {
+				throw new MojoExecutionException("Unsupported output encoding: " + outputEncoding, e);
+			}
+		}
+
+		output.setSeparateErrorStream(separateErrorStream);
+		output.setListeners(getBuildListeners());
+		output.setFailureContext(failureContextLines, failureContextErrors);
+
+		final Path failureReport = binDirectory.resolve("cmake-maven-plugin-" + name + "-failure.txt");
+
+		try {
+			Files.deleteIfExists(failureReport);
+			output.setFailureReport(failureReport);
+		} catch (IOException e) {
+			getLog().warn("Failed to delete the previous failure report " + failureReport + ": " + e.getMessage());
+		}
+
+		if ("condensed".equals(outputMode)) {
+			output.setCondenseInterval(Math.max(0, outputSummaryInterval));
+			output.setLogFile(binDirectory.resolve("cmake-maven-plugin-" + name + ".log"));
+		} else if (outputMode != null && !outputMode.isEmpty() && !"full".equals(outputMode)) {
+			throw new MojoExecutionException("Unknown output mode: " + outputMode + " (expected full or condensed).");
+		}
+
+		return output;
+	}
+
+	BuildListeners getBuildListeners() throws MojoExecutionException {
+		if (listeners == null) {
+			listeners = BuildListeners.load(getLog(), getClass().getClassLoader(), buildListeners);
+		}
+
+		return listeners;
+	}
+
+	//
+	// Lease build jobs from the pool shared by the Maven session.
+	// The lease must be closed when the build completes.
+	//
+	JobServer.Lease acquireJobs() throws MojoExecutionException {
+		return acquireJobs(false);
+	}
+
+	//
+	// Lease build jobs for a process that is not a jobserver client, such as CTest. With a job
+	// server FIFO, the tokens are leased explicitly instead of being left to the build tool.
+	//
+	JobServer.Lease acquireJobs(boolean explicitTokens) throws MojoExecutionException {
+		final int requested = getRequestedJobs();
+		final JobServer jobServer = shareJobs ? getJobServer() : JobServer.create(getLog(), requested, false);
+
+		try {
+			final JobServer.Lease lease = explicitTokens ? jobServer.acquireTokens(requested) : jobServer.acquire(requested);
+
+			if (jobServer.isFifo() && explicitTokens) {
+				getLog().info("Using " + lease.getConcurrency() + " job server FIFO tokens of " + jobServer.getJobs() + " reactor build jobs.");
+			} else if (jobServer.isFifo()) {
+				getLog().info("Using the job server FIFO with " + jobServer.getJobs() + " reactor build jobs.");
+			} else if (shareJobs) {
+				getLog().info("Using " + lease.getConcurrency() + " of " + jobServer.getJobs() + " reactor build jobs.");
+			}
+
+			return lease;
+		} catch (InterruptedException e) {
+			throw new MojoExecutionException("Interrupted whilst waiting for a build job.", e);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to acquire a build job: " + e.getMessage(), e);
+		}
+	}
+
+	//
+	// The number of build jobs requested by the mojo.
+	//
+	int getRequestedJobs() {
+		return configurationJobs > 0 ? configurationJobs : Utilities.getConcurrency(concurrency);
+	}
+
+	void releaseJobs(JobServer.Lease lease) throws MojoExecutionException {
+		try {
+			lease.close();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to release build jobs: " + e.getMessage(), e);
+		}
+	}
+
+	//
+	// Get the launch context of the CMake path and the supplied environment variables.
+	// The contexts are stored in the session data, so that the CMake binary is resolved,
+	// the environment is expanded and the CMake version is queried once per session.
+	// A context is resolved again when the CMake binary is replaced.
+	//
+	LaunchContext getLaunchContext(Map<String, String> environment) {
+		final Map<String, Object> contexts = getLaunchContexts();
+		final String key = LaunchContext.getKey(cmakePath, environment);
+		final Object existing = contexts.get(key);
+
+		if (existing instanceof LaunchContext && ((LaunchContext) existing).isValid()) {
+			return (LaunchContext) existing;
+		}
+
+		final LaunchContext context = LaunchContext.create(cmakePath, environment);
+		contexts.put(key, context);
+		return context;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> getLaunchContexts() {
+		if (session == null || session.getRepositorySession() == null) {
+			return sharedLaunchContexts;
+		}
+
+		final SessionData data = session.getRepositorySession().getData();
+		final Object key = LaunchContext.class.getName();
+
+		synchronized (data) {
+			final Object existing = data.get(key);
+
+			if (existing instanceof ConcurrentHashMap) {
+				return (Map<String, Object>) existing;
+			}
+
+			final Map<String, Object> contexts = new ConcurrentHashMap<>();
+			data.set(key, contexts);
+			return contexts;
+		}
+	}
+
+	//
+	// The job server is stored in the session data, so that it is shared between all
+	// the modules of the session. Without a session (for example when the mojo is run
+	// from a test harness), a single job server is shared by the JVM.
+	//
+	private JobServer getJobServer() {
+		final int jobs = Utilities.getConcurrency(reactorConcurrency);
+
+		if (session == null || session.getRepositorySession() == null) {
+			synchronized (AbstractCMakeMojo.class) {
+				if (sharedJobServer == null) {
+					sharedJobServer = JobServer.create(getLog(), jobs, jobServerFifo);
+				}
+
+				return sharedJobServer;
+			}
+		}
+
+		final SessionData data = session.getRepositorySession().getData();
+		final Object key = JobServer.class.getName();
+
+		synchronized (data) {
+			final Object existing = data.get(key);
+
+			if (existing instanceof JobServer) {
+				return (JobServer) existing;
+			}
+
+			final JobServer jobServer = JobServer.create(getLog(), jobs, jobServerFifo);
+			data.set(key, jobServer);
+			return jobServer;
+		}
+	}
 }
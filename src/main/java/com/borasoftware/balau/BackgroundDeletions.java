@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau;
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.aether.SessionData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Waits for the background deletions started during a Maven session when the session ends.
+ * The execution listener of the session request is wrapped, so that the deletions complete
+ * with the session, including in a persistent JVM (such as the Maven daemon or an embedded
+ * Maven) that outlives the session. The other events are passed to the wrapped listener.
+ *
+ * @author Nicholas Smethurst
+ */
+class BackgroundDeletions implements ExecutionListener {
+	private final ExecutionListener listener;
+	private final Log log;
+
+	// The deleting threads to wait for (guarded by this).
+	private final List<Thread> deleters = new ArrayList<>();
+
+	private BackgroundDeletions(ExecutionListener listener, Log log) {
+		this.listener = listener;
+		this.log = log;
+	}
+
+	/**
+	 * Wait for the deleting thread to complete at the end of the session. Without a session,
+	 * the deletion is not waited for, and an incomplete deletion is finished by a later clean.
+	 *
+	 * @param session the Maven session (may be null)
+	 * @param log the Maven log
+	 * @param deleter the deleting thread
+	 */
+	static void awaitAtSessionEnd(MavenSession session, Log log, Thread deleter) {
+		if (session == null || session.getRequest() == null || session.getRepositorySession() == null) {
+			log.debug("No Maven session, the background deletion is not waited for.");
+			return;
+		}
+
+		final MavenExecutionRequest request = session.getRequest();
+		final SessionData data = session.getRepositorySession().getData();
+		final Object key = BackgroundDeletions.class.getName();
+		final BackgroundDeletions deletions;
+
+		synchronized (data) {
+			final Object existing = data.get(key);
+
+			if (existing instanceof BackgroundDeletions) {
+				deletions = (BackgroundDeletions) existing;
+			} else {
+				deletions = new BackgroundDeletions(request.getExecutionListener(), log);
+				request.setExecutionListener(deletions);
+				data.set(key, deletions);
+			}
+		}
+
+		synchronized (deletions) {
+			deletions.deleters.add(deleter);
+		}
+	}
+
+	@Override
+	public void sessionEnded(ExecutionEvent event) {
+		final List<Thread> threads;
+
+		synchronized (this) {
+			threads = new ArrayList<>(deleters);
+			deleters.clear();
+		}
+
+		try {
+			int running = 0;
+
+			for (Thread thread : threads) {
+				running += thread.isAlive() ? 1 : 0;
+			}
+
+			if (running > 0) {
+				log.info("Waiting for " + running + " background deletion(s) to complete.");
+			}
+
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (listener != null) {
+				listener.sessionEnded(event);
+			}
+		}
+	}
+
+	@Override
+	public void projectDiscoveryStarted(ExecutionEvent event) {
+		if (listener != null) {
+			listener.projectDiscoveryStarted(event);
+		}
+	}
+
+	@Override
+	public void sessionStarted(ExecutionEvent event) {
+		if (listener != null) {
+			listener.sessionStarted(event);
+		}
+	}
+
+	@Override
+	public void projectSkipped(ExecutionEvent event) {
+		if (listener != null) {
+			listener.projectSkipped(event);
+		}
+	}
+
+	@Override
+	public void projectStarted(ExecutionEvent event) {
+		if (listener != null) {
+			listener.projectStarted(event);
+		}
+	}
+
+	@Override
+	public void projectSucceeded(ExecutionEvent event) {
+		if (listener != null) {
+			listener.projectSucceeded(event);
+		}
+	}
+
+	@Override
+	public void projectFailed(ExecutionEvent event) {
+		if (listener != null) {
+			listener.projectFailed(event);
+		}
+	}
+
+	@Override
+	public void mojoSkipped(ExecutionEvent event) {
+		if (listener != null) {
+			listener.mojoSkipped(event);
+		}
+	}
+
+	@Override
+	public void mojoStarted(ExecutionEvent event) {
+		if (listener != null) {
+			listener.mojoStarted(event);
+		}
+	}
+
+	@Override
+	public void mojoSucceeded(ExecutionEvent event) {
+		if (listener != null) {
+			listener.mojoSucceeded(event);
+		}
+	}
+
+	@Override
+	public void mojoFailed(ExecutionEvent event) {
+		if (listener != null) {
+			listener.mojoFailed(event);
+		}
+	}
+
+	@Override
+	public void forkStarted(ExecutionEvent event) {
+		if (listener != null) {
+			listener.forkStarted(event);
+		}
+	}
+
+	@Override
+	public void forkSucceeded(ExecutionEvent event) {
+		if (listener != null) {
+			listener.forkSucceeded(event);
+		}
+	}
+
+	@Override
+	public void forkFailed(ExecutionEvent event) {
+		if (listener != null) {
+			listener.forkFailed(event);
+		}
+	}
+
+	@Override
+	public void forkedProjectStarted(ExecutionEvent event) {
+		if (listener != null) {
+			listener.forkedProjectStarted(event);
+		}
+	}
+
+	@Override
+	public void forkedProjectSucceeded(ExecutionEvent event) {
+		if (listener != null) {
+			listener.forkedProjectSucceeded(event);
+		}
+	}
+
+	@Override
+	public void forkedProjectFailed(ExecutionEvent event) {
+		if (listener != null) {
+			listener.forkedProjectFailed(event);
+		}
+	}
+}
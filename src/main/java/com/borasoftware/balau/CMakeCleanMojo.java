@@ -19,6 +19,8 @@ package com.borasoftware.balau;
 
 import com.borasoftware.balau.builder.Utilities;
 import com.borasoftware.balau.cleaner.Cleaner;
+import com.borasoftware.balau.cleaner.SoftCleanSelector;
+import com.borasoftware.balau.cleaner.Tombstones;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -26,7 +28,11 @@ import org.apache.maven.plugins.annotations.Mojo;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Cleans the CMake build directory.
@@ -46,19 +52,75 @@ public class CMakeCleanMojo extends AbstractCMakeMojo {
 			return;
 		}
 
-		final Cleaner cleaner = new Cleaner(log, isVerbose());
+		final int parallelism = getCleanParallelism();
+
+		if (backgroundClean && !softClean && cleanInBackground(buildDirectory, parallelism)) {
+			return;
+		}
+
+		final Cleaner cleaner = new Cleaner(log, isVerbose(), getBuildListeners());
 
 		try {
 			final File directoryItem = buildDirectory.toFile();
 
 			if (directoryItem != null) {
-				cleaner.delete(directoryItem, null, followSymLinks, failOnError, retryOnError);
+				cleaner.delete(
+					  directoryItem
+					, softClean ? new SoftCleanSelector(buildDirectory) : null
+					, followSymLinks
+					, failOnError
+					, retryOnError
+					, parallelism
+				);
+			}
+
+			for (Path tombstone : Tombstones.find(buildDirectory.toAbsolutePath().getParent())) {
+				cleaner.delete(tombstone.toFile(), null, followSymLinks, failOnError, retryOnError, parallelism);
 			}
 		} catch (IOException e) {
 			throw new MojoExecutionException("Failed to clean project: " + e.getMessage(), e);
 		}
 	}
 
+	//
+	// Rename the binary directory to a tombstone and delete it, together with any
+	// tombstones left by previous builds, in a background thread.
+	//
+	// Returns false if the binary directory could not be renamed, in which case
+	// it is deleted in the foreground.
+	//
+	private boolean cleanInBackground(Path buildDirectory, int parallelism) throws MojoExecutionException {
+		final Log log = getLog();
+		final List<Path> tombstones;
+
+		try {
+			tombstones = new ArrayList<>(Tombstones.find(buildDirectory.toAbsolutePath().getParent()));
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to clean project: " + e.getMessage(), e);
+		}
+
+		if (Files.isDirectory(buildDirectory, LinkOption.NOFOLLOW_LINKS)) {
+			try {
+				final Path tombstone = Tombstones.bury(buildDirectory);
+				log.info("Moved " + buildDirectory + " to " + tombstone.getFileName() + " for background deletion.");
+				tombstones.add(tombstone);
+			} catch (IOException e) {
+				log.info("Could not rename " + buildDirectory + " (" + e.getMessage() + "), deleting in the foreground.");
+				return false;
+			}
+		}
+
+		if (!tombstones.isEmpty()) {
+			BackgroundDeletions.awaitAtSessionEnd(
+				  session
+				, log
+				, Tombstones.deleteInBackground(log, tombstones, getBuildListeners(), followSymLinks, parallelism)
+			);
+		}
+
+		return true;
+	}
+
 	private boolean isVerbose() {
 		return (verbose != null) ? verbose : getLog().isDebugEnabled();
 	}
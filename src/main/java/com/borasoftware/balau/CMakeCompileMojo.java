@@ -17,27 +17,111 @@
 
 package com.borasoftware.balau;
 
-import com.borasoftware.balau.builder.Make;
+import com.borasoftware.balau.builder.ConfigureFingerprint;
+import com.borasoftware.balau.builder.LaunchContext;
+import com.borasoftware.balau.builder.OutputCache;
 import com.borasoftware.balau.builder.Utilities;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Execute Make on the compile targets specified in the plugin configuration.
  *
  * @author Nicholas Smethurst
  */
-@Mojo(name = "compile", defaultPhase = LifecyclePhase.COMPILE)
+@Mojo(name = "compile", threadSafe = true, defaultPhase = LifecyclePhase.COMPILE)
 public class CMakeCompileMojo extends AbstractCMakeMojo {
 	public void execute() throws MojoExecutionException {
 		checkParameters();
 
-		final int j = Utilities.getConcurrency(concurrency);
+		if (executeConfigurations(false)) {
+			return;
+		}
+
+		if (!outputCache) {
+			build(compileTargets, "compile");
+			return;
+		}
+
+		final Log log = getLog();
 		final Path binDirectory = Utilities.getCMakeBinaryDirectory(projectBuildDirectory, cmakeBinaryDirectory);
+		final OutputCache cache = new OutputCache(log, getOutputCacheDirectory(), outputCacheMaxSize * 1024 * 1024);
+		final String key = calculateOutputCacheKey(binDirectory);
+
+		if (key != null) {
+			final int restored = cache.restore(key, binDirectory);
+
+			if (restored > 0) {
+				log.info("Restored " + restored + " cached outputs (" + key.substring(0, 12) + "), skipping the build.");
+				return;
+			}
+		}
+
+		build(compileTargets, "compile");
+
+		if (key != null) {
+			try {
+				final List<String> outputs = findOutputs(binDirectory, compileTargets);
+
+				if (outputs.isEmpty()) {
+					log.info("No outputs found in the binary directory, nothing is stored in the output cache.");
+				} else {
+					cache.store(key, binDirectory, outputs);
+					log.info("Stored " + outputs.size() + " outputs in the output cache (" + key.substring(0, 12) + ").");
+				}
+			} catch (IOException e) {
+				log.warn("Failed to store the outputs in the output cache: " + e.getMessage());
+			}
+		}
+	}
+
+	private Path getOutputCacheDirectory() {
+		if (outputCacheDirectory != null) {
+			return outputCacheDirectory.toPath();
+		}
+
+		return Paths.get(System.getProperty("user.home"), ".cmake-maven-plugin", "output-cache");
+	}
+
+	//
+	// Returns null if the key could not be calculated, in which case the cache is not used.
+	//
+	private String calculateOutputCacheKey(Path binDirectory) throws MojoExecutionException {
+		final Path srcDirectory = Utilities.getCMakeSourceDirectory(projectBuildDirectory, cmakeSourceDirectory);
+		final List<Path> externalDirectories = findExternalInputDirectories(srcDirectory, binDirectory, compileTargets);
+		final LaunchContext context = getLaunchContext(getEnvironmentVariables());
+
+		if (externalDirectories == null) {
+			getLog().info("Output cache is not used, as there is no CMake File API reply listing the build inputs.");
+			return null;
+		}
+
+		try {
+			final ConfigureFingerprint fingerprint = ConfigureFingerprint.load(binDirectory);
 
-		Make.runMakeTargets(getLog(), j, binDirectory, compileTargets, makeOptions, environmentVariables, cmakePath);
+			return OutputCache.calculateKey(
+				  srcDirectory
+				, externalDirectories
+				, Arrays.asList(binDirectory, projectBuildDirectory.toPath())
+				, binDirectory
+				, fingerprint != null ? fingerprint.getGenerator() : generator
+				, context.getVersion(getLog(), binDirectory)
+				, getDefines()
+				, makeOptions
+				, context.getExpandedEnvironment()
+				, compileTargets
+			);
+		} catch (IOException e) {
+			getLog().warn("Failed to calculate the output cache key: " + e.getMessage());
+			return null;
+		}
 	}
 }
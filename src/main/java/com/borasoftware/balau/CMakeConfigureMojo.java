@@ -18,7 +18,14 @@
 package com.borasoftware.balau;
 
 import com.borasoftware.balau.builder.CMake;
+import com.borasoftware.balau.builder.ConfigureFingerprint;
+import com.borasoftware.balau.builder.Generators;
 import com.borasoftware.balau.builder.Utilities;
+import com.borasoftware.balau.cleaner.Cleaner;
+import com.borasoftware.balau.cleaner.Tombstones;
+import com.borasoftware.balau.fileapi.FileApi;
+import com.borasoftware.balau.fileapi.FileApiReply;
+import com.borasoftware.balau.listener.BuildListeners;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
@@ -27,7 +34,10 @@ import org.apache.maven.plugins.annotations.Mojo;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -36,14 +46,24 @@ import java.util.Map;
  *
  * @author Nicholas Smethurst
  */
-@Mojo(name = "configure", defaultPhase = LifecyclePhase.VALIDATE)
+@Mojo(name = "configure", threadSafe = true, defaultPhase = LifecyclePhase.VALIDATE)
 public class CMakeConfigureMojo extends AbstractCMakeMojo {
+	private static final int MAXIMUM_REPORTED_DIFFERENCES = 20;
+
 	public void execute() throws MojoExecutionException {
 		checkParameters();
 
+		if (executeConfigurations(true)) {
+			return;
+		}
+
 		final Log log = getLog();
 		final Path srcDirectory = Utilities.getCMakeSourceDirectory(projectBuildDirectory, cmakeSourceDirectory);
 		final Path binDirectory = Utilities.getCMakeBinaryDirectory(projectBuildDirectory, cmakeBinaryDirectory);
+		final String actualGenerator = getActualGenerator();
+
+		// CMake cannot switch the generator of a binary directory.
+		final boolean fresh = !actualGenerator.isEmpty() && resetIfGeneratorChanged(binDirectory, actualGenerator);
 
 		try {
 			Files.createDirectories(binDirectory);
@@ -51,28 +71,233 @@ public class CMakeConfigureMojo extends AbstractCMakeMojo {
 			throw new MojoExecutionException("Cannot create CMake build directory: " + binDirectory);
 		}
 
+		if (backgroundClean) {
+			deleteLeftoverTombstones(binDirectory);
+		}
+
 		final List<String> parameters = processDefines();
 
-		// Set the generator if necessary.
-		final String osName = System.getProperty("os.name");
+		// The generator name is a separate argument, as the process is not started via a shell.
+		if (!actualGenerator.isEmpty()) {
+			parameters.add("-G");
+			parameters.add(actualGenerator);
+		}
 
-		if (generator != null && !generator.isEmpty()) {
-			parameters.add("-G\"" + generator.trim() + "\"");
-		} else if (osName != null && osName.toLowerCase().trim().startsWith("windows")) {
-			parameters.add("-G\"NMake Makefiles\"");
+		if (fresh) {
+			parameters.add("--fresh");
 		}
 
 		parameters.addAll(processDefines());
 		parameters.add(srcDirectory.toAbsolutePath().toString());
 
-		CMake.runCMake(log, binDirectory, parameters, environmentVariables, cmakePath);
+		final boolean fileApiQueryAdded = fileApi && writeFileApiQuery(log, binDirectory);
+
+		final ConfigureFingerprint fingerprint = skipUnchangedConfigure
+			? calculateFingerprint(log, srcDirectory, binDirectory, actualGenerator)
+			: null;
+
+		final BuildListeners listeners = getBuildListeners();
+
+		if (fingerprint != null) {
+			List<String> reasons = getConfigureReasons(log, fingerprint, binDirectory);
+
+			if (reasons.isEmpty() && fileApiQueryAdded) {
+				log.info("Configure required: the CMake File API query was added.");
+				reasons = Collections.singletonList("CMake File API query added");
+			}
+
+			if (reasons.isEmpty()) {
+				log.info("Configure is skipped (configure inputs are unchanged).");
+				listeners.configureDecision(binDirectory, true, reasons);
+				return;
+			}
+
+			listeners.configureDecision(binDirectory, false, reasons);
+			deleteFingerprint(binDirectory);
+		} else {
+			listeners.configureDecision(binDirectory, false, Collections.singletonList("configure fingerprint not used"));
+		}
+
+		CMake.runCMake(createProcessOutput(binDirectory, "configure"), binDirectory, parameters, getLaunchContext(getEnvironmentVariables()));
+
+		if (fingerprint != null) {
+			try {
+				fingerprint.store(binDirectory);
+			} catch (IOException e) {
+				log.warn("Failed to store the configure fingerprint: " + e.getMessage());
+			}
+		}
+
+		if (fileApi) {
+			final FileApiReply reply = readFileApi(binDirectory);
+
+			if (reply != null) {
+				log.info(
+					"CMake File API: " + reply.getTargets().size() + " targets, "
+					+ reply.getToolchains().size() + " toolchains."
+				);
+			}
+		}
+	}
+
+	//
+	// Get the generator specified to CMake, or an empty string for CMake's default generator.
+	//
+	private String getActualGenerator() throws MojoExecutionException {
+		final String osName = System.getProperty("os.name");
+
+		if (generator != null && generator.trim().equalsIgnoreCase(Generators.AUTO)) {
+			return Generators.select(
+				  getLog()
+				, Paths.get(System.getProperty("user.home"), ".cmake-maven-plugin", "generator-calibration.properties")
+				, generatorCalibration
+				, getLaunchContext(getEnvironmentVariables())
+			);
+		} else if (generator != null && !generator.isEmpty()) {
+			return generator.trim();
+		} else if (osName != null && osName.toLowerCase().trim().startsWith("windows")) {
+			return "NMake Makefiles";
+		}
+
+		return "";
 	}
 
-	private List<String> processDefines() {
+	//
+	// Reset the binary directory if it was configured with another generator, so that
+	// the configure starts from a clean binary directory. Returns true if the reset is
+	// left to the configure via --fresh (CMake 3.24), which keeps the build tree and
+	// only discards the cache. Otherwise the binary directory is deleted.
+	//
+	private boolean resetIfGeneratorChanged(Path binDirectory, String actualGenerator) throws MojoExecutionException {
+		final Log log = getLog();
+		final String configuredGenerator;
+
+		try {
+			configuredGenerator = Generators.getConfiguredGenerator(binDirectory);
+		} catch (IOException e) {
+			log.warn("Failed to read the generator of the CMake cache: " + e.getMessage());
+			return false;
+		}
+
+		if (configuredGenerator == null || configuredGenerator.equals(actualGenerator)) {
+			return false;
+		}
+
+		if (getLaunchContext(getEnvironmentVariables()).getCapabilities(log, binDirectory).supportsFresh()) {
+			log.info(
+				"The generator has changed from " + configuredGenerator + " to " + actualGenerator
+				+ ", configuring with a fresh cache."
+			);
+
+			return true;
+		}
+
+		log.info(
+			"The generator has changed from " + configuredGenerator + " to " + actualGenerator
+			+ ", deleting the binary directory."
+		);
+
+		try {
+			new Cleaner(log, false, getBuildListeners()).delete(
+				binDirectory.toFile(), null, followSymLinks, true, retryOnError, getCleanParallelism()
+			);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot delete the CMake build directory " + binDirectory + ": " + e.getMessage(), e);
+		}
+
+		return false;
+	}
+
+	//
+	// Returns true if a query file was added, in which case CMake must run to write the reply.
+	// CMake binaries without the File API (pre 3.14) would ignore the query, so none is written.
+	//
+	private boolean writeFileApiQuery(Log log, Path binDirectory) throws MojoExecutionException {
+		if (!getLaunchContext(getEnvironmentVariables()).getCapabilities(log, binDirectory).supportsFileApi("codemodel")) {
+			log.debug("CMake does not support the File API, the build will not use the File API reply.");
+			return false;
+		}
+
+		try {
+			return FileApi.writeQuery(binDirectory);
+		} catch (IOException e) {
+			log.warn("Failed to write the CMake File API query: " + e.getMessage());
+			return false;
+		}
+	}
+
+	private ConfigureFingerprint calculateFingerprint(Log log, Path srcDirectory, Path binDirectory, String actualGenerator)
+		throws MojoExecutionException {
+		try {
+			final Map<String, String> environment = getEnvironmentVariables();
+			final String cmakeVersion = getLaunchContext(environment).getVersion(log, binDirectory);
+
+			return ConfigureFingerprint.calculate(
+				  srcDirectory
+				, Arrays.asList(binDirectory, projectBuildDirectory.toPath())
+				, actualGenerator
+				, getDefines()
+				, Utilities.expandEnvironment(environment)
+				, cmakeVersion
+			);
+		} catch (IOException e) {
+			log.warn("Failed to calculate the configure fingerprint: " + e.getMessage());
+			return null;
+		}
+	}
+
+	//
+	// Determine the reasons why a configure run is required (empty if the run can be skipped).
+	//
+	private List<String> getConfigureReasons(Log log, ConfigureFingerprint fingerprint, Path binDirectory) {
+		if (!Files.isRegularFile(binDirectory.resolve("CMakeCache.txt"))) {
+			log.info("Configure required: the CMake cache does not exist.");
+			return Collections.singletonList("CMake cache does not exist");
+		}
+
+		final ConfigureFingerprint previous;
+
+		try {
+			previous = ConfigureFingerprint.load(binDirectory);
+		} catch (IOException e) {
+			log.warn("Failed to load the configure fingerprint: " + e.getMessage());
+			return Collections.singletonList("configure fingerprint could not be loaded");
+		}
+
+		final List<String> differences = fingerprint.differences(previous);
+
+		if (differences.isEmpty()) {
+			return differences;
+		}
+
+		final int reported = Math.min(differences.size(), MAXIMUM_REPORTED_DIFFERENCES);
+		log.info("Configure required: the configure fingerprint has changed.");
+
+		for (int i = 0; i < reported; i++) {
+			log.info("  " + differences.get(i));
+		}
+
+		if (differences.size() > reported) {
+			log.info("  ... and " + (differences.size() - reported) + " more");
+		}
+
+		return differences;
+	}
+
+	private void deleteFingerprint(Path binDirectory) throws MojoExecutionException {
+		try {
+			ConfigureFingerprint.delete(binDirectory);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot delete configure fingerprint in: " + binDirectory, e);
+		}
+	}
+
+	private List<String> processDefines() throws MojoExecutionException {
 		final List<String> list = new ArrayList<>();
+		final Map<String, String> defines = getDefines();
 
-		if (cmakeDefines != null && !cmakeDefines.isEmpty()) {
-			for (Map.Entry<String, String> entry : cmakeDefines.entrySet()) {
+		if (defines != null && !defines.isEmpty()) {
+			for (Map.Entry<String, String> entry : defines.entrySet()) {
 				final String key = entry.getKey();
 				final String value = entry.getValue();
 
@@ -84,4 +309,26 @@ public class CMakeConfigureMojo extends AbstractCMakeMojo {
 
 		return list;
 	}
+
+	//
+	// Delete tombstones left behind by a background clean that did not complete.
+	//
+	private void deleteLeftoverTombstones(Path binDirectory) throws MojoExecutionException {
+		try {
+			final List<Path> tombstones = Tombstones.find(binDirectory.toAbsolutePath().getParent());
+
+			if (!tombstones.isEmpty()) {
+				getLog().info("Deleting " + tombstones.size() + " leftover tombstone(s) in the background.");
+				BackgroundDeletions.awaitAtSessionEnd(
+					  session
+					, getLog()
+					, Tombstones.deleteInBackground(
+						getLog(), tombstones, getBuildListeners(), followSymLinks, getCleanParallelism()
+					)
+				);
+			}
+		} catch (IOException e) {
+			getLog().warn("Failed to search for leftover tombstones: " + e.getMessage());
+		}
+	}
 }
@@ -17,20 +17,16 @@
 
 package com.borasoftware.balau;
 
-import com.borasoftware.balau.builder.Make;
-import com.borasoftware.balau.builder.Utilities;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 
-import java.nio.file.Path;
-
 /**
  * Execute Make on the test-compile targets specified in the plugin configuration.
  *
  * @author Nicholas Smethurst
  */
-@Mojo(name = "test-compile", defaultPhase = LifecyclePhase.TEST_COMPILE)
+@Mojo(name = "test-compile", threadSafe = true, defaultPhase = LifecyclePhase.TEST_COMPILE)
 public class CMakeTestCompileMojo extends AbstractCMakeMojo {
 	public void execute() throws MojoExecutionException {
 		checkParameters();
@@ -40,9 +36,10 @@ public class CMakeTestCompileMojo extends AbstractCMakeMojo {
 			return;
 		}
 
-		final int j = Utilities.getConcurrency(concurrency);
-		final Path binDirectory = Utilities.getCMakeBinaryDirectory(projectBuildDirectory, cmakeBinaryDirectory);
+		if (executeConfigurations(false)) {
+			return;
+		}
 
-		Make.runMakeTargets(getLog(), j, binDirectory, testCompileTargets, makeOptions, environmentVariables, cmakePath);
+		build(testCompileTargets, "test-compile");
 	}
 }
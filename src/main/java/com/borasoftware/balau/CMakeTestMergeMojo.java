@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau;
+
+import com.borasoftware.balau.builder.CTestResults;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merge the Surefire reports of the test shards into a single report, for each
+ * of the configurations when configurations are specified.
+ *
+ * @author Nicholas Smethurst
+ */
+@Mojo(name = "test-merge", threadSafe = true)
+public class CMakeTestMergeMojo extends AbstractCMakeMojo {
+	public void execute() throws MojoExecutionException {
+		checkParameters();
+
+		if (executeConfigurations(false)) {
+			return;
+		}
+
+		final Log log = getLog();
+		final Path reportsDirectory = getTestReportsDirectory();
+		final String suiteName = CMakeTestMojo.getSuiteName(buildConfiguration);
+		final List<Path> shardReports = new ArrayList<>();
+		final List<CTestResults> parts = new ArrayList<>();
+		final List<Integer> missing = new ArrayList<>();
+
+		if (shardCount < 2) {
+			throw new MojoExecutionException("The shard count of the test shards to merge must be specified.");
+		}
+
+		// Merge in shard order, so that the merged report is the same on every run.
+		for (int i = 0; i < shardCount; i++) {
+			final Path report = reportsDirectory.resolve(
+				"TEST-" + CMakeTestMojo.getShardSuiteName(buildConfiguration, i, shardCount) + ".xml"
+			);
+
+			if (Files.isRegularFile(report)) {
+				shardReports.add(report);
+			} else {
+				missing.add(i);
+			}
+		}
+
+		if (!missing.isEmpty()) {
+			throw new MojoExecutionException(
+				"Missing the reports of test shards " + missing + " of " + shardCount + " in " + reportsDirectory + "."
+			);
+		}
+
+		try {
+			for (Path report : shardReports) {
+				parts.add(CTestResults.readSurefireReport(report));
+			}
+
+			final CTestResults merged = CTestResults.merge(parts);
+			final Path report = reportsDirectory.resolve("TEST-" + suiteName + ".xml");
+
+			merged.writeSurefireReport(report, suiteName);
+
+			// The shard reports would otherwise be counted twice by report consumers.
+			for (Path shardReport : shardReports) {
+				Files.delete(shardReport);
+			}
+
+			log.info(String.format(
+				  "Merged %d shard reports: Tests run: %d, Failures: %d, Errors: %d, Skipped: %d"
+				, shardReports.size()
+				, merged.getResults().size()
+				, merged.getCount(CTestResults.Status.FAILED)
+				, merged.getCount(CTestResults.Status.ERROR)
+				, merged.getCount(CTestResults.Status.SKIPPED)
+			));
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to merge the test shard reports: " + e.getMessage(), e);
+		}
+	}
+}
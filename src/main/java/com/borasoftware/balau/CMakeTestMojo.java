@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau;
+
+import com.borasoftware.balau.builder.CTest;
+import com.borasoftware.balau.builder.CTestCostData;
+import com.borasoftware.balau.builder.CTestResults;
+import com.borasoftware.balau.builder.JobServer;
+import com.borasoftware.balau.builder.TestShards;
+import com.borasoftware.balau.builder.Utilities;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Run the CTest tests of the CMake binary directory and write a Surefire compatible report.
+ * When configurations are specified, the tests of each configuration are run and reported
+ * in a test suite named after the configuration.
+ *
+ * @author Nicholas Smethurst
+ */
+@Mojo(name = "test", threadSafe = true, defaultPhase = LifecyclePhase.TEST)
+public class CMakeTestMojo extends AbstractCMakeMojo {
+	// The number of expensive tests logged from the cost data.
+	private static final int LOGGED_COSTS = 3;
+
+	// The test suite name of the Surefire report.
+	static final String SUITE_NAME = "ctest";
+
+	// Separates the suite name from the shard of the Surefire reports of test shards.
+	private static final String SHARD_INFIX = "-shard-";
+
+	public void execute() throws MojoExecutionException {
+		checkParameters();
+
+		if (!skipTests && executeConfigurations(false)) {
+			return;
+		}
+
+		final Log log = getLog();
+		final Path binDirectory = Utilities.getCMakeBinaryDirectory(projectBuildDirectory, cmakeBinaryDirectory);
+
+		if (skipTests) {
+			log.info("Tests are skipped.");
+			return;
+		}
+
+		if (!Files.isRegularFile(binDirectory.resolve(CTest.TEST_FILE))) {
+			log.info("No CTest tests found in " + binDirectory + ".");
+			return;
+		}
+
+		logCostData(binDirectory);
+		final List<String> options = getCTestOptions();
+		final String suiteName;
+
+		if (shardCount > 1) {
+			if (shardIndex < 0 || shardIndex >= shardCount) {
+				throw new MojoExecutionException(
+					"Invalid shard index " + shardIndex + ", must be between 0 and " + (shardCount - 1) + "."
+				);
+			}
+
+			suiteName = getShardSuiteName(buildConfiguration, shardIndex, shardCount);
+
+			final Path selection = selectShard(binDirectory);
+
+			if (selection == null) {
+				log.info("Shard " + shardIndex + " of " + shardCount + " has no tests.");
+				writeReport(new CTestResults(Collections.<CTestResults.Result>emptyList()), suiteName);
+				return;
+			}
+
+			options.add("-I");
+			options.add(selection.toString());
+		} else {
+			suiteName = getSuiteName(buildConfiguration);
+		}
+
+		final long start = System.currentTimeMillis();
+		// CTest does not take tokens from a job server FIFO, so it runs as many tests as tokens are leased.
+		final JobServer.Lease lease = acquireJobs(true);
+		final int jobs = lease.getConcurrency();
+		MojoExecutionException failure = null;
+
+		try {
+			CTest.runCTest(
+				  createProcessOutput(binDirectory, suiteName)
+				, jobs
+				, binDirectory
+				, options
+				, getLaunchContext(getEnvironmentVariables()).withEnvironment(lease.getEnvironment(null))
+			);
+		} catch (MojoExecutionException e) {
+			failure = e;
+		} finally {
+			releaseJobs(lease);
+		}
+
+		final CTestResults results = readResults(binDirectory, start);
+
+		if (results != null) {
+			log.info(String.format(
+				  "Tests run: %d, Failures: %d, Errors: %d, Skipped: %d, Time elapsed: %.3f s"
+				, results.getResults().size()
+				, results.getCount(CTestResults.Status.FAILED)
+				, results.getCount(CTestResults.Status.ERROR)
+				, results.getCount(CTestResults.Status.SKIPPED)
+				, results.getTime()
+			));
+
+			writeReport(results, suiteName);
+		}
+
+		if (failure != null) {
+			if (testFailureIgnore) {
+				log.error(failure.getMessage());
+			} else {
+				throw new MojoExecutionException("There are test failures: " + failure.getMessage(), failure);
+			}
+		}
+	}
+
+	//
+	// The test suite name of the Surefire report of the configuration, which may be null.
+	//
+	static String getSuiteName(String configuration) {
+		return configuration != null ? SUITE_NAME + "-" + configuration : SUITE_NAME;
+	}
+
+	//
+	// The test suite name of the Surefire report of a test shard of the configuration, which may be null.
+	//
+	static String getShardSuiteName(String configuration, int index, int count) {
+		return getSuiteName(configuration) + SHARD_INFIX + index + "-of-" + count;
+	}
+
+	//
+	// The CTest options, selecting the configuration to test when one is being built.
+	//
+	private List<String> getCTestOptions() {
+		final List<String> options = new ArrayList<>();
+
+		if (buildConfiguration != null) {
+			options.add("-C");
+			options.add(buildConfiguration);
+		}
+
+		if (ctestOptions != null) {
+			options.addAll(ctestOptions);
+		}
+
+		return options;
+	}
+
+	//
+	// Select the tests of this shard, balancing the shards by the costs of the shard cost file.
+	// The cost data in the binary directory is not used, as CTest rewrites it after each shard's
+	// run and the shards would otherwise compute different assignments.
+	// Returns the selection file for the CTest -I option, or null if the shard has no tests.
+	//
+	private Path selectShard(Path binDirectory) throws MojoExecutionException {
+		final Log log = getLog();
+		final Map<String, Integer> tests = CTest.listTests(
+			log, binDirectory, getCTestOptions(), getLaunchContext(getEnvironmentVariables())
+		);
+
+		final TestShards shards;
+
+		try {
+			shards = TestShards.assignFromFile(
+				  new ArrayList<>(tests.keySet())
+				, shardCostFile != null ? shardCostFile.toPath() : null
+				, shardCount
+			);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to read the shard cost file " + shardCostFile + ": " + e.getMessage(), e);
+		}
+
+		if (shardCostFile == null) {
+			log.debug("No shard cost file, the test shards are balanced by test count.");
+		}
+
+		final List<String> shardTests = shards.getTests(shardIndex);
+
+		log.info(String.format(
+			  "Shard %d of %d: %d of %d tests, expected cost %.1fs."
+			, shardIndex
+			, shardCount
+			, shardTests.size()
+			, tests.size()
+			, shards.getCost(shardIndex)
+		));
+
+		if (shardTests.isEmpty()) {
+			return null;
+		}
+
+		final List<Integer> numbers = new ArrayList<>();
+
+		for (String test : shardTests) {
+			numbers.add(tests.get(test));
+		}
+
+		Collections.sort(numbers);
+
+		final Path selection = binDirectory.resolve("Testing/Temporary/cmake-maven-plugin-shard-" + shardIndex + ".txt");
+
+		try {
+			CTest.writeTestSelection(selection, numbers);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to write the test selection " + selection + ": " + e.getMessage(), e);
+		}
+
+		return selection;
+	}
+
+	//
+	// Log the most expensive tests of the cost data from which CTest schedules the tests.
+	//
+	private void logCostData(Path binDirectory) {
+		final Log log = getLog();
+
+		try {
+			final CTestCostData costData = CTestCostData.read(binDirectory);
+
+			if (costData == null) {
+				log.debug("No CTest cost data, tests are scheduled in declaration order.");
+				return;
+			}
+
+			final List<String> slowest = costData.getSlowestFirst();
+			final StringBuilder message = new StringBuilder(
+				"Scheduling from the cost data of " + slowest.size() + " tests, slowest first:"
+			);
+
+			for (int i = 0; i < Math.min(LOGGED_COSTS, slowest.size()); i++) {
+				message.append(String.format(" %s (%.1fs)", slowest.get(i), costData.getCost(slowest.get(i))));
+			}
+
+			log.info(message.toString());
+		} catch (IOException e) {
+			log.warn("Failed to read the CTest cost data: " + e.getMessage());
+		}
+	}
+
+	//
+	// Returns null if this run did not produce a results file.
+	//
+	private CTestResults readResults(Path binDirectory, long start) {
+		final Log log = getLog();
+
+		try {
+			final Path file = CTest.findTestResults(binDirectory);
+
+			// Results of a previous run are not reported (file times have a resolution of a second on some systems).
+			if (file == null || Files.getLastModifiedTime(file).toMillis() < start - 1000) {
+				log.warn("CTest did not write the test results.");
+				return null;
+			}
+
+			return CTestResults.read(file);
+		} catch (IOException e) {
+			log.warn("Failed to read the CTest results: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void writeReport(CTestResults results, String suiteName) {
+		final Path report = getTestReportsDirectory().resolve("TEST-" + suiteName + ".xml");
+
+		try {
+			results.writeSurefireReport(report, suiteName);
+		} catch (IOException e) {
+			getLog().warn("Failed to write the test report " + report + ": " + e.getMessage());
+		}
+	}
+}
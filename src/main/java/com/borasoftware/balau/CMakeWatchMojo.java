@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau;
+
+import com.borasoftware.balau.builder.Utilities;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stay resident and rebuild the compile targets whenever the sources change. CMake is
+ * rerun when CMake inputs change. A running build is cancelled when new changes arrive.
+ *
+ * @author Nicholas Smethurst
+ */
+@Mojo(name = "watch")
+public class CMakeWatchMojo extends CMakeConfigureMojo {
+	// Set whilst a configure has not completed, so that a failed or cancelled configure is retried.
+	private volatile boolean configurePending;
+
+	@Override
+	public void execute() throws MojoExecutionException {
+		checkParameters();
+
+		if (configurations != null && !configurations.isEmpty()) {
+			throw new MojoExecutionException("The watch goal builds a single configuration, the configurations parameter is not supported.");
+		}
+
+		final Log log = getLog();
+		final Path srcDirectory = Utilities.getCMakeSourceDirectory(projectBuildDirectory, cmakeSourceDirectory);
+		final Path binDirectory = Utilities.getCMakeBinaryDirectory(projectBuildDirectory, cmakeBinaryDirectory);
+		final Set<Path> excluded = new HashSet<>();
+
+		for (Path directory : Arrays.asList(binDirectory, projectBuildDirectory.toPath())) {
+			excluded.add(directory.toAbsolutePath().normalize());
+		}
+
+		final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				final Thread thread = new Thread(runnable, "cmake-maven-plugin watch build");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			final Map<WatchKey, Path> keys = new HashMap<>();
+			register(watcher, keys, srcDirectory.toAbsolutePath().normalize(), excluded);
+
+			// Builds run one at a time on the executor. A cancelled build destroys its process
+			// tree and waits for it to exit (see ProcessOutput.run), so the next build starts
+			// once the build tool of the cancelled build has stopped.
+			Future<?> build = executor.submit(new Rebuild(true));
+
+			while (true) {
+				final boolean cmakeInputsChanged = awaitChanges(watcher, keys, excluded, watchDebounce);
+
+				if (!build.isDone()) {
+					log.info("Sources changed, cancelling the running build.");
+					build.cancel(true);
+				}
+
+				build = executor.submit(new Rebuild(cmakeInputsChanged));
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Failed to watch " + srcDirectory + ": " + e.getMessage(), e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.info("Watch stopped.");
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	//
+	// Wait for a burst of changes to end. Returns true if a CMake input changed.
+	//
+	static boolean awaitChanges(WatchService watcher, Map<WatchKey, Path> keys, Set<Path> excluded, long debounce)
+		throws InterruptedException, IOException {
+		boolean cmakeInputsChanged = false;
+		WatchKey key = watcher.take();
+
+		while (key != null) {
+			final Path directory = keys.get(key);
+
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+					// Events were lost, so assume the worst.
+					cmakeInputsChanged = true;
+					continue;
+				}
+
+				if (directory == null) {
+					continue;
+				}
+
+				final Path path = directory.resolve((Path) event.context());
+				final String name = path.getFileName().toString();
+
+				if (name.equals("CMakeLists.txt") || name.endsWith(".cmake")) {
+					cmakeInputsChanged = true;
+				}
+
+				// Created directories are checked here, as register exempts its root from the
+				// hidden directory rule so that a hidden source directory is still watched.
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path) && !isIgnored(path, excluded)) {
+					register(watcher, keys, path, excluded);
+					// A new directory may arrive populated, e.g. from a version control checkout.
+					cmakeInputsChanged = true;
+				}
+			}
+
+			if (!key.reset()) {
+				keys.remove(key);
+			}
+
+			key = watcher.poll(debounce, TimeUnit.MILLISECONDS);
+		}
+
+		return cmakeInputsChanged;
+	}
+
+	//
+	// Register the directory tree of the source directory or of a created directory.
+	//
+	static void register(final WatchService watcher,
+	                     final Map<WatchKey, Path> keys,
+	                     final Path root,
+	                     final Set<Path> excluded) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if (!dir.equals(root) && isIgnored(dir, excluded)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+
+				final WatchKey key = dir.register(
+					  watcher
+					, StandardWatchEventKinds.ENTRY_CREATE
+					, StandardWatchEventKinds.ENTRY_DELETE
+					, StandardWatchEventKinds.ENTRY_MODIFY
+				);
+
+				keys.put(key, dir);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	//
+	// Hidden directories such as .git and .idea do not hold build inputs.
+	//
+	static boolean isIgnored(Path directory, Set<Path> excluded) {
+		final Path fileName = directory.getFileName();
+		return excluded.contains(directory) || (fileName != null && fileName.toString().startsWith("."));
+	}
+
+	//
+	// Configure if required and build the compile targets, logging rather than
+	// throwing failures so that the watch continues.
+	//
+	private class Rebuild implements Runnable {
+		private final boolean configure;
+
+		Rebuild(boolean configure) {
+			this.configure = configure;
+		}
+
+		@Override
+		public void run() {
+			final Log log = getLog();
+
+			try {
+				if (configure || configurePending) {
+					configurePending = true;
+					CMakeWatchMojo.super.execute();
+					configurePending = false;
+				}
+
+				build(compileTargets, "compile");
+
+				if (!Thread.currentThread().isInterrupted()) {
+					log.info("Build succeeded, waiting for changes.");
+				}
+			} catch (MojoExecutionException e) {
+				if (Thread.currentThread().isInterrupted() || e.getCause() instanceof InterruptedException) {
+					log.info("Build cancelled.");
+				} else {
+					log.error("Build failed: " + e.getMessage());
+					log.info("Waiting for changes.");
+				}
+			} catch (RuntimeException e) {
+				// A failure of a listener, of the output condenser or of the build index.
+				log.error("Build failed: " + e, e);
+				log.info("Waiting for changes.");
+			}
+		}
+	}
+}
@@ -22,6 +22,7 @@ import org.apache.maven.plugin.logging.Log;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -46,10 +47,28 @@ public class CMake {
 	                            List<String> parameters,
 	                            Map<String, String> environmentVariables,
 	                            String cmakePath) throws MojoExecutionException {
+		runCMake(new ProcessOutput(log), buildDirectory, parameters, LaunchContext.create(cmakePath, environmentVariables));
+	}
+
+	/**
+	 * Run the CMake process with a resolved launch context.
+	 *
+	 * @param output the process output pump
+	 * @param buildDirectory the directory in which CMake will be executed
+	 * @param parameters the command line parameters to be specified to CMake
+	 * @param context the launch context
+	 * @throws MojoExecutionException if an error occurs
+	 */
+	public static void runCMake(ProcessOutput output,
+	                            Path buildDirectory,
+	                            List<String> parameters,
+	                            LaunchContext context) throws MojoExecutionException {
 		try {
-			final String cmake = cmakePath != null && !cmakePath.isEmpty() ? cmakePath : "cmake";
-			final Process process = Utilities.createProcess(log, cmake, buildDirectory, parameters, environmentVariables);
-			Utilities.runProcess("cmake", log, process);
+			final Process process = Utilities.createProcess(
+				output, context, context.getCMake(), buildDirectory, parameters
+			);
+
+			output.run("cmake", process);
 		} catch (InterruptedException e) {
 			throw new MojoExecutionException("CMake command was interrupted.", e);
 		} catch (IOException e) {
@@ -57,5 +76,25 @@ public class CMake {
 		}
 	}
 
+	//
+	// Run "cmake --version". Use LaunchContext.getVersion to obtain the cached version.
+	//
+	static String queryVersion(Log log, Path buildDirectory, LaunchContext context) {
+		try {
+			final Process process = Utilities.createProcess(
+				log, context, context.getCMake(), buildDirectory, Collections.singletonList("--version")
+			);
+
+			final List<String> lines = Utilities.captureProcess("cmake", process);
+			return lines.isEmpty() ? null : lines.get(0).trim();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (IOException | MojoExecutionException e) {
+			log.debug("Failed to obtain the CMake version: " + e.getMessage());
+			return null;
+		}
+	}
+
 	private CMake() {}
 }
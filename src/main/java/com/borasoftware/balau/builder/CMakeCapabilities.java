@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The features supported by a CMake binary.
+ *
+ * The capabilities are probed with "cmake --version" and "cmake -E capabilities"
+ * (CMake 3.7 and later), and persisted per binary in the user's home directory, so that
+ * the binary is probed once per machine. A persisted probe is discarded when the size or
+ * modification time of the binary changes.
+ *
+ * When the version could not be determined, the capabilities that the plugin has
+ * always relied upon are assumed to be supported, and the newer ones are not.
+ *
+ * @author Nicholas Smethurst
+ */
+public class CMakeCapabilities {
+	private final String versionLine;
+	private final CMakeVersion version;
+	private final List<String> generators;
+	private final Set<String> fileApiRequests;
+
+	// The raw capabilities, persisted as probed.
+	private final JsonObject json;
+
+	/**
+	 * Get the directory in which the probed capabilities are persisted by default.
+	 *
+	 * @return the directory
+	 */
+	public static Path getDefaultDirectory() {
+		return Paths.get(System.getProperty("user.home"), ".cmake-maven-plugin", "capabilities");
+	}
+
+	/**
+	 * Get the capabilities of the CMake binary of the launch context, probing the binary
+	 * if there are no valid persisted capabilities.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param buildDirectory the directory in which CMake will be executed if it is probed
+	 * @param context the launch context
+	 * @param directory the directory in which the capabilities are persisted
+	 * @return the capabilities
+	 */
+	public static CMakeCapabilities get(Log log, Path buildDirectory, LaunchContext context, Path directory) {
+		final Path tool = Paths.get(context.getCMake());
+
+		if (!tool.isAbsolute() || !Files.isRegularFile(tool)) {
+			// The binary was not resolved, so there is nothing to key the persisted capabilities on.
+			return probe(log, buildDirectory, context);
+		}
+
+		final Path file = directory.resolve(Digests.digest(tool.toString()) + ".json");
+
+		try {
+			final String stamp = getStamp(tool);
+
+			if (Files.isRegularFile(file)) {
+				final JsonObject persisted = new JsonParser()
+					.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+					.getAsJsonObject();
+
+				if (tool.toString().equals(getString(persisted, "tool")) && stamp.equals(getString(persisted, "stamp"))) {
+					final JsonElement capabilities = persisted.get("capabilities");
+
+					return new CMakeCapabilities(
+						  getString(persisted, "versionLine")
+						, capabilities != null && capabilities.isJsonObject() ? capabilities.getAsJsonObject() : null
+					);
+				}
+			}
+
+			final CMakeCapabilities probed = probe(log, buildDirectory, context);
+
+			if (probed.versionLine != null) {
+				store(log, file, tool, stamp, probed);
+			}
+
+			return probed;
+		} catch (IOException | JsonParseException | IllegalStateException e) {
+			log.warn("Failed to read the persisted CMake capabilities " + file + ": " + e.getMessage());
+			return probe(log, buildDirectory, context);
+		}
+	}
+
+	/**
+	 * Parse the probe output.
+	 *
+	 * @param versionLine the first line of "cmake --version" (may be null)
+	 * @param capabilities the output of "cmake -E capabilities" (may be null)
+	 * @return the capabilities
+	 */
+	static CMakeCapabilities parse(String versionLine, String capabilities) {
+		JsonObject json = null;
+
+		if (capabilities != null) {
+			try {
+				final JsonElement element = new JsonParser().parse(capabilities);
+				json = element.isJsonObject() ? element.getAsJsonObject() : null;
+			} catch (JsonParseException e) {
+				json = null;
+			}
+		}
+
+		return new CMakeCapabilities(versionLine, json);
+	}
+
+	private CMakeCapabilities(String versionLine, JsonObject capabilities) {
+		final List<String> generators = new ArrayList<>();
+		final Set<String> fileApiRequests = new LinkedHashSet<>();
+
+		if (capabilities != null) {
+			final JsonElement generatorList = capabilities.get("generators");
+
+			if (generatorList != null && generatorList.isJsonArray()) {
+				for (JsonElement generator : generatorList.getAsJsonArray()) {
+					if (generator.isJsonObject() && generator.getAsJsonObject().has("name")) {
+						generators.add(generator.getAsJsonObject().get("name").getAsString());
+					}
+				}
+			}
+
+			final JsonElement fileApi = capabilities.get("fileApi");
+
+			if (fileApi != null && fileApi.isJsonObject() && fileApi.getAsJsonObject().get("requests") instanceof JsonArray) {
+				for (JsonElement request : fileApi.getAsJsonObject().getAsJsonArray("requests")) {
+					if (request.isJsonObject() && request.getAsJsonObject().has("kind")) {
+						fileApiRequests.add(request.getAsJsonObject().get("kind").getAsString());
+					}
+				}
+			}
+		}
+
+		this.versionLine = versionLine;
+		this.version = CMakeVersion.parse(versionLine);
+		this.generators = Collections.unmodifiableList(generators);
+		this.fileApiRequests = Collections.unmodifiableSet(fileApiRequests);
+		this.json = capabilities;
+	}
+
+	/**
+	 * Get the first line of "cmake --version".
+	 *
+	 * @return the version line, or null if the version could not be determined
+	 */
+	public String getVersionLine() {
+		return versionLine;
+	}
+
+	/**
+	 * Get the CMake version.
+	 *
+	 * @return the version, or null if the version could not be determined
+	 */
+	public CMakeVersion getVersion() {
+		return version;
+	}
+
+	/**
+	 * Get the generators supported by the binary.
+	 *
+	 * @return the generator names, or an empty list if the binary does not report its capabilities
+	 */
+	public List<String> getGenerators() {
+		return generators;
+	}
+
+	/**
+	 * Determine whether the "cmake --build" --parallel option is supported (CMake 3.12).
+	 * Assumed if the version is unknown.
+	 *
+	 * @return true if the option is supported
+	 */
+	public boolean supportsParallelOption() {
+		return version == null || version.isAtLeast(3, 12);
+	}
+
+	/**
+	 * Determine whether several --target values are supported in a single "cmake --build" (CMake 3.15).
+	 *
+	 * @return true if multiple targets are supported
+	 */
+	public boolean supportsMultipleTargets() {
+		return version != null && version.isAtLeast(3, 15);
+	}
+
+	/**
+	 * Determine whether the configure --fresh option is supported (CMake 3.24).
+	 *
+	 * @return true if the option is supported
+	 */
+	public boolean supportsFresh() {
+		return version != null && version.isAtLeast(3, 24);
+	}
+
+	/**
+	 * Determine whether the File API supports the specified object kind (CMake 3.14).
+	 * Assumed if the version is unknown.
+	 *
+	 * @param kind the object kind, e.g. "codemodel"
+	 * @return true if the kind is supported
+	 */
+	public boolean supportsFileApi(String kind) {
+		if (version == null) {
+			return true;
+		}
+
+		return json != null ? fileApiRequests.contains(kind) : version.isAtLeast(3, 14);
+	}
+
+	@Override
+	public String toString() {
+		return (versionLine != null ? versionLine : "unknown CMake version")
+			+ (generators.isEmpty() ? "" : ", generators " + generators)
+			+ (fileApiRequests.isEmpty() ? "" : ", File API " + fileApiRequests);
+	}
+
+	private static CMakeCapabilities probe(Log log, Path buildDirectory, LaunchContext context) {
+		final String versionLine = CMake.queryVersion(log, buildDirectory, context);
+		final CMakeVersion version = CMakeVersion.parse(versionLine);
+		String capabilities = null;
+
+		if (version != null && version.isAtLeast(3, 7)) {
+			try {
+				final List<String> lines = Utilities.captureProcess("cmake", Utilities.createProcess(
+					log, context, context.getCMake(), buildDirectory, Arrays.asList("-E", "capabilities")
+				));
+
+				final StringBuilder builder = new StringBuilder();
+
+				for (String line : lines) {
+					builder.append(line).append('\n');
+				}
+
+				capabilities = builder.toString();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (IOException | MojoExecutionException e) {
+				log.debug("Failed to obtain the CMake capabilities: " + e.getMessage());
+			}
+		}
+
+		final CMakeCapabilities result = parse(versionLine, capabilities);
+		log.debug("CMake capabilities: " + result);
+		return result;
+	}
+
+	private static void store(Log log, Path file, Path tool, String stamp, CMakeCapabilities capabilities) {
+		final JsonObject persisted = new JsonObject();
+
+		persisted.addProperty("tool", tool.toString());
+		persisted.addProperty("stamp", stamp);
+		persisted.addProperty("versionLine", capabilities.versionLine);
+
+		if (capabilities.json != null) {
+			persisted.add("capabilities", capabilities.json);
+		}
+
+		try {
+			Files.createDirectories(file.getParent());
+
+			final Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+
+			Files.write(temporary, persisted.toString().getBytes(StandardCharsets.UTF_8));
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			log.warn("Failed to persist the CMake capabilities " + file + ": " + e.getMessage());
+		}
+	}
+
+	private static String getStamp(Path tool) throws IOException {
+		return Files.size(tool) + ":" + Files.getLastModifiedTime(tool).toMillis();
+	}
+
+	private static String getString(JsonObject object, String name) {
+		final JsonElement element = object.get(name);
+		return element != null && element.isJsonPrimitive() ? element.getAsString() : null;
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed CMake version number.
+ *
+ * @author Nicholas Smethurst
+ */
+public class CMakeVersion implements Comparable<CMakeVersion> {
+	private static final Pattern VERSION_REGEX = Pattern.compile("(\\d+)\\.(\\d+)(?:\\.(\\d+))?");
+
+	private final int major;
+	private final int minor;
+	private final int patch;
+
+	/**
+	 * Parse the version number contained in the supplied text (typically the first line of "cmake --version").
+	 *
+	 * @param text the text containing the version number (may be null)
+	 * @return the parsed version, or null if the text does not contain a version number
+	 */
+	public static CMakeVersion parse(String text) {
+		if (text == null) {
+			return null;
+		}
+
+		final Matcher matcher = VERSION_REGEX.matcher(text);
+
+		if (!matcher.find()) {
+			return null;
+		}
+
+		final String patch = matcher.group(3);
+
+		return new CMakeVersion(
+			  Integer.parseInt(matcher.group(1))
+			, Integer.parseInt(matcher.group(2))
+			, patch != null ? Integer.parseInt(patch) : 0
+		);
+	}
+
+	public CMakeVersion(int major, int minor, int patch) {
+		this.major = major;
+		this.minor = minor;
+		this.patch = patch;
+	}
+
+	/**
+	 * Determine whether this version is the same or later than the specified version.
+	 *
+	 * @param major the major version number
+	 * @param minor the minor version number
+	 * @return true if this version is the same or later than the specified version
+	 */
+	public boolean isAtLeast(int major, int minor) {
+		return compareTo(new CMakeVersion(major, minor, 0)) >= 0;
+	}
+
+	public int getMajor() {
+		return major;
+	}
+
+	public int getMinor() {
+		return minor;
+	}
+
+	public int getPatch() {
+		return patch;
+	}
+
+	@Override
+	public int compareTo(CMakeVersion o) {
+		if (major != o.major) {
+			return major < o.major ? -1 : 1;
+		} else if (minor != o.minor) {
+			return minor < o.minor ? -1 : 1;
+		} else if (patch != o.patch) {
+			return patch < o.patch ? -1 : 1;
+		}
+
+		return 0;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return this == o || (o instanceof CMakeVersion && compareTo((CMakeVersion) o) == 0);
+	}
+
+	@Override
+	public int hashCode() {
+		return (major * 31 + minor) * 31 + patch;
+	}
+
+	@Override
+	public String toString() {
+		return major + "." + minor + "." + patch;
+	}
+}
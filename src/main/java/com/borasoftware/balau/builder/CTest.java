@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the CTest tests of a CMake binary directory.
+ *
+ * @author Nicholas Smethurst
+ */
+public class CTest {
+	/**
+	 * The test file that CMake writes into binary directories containing tests.
+	 */
+	public static final String TEST_FILE = "CTestTestfile.cmake";
+
+	// A test line of "ctest -N", e.g. "  Test #12: parser_tests".
+	private static final Pattern TEST_LINE = Pattern.compile("\\s*Test\\s+#(\\d+):\\s+(.+?)\\s*");
+
+	/**
+	 * Run CTest in dashboard test mode, so that the results are written to Testing/&lt;tag&gt;/Test.xml.
+	 * CTest schedules the most expensive tests first from the historical cost data in
+	 * Testing/Temporary/CTestCostData.txt when running tests in parallel.
+	 *
+	 * @param output the process output pump that will log the output of the tests
+	 * @param concurrency the number of tests to run in parallel
+	 * @param buildDirectory the binary directory containing the tests
+	 * @param options additional CTest command line options (may be null or empty)
+	 * @param context the launch context
+	 * @throws MojoExecutionException if CTest could not be run or a test failed
+	 */
+	public static void runCTest(ProcessOutput output,
+	                            int concurrency,
+	                            Path buildDirectory,
+	                            List<String> options,
+	                            LaunchContext context) throws MojoExecutionException {
+		final List<String> arguments = new ArrayList<>();
+
+		arguments.add("-T");
+		arguments.add("Test");
+		arguments.add("--no-compress-output");
+
+		if (concurrency > 1) {
+			arguments.add("-j");
+			arguments.add(Integer.toString(concurrency));
+		}
+
+		if (options != null) {
+			arguments.addAll(options);
+		}
+
+		try {
+			final Process process = Utilities.createProcess(
+				output, context, context.getCTest(), buildDirectory, arguments
+			);
+
+			output.run("ctest", process);
+		} catch (InterruptedException e) {
+			throw new MojoExecutionException("CTest command was interrupted.", e);
+		} catch (IOException e) {
+			throw new MojoExecutionException("CTest command threw an error.", e);
+		}
+	}
+
+	/**
+	 * List the tests of the binary directory with "ctest -N".
+	 *
+	 * @param log the Maven plugin logger
+	 * @param buildDirectory the binary directory containing the tests
+	 * @param options additional CTest command line options that filter the tests (may be null or empty)
+	 * @param context the launch context
+	 * @return a map of test names to test numbers in declaration order
+	 * @throws MojoExecutionException if the tests could not be listed
+	 */
+	public static Map<String, Integer> listTests(Log log,
+	                                             Path buildDirectory,
+	                                             List<String> options,
+	                                             LaunchContext context) throws MojoExecutionException {
+		final List<String> arguments = new ArrayList<>();
+
+		arguments.add("-N");
+
+		if (options != null) {
+			arguments.addAll(options);
+		}
+
+		try {
+			final Process process = Utilities.createProcess(
+				log, context, context.getCTest(), buildDirectory, arguments
+			);
+
+			final Map<String, Integer> tests = new LinkedHashMap<>();
+
+			for (String line : Utilities.captureProcess("ctest", process)) {
+				final Matcher matcher = TEST_LINE.matcher(line);
+
+				if (matcher.matches()) {
+					tests.put(matcher.group(2), Integer.parseInt(matcher.group(1)));
+				}
+			}
+
+			return tests;
+		} catch (InterruptedException e) {
+			throw new MojoExecutionException("CTest command was interrupted.", e);
+		} catch (IOException e) {
+			throw new MojoExecutionException("CTest command threw an error.", e);
+		}
+	}
+
+	/**
+	 * Write a test selection file for the CTest -I option, which runs the specified test numbers.
+	 *
+	 * @param file the selection file
+	 * @param numbers the test numbers
+	 * @throws IOException if the file could not be written
+	 */
+	public static void writeTestSelection(Path file, Collection<Integer> numbers) throws IOException {
+		// An empty range (start, end and stride of zero) followed by the individual test numbers.
+		final StringBuilder builder = new StringBuilder("0,0,0");
+
+		for (Integer number : numbers) {
+			builder.append(',').append(number);
+		}
+
+		Files.createDirectories(file.getParent());
+		Files.write(file, Collections.singletonList(builder.toString()), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Get the path of the CTest binary that accompanies the specified CMake binary.
+	 *
+	 * @param cmakePath optional path to the CMake binary (if null or empty, the path is searched)
+	 * @return the CTest binary
+	 */
+	public static String getCTestPath(String cmakePath) {
+		if (cmakePath == null || cmakePath.isEmpty()) {
+			return "ctest";
+		}
+
+		final Path cmake = Paths.get(cmakePath);
+		final String name = cmake.getFileName().toString();
+
+		return cmake.resolveSibling(name.toLowerCase().endsWith(".exe") ? "ctest.exe" : "ctest").toString();
+	}
+
+	/**
+	 * Find the Test.xml file written by the last dashboard test run.
+	 *
+	 * @param buildDirectory the binary directory containing the tests
+	 * @return the results file, or null if there is none
+	 * @throws IOException if the tag file could not be read
+	 */
+	public static Path findTestResults(Path buildDirectory) throws IOException {
+		final Path testing = buildDirectory.resolve("Testing");
+		final Path tagFile = testing.resolve("TAG");
+
+		if (!Files.isRegularFile(tagFile)) {
+			return null;
+		}
+
+		final List<String> lines = Files.readAllLines(tagFile, StandardCharsets.UTF_8);
+
+		if (lines.isEmpty() || lines.get(0).trim().isEmpty()) {
+			return null;
+		}
+
+		final Path results = testing.resolve(lines.get(0).trim()).resolve("Test.xml");
+		return Files.isRegularFile(results) ? results : null;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The historical test costs that CTest records in Testing/Temporary/CTestCostData.txt.
+ *
+ * Each line before the "---" separator holds a test name, the number of runs and the
+ * average cost in seconds. The names of the tests that failed in the last run follow the
+ * separator.
+ *
+ * @author Nicholas Smethurst
+ */
+public class CTestCostData {
+	/**
+	 * The path of the cost data file relative to the binary directory.
+	 */
+	public static final String FILE_NAME = "Testing/Temporary/CTestCostData.txt";
+
+	private final Map<String, Double> costs;
+	private final List<String> failed;
+
+	/**
+	 * Read the cost data of the specified binary directory.
+	 *
+	 * @param buildDirectory the binary directory containing the tests
+	 * @return the cost data, or null if there is none
+	 * @throws IOException if the cost data could not be read
+	 */
+	public static CTestCostData read(Path buildDirectory) throws IOException {
+		return readFile(buildDirectory.resolve(FILE_NAME));
+	}
+
+	/**
+	 * Read the specified cost data file.
+	 *
+	 * @param file the cost data file
+	 * @return the cost data, or null if the file does not exist
+	 * @throws IOException if the cost data could not be read
+	 */
+	public static CTestCostData readFile(Path file) throws IOException {
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+
+		return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+
+	static CTestCostData parse(List<String> lines) {
+		final Map<String, Double> costs = new LinkedHashMap<>();
+		final List<String> failed = new ArrayList<>();
+		boolean separator = false;
+
+		for (String line : lines) {
+			final String trimmed = line.trim();
+
+			if (trimmed.isEmpty()) {
+				continue;
+			}
+
+			if (trimmed.equals("---")) {
+				separator = true;
+			} else if (separator) {
+				failed.add(trimmed);
+			} else {
+				// The name may contain spaces, so the numeric fields are taken from the end.
+				final int costStart = trimmed.lastIndexOf(' ');
+				final int runsStart = costStart > 0 ? trimmed.lastIndexOf(' ', costStart - 1) : -1;
+
+				if (runsStart > 0) {
+					try {
+						costs.put(trimmed.substring(0, runsStart), Double.parseDouble(trimmed.substring(costStart + 1)));
+					} catch (NumberFormatException e) {
+						// Not a cost line.
+					}
+				}
+			}
+		}
+
+		return new CTestCostData(costs, failed);
+	}
+
+	private CTestCostData(Map<String, Double> costs, List<String> failed) {
+		this.costs = costs;
+		this.failed = failed;
+	}
+
+	/**
+	 * Get the average cost of the specified test.
+	 *
+	 * @param name the test name
+	 * @return the cost in seconds, or null if the test has no recorded cost
+	 */
+	public Double getCost(String name) {
+		return costs.get(name);
+	}
+
+	/**
+	 * Get the recorded costs.
+	 *
+	 * @return a map of test names to costs in seconds
+	 */
+	public Map<String, Double> getCosts() {
+		return Collections.unmodifiableMap(costs);
+	}
+
+	/**
+	 * Get the names of the tests that failed in the last run.
+	 *
+	 * @return the failed test names
+	 */
+	public List<String> getFailed() {
+		return Collections.unmodifiableList(failed);
+	}
+
+	/**
+	 * Get the test names ordered by decreasing cost.
+	 *
+	 * @return the test names, most expensive first
+	 */
+	public List<String> getSlowestFirst() {
+		final List<String> names = new ArrayList<>(costs.keySet());
+
+		Collections.sort(names, new Comparator<String>() {
+			@Override
+			public int compare(String lhs, String rhs) {
+				return Double.compare(costs.get(rhs), costs.get(lhs));
+			}
+		});
+
+		return names;
+	}
+}
@@ -0,0 +1,442 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The results of a CTest dashboard test run, read from Test.xml with a streaming parser
+ * and written as a Surefire compatible XML report.
+ *
+ * @author Nicholas Smethurst
+ */
+public class CTestResults {
+	/**
+	 * The outcome of a test.
+	 */
+	public enum Status {
+		PASSED, FAILED, ERROR, SKIPPED
+	}
+
+	/**
+	 * The result of a single test.
+	 */
+	public static class Result {
+		private final String name;
+		private final Status status;
+		private final double time;
+		private final String detail;
+		private final String output;
+
+		Result(String name, Status status, double time, String detail, String output) {
+			this.name = name;
+			this.status = status;
+			this.time = time;
+			this.detail = detail;
+			this.output = output;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * Get the execution time of the test.
+		 *
+		 * @return the execution time in seconds
+		 */
+		public double getTime() {
+			return time;
+		}
+
+		/**
+		 * Get the completion status reported by CTest, e.g. "Completed", "Failed" or "Disabled".
+		 *
+		 * @return the completion status (may be empty)
+		 */
+		public String getDetail() {
+			return detail;
+		}
+
+		public String getOutput() {
+			return output;
+		}
+	}
+
+	private final List<Result> results;
+
+	/**
+	 * Create test results.
+	 *
+	 * @param results the results of the individual tests
+	 */
+	public CTestResults(List<Result> results) {
+		this.results = Collections.unmodifiableList(new ArrayList<>(results));
+	}
+
+	/**
+	 * Read the results from a Test.xml file.
+	 *
+	 * @param file the Test.xml file
+	 * @return the test results
+	 * @throws IOException if the file could not be read or parsed
+	 */
+	public static CTestResults read(Path file) throws IOException {
+		try (InputStream input = Files.newInputStream(file)) {
+			final XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+
+			try {
+				return new CTestResults(readTests(reader));
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to parse " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Read the results from a Surefire report written by {@link #writeSurefireReport}.
+	 *
+	 * @param file the report file
+	 * @return the test results
+	 * @throws IOException if the file could not be read or parsed
+	 */
+	public static CTestResults readSurefireReport(Path file) throws IOException {
+		try (InputStream input = Files.newInputStream(file)) {
+			final XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+
+			try {
+				return new CTestResults(readTestCases(reader));
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to parse " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Merge the results of several test runs, e.g. of test shards.
+	 *
+	 * @param parts the results to merge
+	 * @return the merged results
+	 */
+	public static CTestResults merge(List<CTestResults> parts) {
+		final List<Result> results = new ArrayList<>();
+
+		for (CTestResults part : parts) {
+			results.addAll(part.results);
+		}
+
+		return new CTestResults(results);
+	}
+
+	public List<Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * Count the results with the specified status.
+	 *
+	 * @param status the status
+	 * @return the number of results with the status
+	 */
+	public int getCount(Status status) {
+		int count = 0;
+
+		for (Result result : results) {
+			if (result.status == status) {
+				++count;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Get the total execution time of the tests.
+	 *
+	 * @return the total time in seconds
+	 */
+	public double getTime() {
+		double time = 0;
+
+		for (Result result : results) {
+			time += result.time;
+		}
+
+		return time;
+	}
+
+	/**
+	 * Write the results as a Surefire compatible XML report.
+	 *
+	 * @param file the report file
+	 * @param suiteName the name of the test suite, used as the class name of the test cases
+	 * @throws IOException if the report could not be written
+	 */
+	public void writeSurefireReport(Path file, String suiteName) throws IOException {
+		Files.createDirectories(file.getParent());
+
+		try (OutputStream output = Files.newOutputStream(file)) {
+			final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(output, "UTF-8");
+
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("testsuite");
+			writer.writeAttribute("name", suiteName);
+			writer.writeAttribute("tests", Integer.toString(results.size()));
+			writer.writeAttribute("failures", Integer.toString(getCount(Status.FAILED)));
+			writer.writeAttribute("errors", Integer.toString(getCount(Status.ERROR)));
+			writer.writeAttribute("skipped", Integer.toString(getCount(Status.SKIPPED)));
+			writer.writeAttribute("time", formatTime(getTime()));
+			writer.writeCharacters("\n");
+
+			for (Result result : results) {
+				writeTestCase(writer, suiteName, result);
+			}
+
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+			writer.close();
+		} catch (XMLStreamException e) {
+			throw new IOException("Failed to write " + file + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static void writeTestCase(XMLStreamWriter writer, String suiteName, Result result) throws XMLStreamException {
+		writer.writeCharacters("  ");
+		writer.writeStartElement("testcase");
+		writer.writeAttribute("name", result.name);
+		writer.writeAttribute("classname", suiteName);
+		writer.writeAttribute("time", formatTime(result.time));
+
+		switch (result.status) {
+			case FAILED: {
+				writer.writeStartElement("failure");
+				writer.writeAttribute("message", result.detail);
+				writer.writeAttribute("type", "ctest");
+				writer.writeCharacters(result.output);
+				writer.writeEndElement();
+				break;
+			}
+
+			case ERROR: {
+				writer.writeStartElement("error");
+				writer.writeAttribute("message", result.detail);
+				writer.writeAttribute("type", "ctest");
+				writer.writeEndElement();
+				break;
+			}
+
+			case SKIPPED: {
+				writer.writeStartElement("skipped");
+				writer.writeAttribute("message", result.detail);
+				writer.writeEndElement();
+				break;
+			}
+
+			default: {
+				break;
+			}
+		}
+
+		if (!result.output.isEmpty()) {
+			writer.writeStartElement("system-out");
+			writer.writeCharacters(result.output);
+			writer.writeEndElement();
+		}
+
+		writer.writeEndElement();
+		writer.writeCharacters("\n");
+	}
+
+	private static String formatTime(double seconds) {
+		return String.format(Locale.ROOT, "%.3f", seconds);
+	}
+
+	//
+	// Read the Test elements that carry a Status attribute. The Test elements of the
+	// TestList only hold the test paths.
+	//
+	private static List<Result> readTests(XMLStreamReader reader) throws XMLStreamException {
+		final List<Result> results = new ArrayList<>();
+
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT
+				&& reader.getLocalName().equals("Test")
+				&& reader.getAttributeValue(null, "Status") != null) {
+				results.add(readTest(reader, reader.getAttributeValue(null, "Status")));
+			}
+		}
+
+		return results;
+	}
+
+	private static Result readTest(XMLStreamReader reader, String status) throws XMLStreamException {
+		String name = "";
+		String measurement = null;
+		String completion = "";
+		String exitValue = "";
+		String output = "";
+		double time = 0;
+		int depth = 1;
+
+		while (depth > 0 && reader.hasNext()) {
+			final int event = reader.next();
+
+			if (event == XMLStreamConstants.END_ELEMENT) {
+				--depth;
+				continue;
+			}
+
+			if (event != XMLStreamConstants.START_ELEMENT) {
+				continue;
+			}
+
+			++depth;
+			final String element = reader.getLocalName();
+
+			if (element.equals("Name") && depth == 2) {
+				name = reader.getElementText().trim();
+				--depth;
+			} else if (element.equals("NamedMeasurement")) {
+				measurement = reader.getAttributeValue(null, "name");
+			} else if (element.equals("Measurement")) {
+				measurement = null;
+			} else if (element.equals("Value")) {
+				final String value = reader.getElementText();
+				--depth;
+
+				if (measurement == null) {
+					output = value;
+				} else if (measurement.equals("Execution Time")) {
+					time = parseTime(value);
+				} else if (measurement.equals("Completion Status")) {
+					completion = value.trim();
+				} else if (measurement.equals("Exit Value") || measurement.equals("Exit Code")) {
+					exitValue = value.trim();
+				}
+			}
+		}
+
+		return new Result(name, toStatus(status, completion), time, describe(status, completion, exitValue), output);
+	}
+
+	private static List<Result> readTestCases(XMLStreamReader reader) throws XMLStreamException {
+		final List<Result> results = new ArrayList<>();
+
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("testcase")) {
+				final String name = reader.getAttributeValue(null, "name");
+				final double time = parseTime(reader.getAttributeValue(null, "time"));
+				Status status = Status.PASSED;
+				String detail = "";
+				String output = "";
+
+				while (reader.hasNext()) {
+					final int event = reader.next();
+
+					if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("testcase")) {
+						break;
+					}
+
+					if (event != XMLStreamConstants.START_ELEMENT) {
+						continue;
+					}
+
+					final String element = reader.getLocalName();
+
+					if (element.equals("failure") || element.equals("error") || element.equals("skipped")) {
+						status = element.equals("failure")
+							? Status.FAILED
+							: element.equals("error") ? Status.ERROR : Status.SKIPPED;
+
+						final String message = reader.getAttributeValue(null, "message");
+						detail = message != null ? message : "";
+					} else if (element.equals("system-out")) {
+						output = reader.getElementText();
+					}
+				}
+
+				results.add(new Result(name != null ? name : "", status, time, detail, output));
+			}
+		}
+
+		return results;
+	}
+
+	private static Status toStatus(String status, String completion) {
+		switch (status) {
+			case "passed": {
+				return Status.PASSED;
+			}
+
+			case "failed": {
+				return Status.FAILED;
+			}
+
+			default: {
+				// Disabled tests and tests skipped by SKIP_RETURN_CODE are not run by design.
+				return completion.equals("Disabled") || completion.startsWith("Skipped") ? Status.SKIPPED : Status.ERROR;
+			}
+		}
+	}
+
+	private static String describe(String status, String completion, String exitValue) {
+		final StringBuilder builder = new StringBuilder(completion.isEmpty() ? status : completion);
+
+		if (!exitValue.isEmpty() && !exitValue.equals("0")) {
+			builder.append(" (exit value ").append(exitValue).append(')');
+		}
+
+		return builder.toString();
+	}
+
+	private static double parseTime(String value) {
+		if (value == null) {
+			return 0;
+		}
+
+		try {
+			return Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A ccache or sccache compiler launcher, used via the CMAKE_&lt;LANG&gt;_COMPILER_LAUNCHER
+ * variables. Provides the configure defines and environment variables of the cache, and
+ * snapshots of the cache statistics so that the hit rate of a build can be reported.
+ *
+ * @author Nicholas Smethurst
+ */
+public class CompilerCache {
+	/**
+	 * The kind of compiler cache.
+	 */
+	public enum Kind {
+		  CCACHE("ccache", "CCACHE_DIR", "CCACHE_MAXSIZE")
+		, SCCACHE("sccache", "SCCACHE_DIR", "SCCACHE_CACHE_SIZE");
+
+		private final String binary;
+		private final String directoryVariable;
+		private final String sizeVariable;
+
+		Kind(String binary, String directoryVariable, String sizeVariable) {
+			this.binary = binary;
+			this.directoryVariable = directoryVariable;
+			this.sizeVariable = sizeVariable;
+		}
+	}
+
+	/**
+	 * The languages for which a launcher is defined when none are specified.
+	 */
+	public static final List<String> DEFAULT_LANGUAGES = Arrays.asList("C", "CXX");
+
+	private final Kind kind;
+	private final Path executable;
+
+	/**
+	 * Detect the compiler cache specified by the supplied setting.
+	 *
+	 * The setting may be "none" (or empty), "auto" to use ccache or sccache if either
+	 * is found on the path, "ccache" or "sccache" to require the named cache, or the path
+	 * of a cache executable.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param setting the compiler cache setting (may be null)
+	 * @param environmentVariables the expanded extra environment variables, used to obtain the path
+	 * @return the compiler cache, or null if no compiler cache is to be used
+	 * @throws MojoExecutionException if a required compiler cache was not found
+	 */
+	public static CompilerCache detect(Log log,
+	                                   String setting,
+	                                   Map<String, String> environmentVariables) throws MojoExecutionException {
+		final String value = setting != null ? setting.trim() : "";
+
+		if (value.isEmpty() || value.equalsIgnoreCase("none")) {
+			return null;
+		}
+
+		final String path = Utilities.getSearchPath(environmentVariables);
+
+		if (value.equalsIgnoreCase("auto")) {
+			for (Kind kind : Kind.values()) {
+				final Path executable = Utilities.findExecutable(kind.binary, path);
+
+				if (executable != null) {
+					log.info("Using compiler cache " + executable);
+					return new CompilerCache(kind, executable);
+				}
+			}
+
+			log.debug("No compiler cache found on the path.");
+			return null;
+		}
+
+		for (Kind kind : Kind.values()) {
+			if (value.equalsIgnoreCase(kind.binary)) {
+				final Path executable = Utilities.findExecutable(kind.binary, path);
+
+				if (executable == null) {
+					throw new MojoExecutionException("Compiler cache " + kind.binary + " was not found on the path.");
+				}
+
+				return new CompilerCache(kind, executable);
+			}
+		}
+
+		final Path executable = Paths.get(value);
+
+		if (!Files.isRegularFile(executable)) {
+			throw new MojoExecutionException("Compiler cache " + value + " does not exist.");
+		}
+
+		final String name = executable.getFileName().toString().toLowerCase(Locale.ROOT);
+		return new CompilerCache(name.startsWith(Kind.SCCACHE.binary) ? Kind.SCCACHE : Kind.CCACHE, executable);
+	}
+
+	/**
+	 * Create a compiler cache.
+	 *
+	 * @param kind the kind of compiler cache
+	 * @param executable the compiler cache executable
+	 */
+	public CompilerCache(Kind kind, Path executable) {
+		this.kind = kind;
+		this.executable = executable;
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public Path getExecutable() {
+		return executable;
+	}
+
+	/**
+	 * Get the CMake defines that set the compiler cache as the launcher of the supplied languages.
+	 *
+	 * @param languages the languages (default to C and CXX if null or empty)
+	 * @return a sorted map of defines
+	 */
+	public Map<String, String> getDefines(List<String> languages) {
+		final Map<String, String> defines = new TreeMap<>();
+		final List<String> actualLanguages = languages != null && !languages.isEmpty() ? languages : DEFAULT_LANGUAGES;
+
+		for (String language : actualLanguages) {
+			defines.put("CMAKE_" + language.trim() + "_COMPILER_LAUNCHER", executable.toString());
+		}
+
+		return defines;
+	}
+
+	/**
+	 * Get the environment variables that set the cache directory and maximum size.
+	 *
+	 * @param directory the cache directory (null for the cache's default)
+	 * @param maximumSize the maximum cache size, e.g. "5G" (null for the cache's default)
+	 * @return a sorted map of environment variables, empty if neither is specified
+	 */
+	public Map<String, String> getEnvironment(File directory, String maximumSize) {
+		final Map<String, String> environment = new TreeMap<>();
+
+		if (directory != null) {
+			environment.put(kind.directoryVariable, directory.getAbsolutePath());
+		}
+
+		if (maximumSize != null && !maximumSize.trim().isEmpty()) {
+			environment.put(kind.sizeVariable, maximumSize.trim());
+		}
+
+		return environment;
+	}
+
+	/**
+	 * Obtain the current statistics of the compiler cache.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param buildDirectory the directory in which the cache executable is run
+	 * @param context the launch context
+	 * @return the statistics, or null if they could not be obtained
+	 */
+	public Stats getStats(Log log, Path buildDirectory, LaunchContext context) {
+		final List<String> arguments = kind == Kind.CCACHE
+			? Arrays.asList("--print-stats")
+			: Arrays.asList("--show-stats", "--stats-format=json");
+
+		try {
+			final Process process = Utilities.createQueryProcess(
+				log, context, executable.toString(), buildDirectory, arguments
+			);
+
+			final List<String> lines = Utilities.captureProcess(kind.binary, process);
+			return kind == Kind.CCACHE ? parseCCacheStats(lines) : parseSCCacheStats(lines);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (IOException | MojoExecutionException | JsonParseException e) {
+			log.debug("Failed to obtain the " + kind.binary + " statistics: " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Parse the tab separated output of "ccache --print-stats" (ccache 3.7 and later).
+	 *
+	 * @param lines the output lines
+	 * @return the statistics
+	 */
+	static Stats parseCCacheStats(List<String> lines) {
+		final Map<String, Long> values = new TreeMap<>();
+
+		for (String line : lines) {
+			final String[] fields = line.trim().split("\t");
+
+			if (fields.length == 2) {
+				try {
+					values.put(fields[0], Long.parseLong(fields[1].trim()));
+				} catch (NumberFormatException e) {
+					// Timestamps and other non-counter fields.
+				}
+			}
+		}
+
+		// ccache 4 renamed the hit counters of ccache 3.
+		final long hits = get(values, "direct_cache_hit") + get(values, "preprocessed_cache_hit")
+			+ get(values, "cache_hit_direct") + get(values, "cache_hit_preprocessed");
+
+		return new Stats(hits, get(values, "cache_miss"), get(values, "cache_size_kibibyte") * 1024);
+	}
+
+	/**
+	 * Parse the output of "sccache --show-stats --stats-format=json".
+	 *
+	 * @param lines the output lines
+	 * @return the statistics
+	 */
+	static Stats parseSCCacheStats(List<String> lines) {
+		final StringBuilder builder = new StringBuilder();
+
+		for (String line : lines) {
+			builder.append(line).append('\n');
+		}
+
+		final JsonObject root = new JsonParser().parse(builder.toString()).getAsJsonObject();
+		final JsonObject stats = root.has("stats") ? root.getAsJsonObject("stats") : root;
+		final long size = root.has("cache_size") && root.get("cache_size").isJsonPrimitive()
+			? root.get("cache_size").getAsLong()
+			: 0;
+
+		return new Stats(sumCounts(stats, "cache_hits"), sumCounts(stats, "cache_misses"), size);
+	}
+
+	private static long sumCounts(JsonObject stats, String name) {
+		if (!stats.has(name) || !stats.get(name).isJsonObject()) {
+			return 0;
+		}
+
+		final JsonObject counter = stats.getAsJsonObject(name);
+		final JsonObject counts = counter.has("counts") ? counter.getAsJsonObject("counts") : counter;
+		long sum = 0;
+
+		for (Map.Entry<String, JsonElement> entry : counts.entrySet()) {
+			if (entry.getValue().isJsonPrimitive()) {
+				sum += entry.getValue().getAsLong();
+			}
+		}
+
+		return sum;
+	}
+
+	private static long get(Map<String, Long> values, String key) {
+		final Long value = values.get(key);
+		return value != null ? value : 0;
+	}
+
+	/**
+	 * A snapshot of the compiler cache statistics.
+	 */
+	public static class Stats {
+		private final long hits;
+		private final long misses;
+		private final long size;
+
+		public Stats(long hits, long misses, long size) {
+			this.hits = hits;
+			this.misses = misses;
+			this.size = size;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * Get the size of the cache in bytes (zero if unknown).
+		 *
+		 * @return the size of the cache
+		 */
+		public long getSize() {
+			return size;
+		}
+
+		/**
+		 * Get the hit rate in the range 0 to 1.
+		 *
+		 * @return the hit rate, or zero if there were no cacheable compilations
+		 */
+		public double getHitRate() {
+			final long total = hits + misses;
+			return total > 0 ? (double) hits / total : 0;
+		}
+
+		/**
+		 * Get the statistics accumulated since the supplied earlier snapshot.
+		 *
+		 * @param before the earlier snapshot
+		 * @return the difference between the two snapshots
+		 */
+		public Stats since(Stats before) {
+			return new Stats(hits - before.hits, misses - before.misses, size - before.size);
+		}
+	}
+}
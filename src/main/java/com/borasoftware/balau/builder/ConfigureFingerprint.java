@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A fingerprint of all the inputs that affect a CMake configure run.
+ *
+ * The fingerprint is stored in the CMake binary directory after a successful
+ * configure run. When the freshly calculated fingerprint matches the stored
+ * one and the CMake cache exists, the configure run can be skipped.
+ *
+ * @author Nicholas Smethurst
+ */
+public class ConfigureFingerprint {
+	/**
+	 * The name of the fingerprint file stored in the CMake binary directory.
+	 */
+	public static final String FILE_NAME = "cmake-maven-plugin.fingerprint";
+
+	private static final String HEADER = "# cmake-maven-plugin configure fingerprint";
+
+	private static final String SOURCE_KEY = "source";
+	private static final String GENERATOR_KEY = "generator";
+	private static final String VERSION_KEY = "cmake";
+	private static final String DEFINE_PREFIX = "define:";
+	private static final String ENVIRONMENT_PREFIX = "env:";
+	private static final String FILE_PREFIX = "file:";
+
+	private final SortedMap<String, String> entries;
+
+	/**
+	 * Calculate the fingerprint of the supplied configure inputs.
+	 *
+	 * @param sourceDirectory the CMake source directory, which is scanned for CMakeLists.txt and *.cmake files
+	 * @param excludedDirectories directories that are not scanned (typically the build directories)
+	 * @param generator the generator specified to CMake (may be null)
+	 * @param cmakeDefines the command line definitions specified to CMake (may be null)
+	 * @param environment the expanded extra environment variables (may be null)
+	 * @param cmakeVersion the version reported by the CMake binary (may be null)
+	 * @return the fingerprint
+	 * @throws IOException if the source directory could not be scanned
+	 */
+	public static ConfigureFingerprint calculate(Path sourceDirectory,
+	                                             Collection<Path> excludedDirectories,
+	                                             String generator,
+	                                             Map<String, String> cmakeDefines,
+	                                             Map<String, String> environment,
+	                                             String cmakeVersion) throws IOException {
+		final SortedMap<String, String> entries = new TreeMap<>();
+		final Path root = sourceDirectory.toAbsolutePath().normalize();
+
+		entries.put(SOURCE_KEY, root.toString());
+		entries.put(GENERATOR_KEY, generator != null ? generator.trim() : "");
+		entries.put(VERSION_KEY, cmakeVersion != null ? cmakeVersion.trim() : "unknown");
+
+		if (cmakeDefines != null) {
+			for (Map.Entry<String, String> entry : cmakeDefines.entrySet()) {
+				final String value = entry.getValue();
+
+				if (value != null && !value.isEmpty()) {
+					entries.put(DEFINE_PREFIX + entry.getKey(), Digests.digest(value));
+				}
+			}
+		}
+
+		if (environment != null) {
+			for (Map.Entry<String, String> entry : environment.entrySet()) {
+				entries.put(ENVIRONMENT_PREFIX + entry.getKey(), Digests.digest(entry.getValue()));
+			}
+		}
+
+		if (Files.isDirectory(root)) {
+			for (Path file : findFiles(root, excludedDirectories, true)) {
+				entries.put(FILE_PREFIX + relativeName(root, file), Digests.digest(file));
+			}
+		}
+
+		return new ConfigureFingerprint(entries);
+	}
+
+	/**
+	 * Load the fingerprint stored in the supplied CMake binary directory.
+	 *
+	 * @param binaryDirectory the CMake binary directory
+	 * @return the stored fingerprint, or null if there is no stored fingerprint
+	 * @throws IOException if the fingerprint file could not be read
+	 */
+	public static ConfigureFingerprint load(Path binaryDirectory) throws IOException {
+		final Path file = binaryDirectory.resolve(FILE_NAME);
+
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+
+		final SortedMap<String, String> entries = new TreeMap<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				final int separator = line.indexOf('\t');
+
+				if (line.startsWith("#") || separator == -1) {
+					continue;
+				}
+
+				entries.put(line.substring(0, separator), line.substring(separator + 1));
+			}
+		}
+
+		return new ConfigureFingerprint(entries);
+	}
+
+	/**
+	 * Delete the fingerprint stored in the supplied CMake binary directory, if one exists.
+	 *
+	 * @param binaryDirectory the CMake binary directory
+	 * @throws IOException if the fingerprint file could not be deleted
+	 */
+	public static void delete(Path binaryDirectory) throws IOException {
+		Files.deleteIfExists(binaryDirectory.resolve(FILE_NAME));
+	}
+
+	/**
+	 * Store the fingerprint in the supplied CMake binary directory.
+	 *
+	 * @param binaryDirectory the CMake binary directory
+	 * @throws IOException if the fingerprint file could not be written
+	 */
+	public void store(Path binaryDirectory) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(binaryDirectory.resolve(FILE_NAME), StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.newLine();
+
+			for (Map.Entry<String, String> entry : entries.entrySet()) {
+				writer.write(entry.getKey());
+				writer.write('\t');
+				writer.write(entry.getValue());
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Get the generator recorded in the fingerprint.
+	 *
+	 * @return the generator, or an empty string if the default generator was used
+	 */
+	public String getGenerator() {
+		final String generator = entries.get(GENERATOR_KEY);
+		return generator != null ? generator : "";
+	}
+
+	/**
+	 * Describe the inputs that differ between this fingerprint and the supplied previous fingerprint.
+	 *
+	 * @param previous the previous fingerprint (may be null)
+	 * @return a list of human readable descriptions, empty if the fingerprints match
+	 */
+	public List<String> differences(ConfigureFingerprint previous) {
+		final List<String> differences = new ArrayList<>();
+
+		if (previous == null) {
+			differences.add("no previous configure fingerprint");
+			return differences;
+		}
+
+		final Set<String> keys = new TreeSet<>(entries.keySet());
+		keys.addAll(previous.entries.keySet());
+
+		for (String key : keys) {
+			final String current = entries.get(key);
+			final String old = previous.entries.get(key);
+
+			if (old == null) {
+				differences.add(describe(key) + " added");
+			} else if (current == null) {
+				differences.add(describe(key) + " removed");
+			} else if (!current.equals(old)) {
+				differences.add(describe(key) + " changed");
+			}
+		}
+
+		return differences;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return this == o || (o instanceof ConfigureFingerprint && entries.equals(((ConfigureFingerprint) o).entries));
+	}
+
+	@Override
+	public int hashCode() {
+		return entries.hashCode();
+	}
+
+	private ConfigureFingerprint(SortedMap<String, String> entries) {
+		this.entries = entries;
+	}
+
+	//
+	// Find the regular files within the root directory, skipping the excluded and hidden directories.
+	// If cmakeFilesOnly is set, only CMakeLists.txt and *.cmake files are returned.
+	//
+	static List<Path> findFiles(final Path root,
+	                            Collection<Path> excludedDirectories,
+	                            final boolean cmakeFilesOnly) throws IOException {
+		final Set<Path> excluded = new HashSet<>();
+		final List<Path> files = new ArrayList<>();
+
+		if (excludedDirectories != null) {
+			for (Path directory : excludedDirectories) {
+				if (directory != null) {
+					excluded.add(directory.toAbsolutePath().normalize());
+				}
+			}
+		}
+
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+				final Path fileName = dir.getFileName();
+
+				if (dir.equals(root)) {
+					return FileVisitResult.CONTINUE;
+				}
+
+				// Hidden directories such as .git and .idea do not hold CMake inputs.
+				if (excluded.contains(dir) || (fileName != null && fileName.toString().startsWith("."))) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				final String name = file.getFileName().toString();
+
+				if (attrs.isRegularFile() && (!cmakeFilesOnly || name.equals("CMakeLists.txt") || name.endsWith(".cmake"))) {
+					files.add(file);
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				// Unreadable entries cannot be CMake inputs of a working build.
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		return files;
+	}
+
+	static String relativeName(Path root, Path file) {
+		return root.relativize(file).toString().replace('\\', '/');
+	}
+
+	private static String describe(String key) {
+		if (key.startsWith(FILE_PREFIX)) {
+			return "file " + key.substring(FILE_PREFIX.length());
+		} else if (key.startsWith(DEFINE_PREFIX)) {
+			return "CMake define " + key.substring(DEFINE_PREFIX.length());
+		} else if (key.startsWith(ENVIRONMENT_PREFIX)) {
+			return "environment variable " + key.substring(ENVIRONMENT_PREFIX.length());
+		} else if (key.equals(GENERATOR_KEY)) {
+			return "generator";
+		} else if (key.equals(VERSION_KEY)) {
+			return "CMake version";
+		} else if (key.equals(SOURCE_KEY)) {
+			return "source directory";
+		}
+
+		return key;
+	}
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses GCC, Clang and CMake diagnostics from process output as it is read.
+ *
+ * Repeated diagnostics (typically warnings in headers included by many translation
+ * units) are counted once. Diagnostics are attributed to the target most recently
+ * named in the build tool's progress output, which is approximate in parallel builds.
+ *
+ * @author Nicholas Smethurst
+ */
+public class DiagnosticsParser implements OutputConsumer {
+	/**
+	 * The error severity.
+	 */
+	public static final String ERROR = "error";
+
+	/**
+	 * The warning severity.
+	 */
+	public static final String WARNING = "warning";
+
+	/**
+	 * The note severity.
+	 */
+	public static final String NOTE = "note";
+
+	private static final String UNKNOWN_TARGET = "(unknown)";
+
+	// The maximum number of unique diagnostics listed in the summary.
+	private static final int MAXIMUM_LISTED_DIAGNOSTICS = 1000;
+
+	// file:line[:column]: severity: message
+	private static final Pattern COMPILER_REGEX = Pattern.compile(
+		"^(.+?):(\\d+):(?:(\\d+):)?\\s+(fatal error|error|warning|note|remark):\\s+(.*)$"
+	);
+
+	// CMake Error at file:line (command):
+	private static final Pattern CMAKE_LOCATED_REGEX = Pattern.compile(
+		"^CMake (Error|Warning|Deprecation Error|Deprecation Warning)(?: \\(dev\\))? at (.+?):(\\d+)(?: \\(.*\\))?:?\\s*$"
+	);
+
+	// CMake Error: message
+	private static final Pattern CMAKE_REGEX = Pattern.compile(
+		"^CMake (Error|Warning)(?: \\(dev\\))?: (.*)$"
+	);
+
+	private static final Pattern TARGET_REGEX = Pattern.compile(
+		"(?:CMakeFiles/([^/\\s]+)\\.dir/|(?:Scanning dependencies of|Built) target (\\S+))"
+	);
+
+	private static final Pattern ANSI_ESCAPE_REGEX = Pattern.compile("\u001B\\[[;\\d]*[A-Za-z]");
+
+	private final Map<String, Integer> severityCounts = new TreeMap<>();
+	private final Map<String, Map<String, Integer>> fileCounts = new TreeMap<>();
+	private final Map<String, Map<String, Integer>> targetCounts = new TreeMap<>();
+	private final List<Diagnostic> diagnostics = new ArrayList<>();
+	private final Set<String> seen = new HashSet<>();
+	private int duplicates;
+	private String currentTarget = UNKNOWN_TARGET;
+
+	// A located CMake diagnostic, whose message is on the following line.
+	private Diagnostic pendingCMakeDiagnostic;
+
+	/**
+	 * A single parsed diagnostic.
+	 */
+	public static class Diagnostic {
+		public final String file;
+		public final int line;
+		public final int column;
+		public final String severity;
+		public final String message;
+		public final String target;
+
+		Diagnostic(String file, int line, int column, String severity, String message, String target) {
+			this.file = file;
+			this.line = line;
+			this.column = column;
+			this.severity = severity;
+			this.message = message;
+			this.target = target;
+		}
+	}
+
+	@Override
+	public void consume(String line, boolean error) {
+		if (line.indexOf('\u001B') != -1) {
+			line = ANSI_ESCAPE_REGEX.matcher(line).replaceAll("");
+		}
+
+		if (pendingCMakeDiagnostic != null) {
+			if (line.trim().isEmpty()) {
+				return;
+			}
+
+			final Diagnostic pending = pendingCMakeDiagnostic;
+			pendingCMakeDiagnostic = null;
+
+			record(new Diagnostic(pending.file, pending.line, 0, pending.severity, line.trim(), pending.target));
+		}
+
+		Matcher matcher = COMPILER_REGEX.matcher(line);
+
+		if (matcher.matches()) {
+			final String column = matcher.group(3);
+
+			record(new Diagnostic(
+				  matcher.group(1).trim()
+				, Integer.parseInt(matcher.group(2))
+				, column != null ? Integer.parseInt(column) : 0
+				, normaliseSeverity(matcher.group(4))
+				, matcher.group(5).trim()
+				, currentTarget
+			));
+
+			return;
+		}
+
+		if (line.startsWith("CMake ")) {
+			matcher = CMAKE_LOCATED_REGEX.matcher(line);
+
+			if (matcher.matches()) {
+				pendingCMakeDiagnostic = new Diagnostic(
+					matcher.group(2), Integer.parseInt(matcher.group(3)), 0, normaliseSeverity(matcher.group(1)), "", currentTarget
+				);
+
+				return;
+			}
+
+			matcher = CMAKE_REGEX.matcher(line);
+
+			if (matcher.matches()) {
+				record(new Diagnostic("", 0, 0, normaliseSeverity(matcher.group(1)), matcher.group(2).trim(), currentTarget));
+				return;
+			}
+		}
+
+		matcher = TARGET_REGEX.matcher(line);
+
+		if (matcher.find()) {
+			currentTarget = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+		}
+	}
+
+	/**
+	 * Get the number of unique diagnostics of the specified severity.
+	 *
+	 * @param severity the severity
+	 * @return the number of unique diagnostics
+	 */
+	public int getCount(String severity) {
+		final Integer count = severityCounts.get(severity);
+		return count != null ? count : 0;
+	}
+
+	/**
+	 * Get the number of repeated diagnostics that were removed.
+	 *
+	 * @return the number of repeated diagnostics
+	 */
+	public int getDuplicateCount() {
+		return duplicates;
+	}
+
+	/**
+	 * Get the unique diagnostics (excluding notes) in output order, up to the listing limit.
+	 *
+	 * @return the diagnostics
+	 */
+	public List<Diagnostic> getDiagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * Get a one line summary of the diagnostic counts.
+	 *
+	 * @return the summary
+	 */
+	public String getSummary() {
+		return getCount(ERROR) + " errors, " + getCount(WARNING) + " warnings, "
+			+ getCount(NOTE) + " notes (" + duplicates + " repeated diagnostics removed)";
+	}
+
+	/**
+	 * Write the summary of the parsed diagnostics as JSON.
+	 *
+	 * @param file the file to write
+	 * @param goal the goal that produced the output
+	 * @throws IOException if the file could not be written
+	 */
+	public void writeSummary(Path file, String goal) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		     JsonWriter json = new JsonWriter(writer)) {
+			json.setIndent("  ");
+			json.beginObject();
+			json.name("goal").value(goal);
+			json.name("counts");
+			writeCounts(json, severityCounts);
+			json.name("duplicatesRemoved").value(duplicates);
+
+			json.name("files").beginObject();
+
+			for (Map.Entry<String, Map<String, Integer>> entry : fileCounts.entrySet()) {
+				json.name(entry.getKey());
+				writeCounts(json, entry.getValue());
+			}
+
+			json.endObject();
+
+			json.name("targets").beginObject();
+
+			for (Map.Entry<String, Map<String, Integer>> entry : targetCounts.entrySet()) {
+				json.name(entry.getKey());
+				writeCounts(json, entry.getValue());
+			}
+
+			json.endObject();
+
+			json.name("diagnostics").beginArray();
+
+			for (Diagnostic diagnostic : diagnostics) {
+				json.beginObject();
+				json.name("file").value(diagnostic.file);
+				json.name("line").value(diagnostic.line);
+				json.name("column").value(diagnostic.column);
+				json.name("severity").value(diagnostic.severity);
+				json.name("message").value(diagnostic.message);
+				json.name("target").value(diagnostic.target);
+				json.endObject();
+			}
+
+			json.endArray();
+			json.endObject();
+		}
+	}
+
+	private void record(Diagnostic diagnostic) {
+		final String key = diagnostic.file + ':' + diagnostic.line + ':' + diagnostic.column + ':'
+			+ diagnostic.severity + ':' + diagnostic.message;
+
+		if (!seen.add(key)) {
+			++duplicates;
+			return;
+		}
+
+		increment(severityCounts, diagnostic.severity);
+
+		if (!diagnostic.file.isEmpty()) {
+			increment(counts(fileCounts, diagnostic.file), diagnostic.severity);
+		}
+
+		increment(counts(targetCounts, diagnostic.target), diagnostic.severity);
+
+		if (!NOTE.equals(diagnostic.severity) && diagnostics.size() < MAXIMUM_LISTED_DIAGNOSTICS) {
+			diagnostics.add(diagnostic);
+		}
+	}
+
+	private static String normaliseSeverity(String severity) {
+		final String lower = severity.toLowerCase();
+
+		if (lower.contains(ERROR)) {
+			return ERROR;
+		} else if (lower.contains(WARNING)) {
+			return WARNING;
+		}
+
+		return NOTE;
+	}
+
+	private static Map<String, Integer> counts(Map<String, Map<String, Integer>> map, String key) {
+		Map<String, Integer> counts = map.get(key);
+
+		if (counts == null) {
+			counts = new TreeMap<>();
+			map.put(key, counts);
+		}
+
+		return counts;
+	}
+
+	private static void increment(Map<String, Integer> counts, String severity) {
+		final Integer count = counts.get(severity);
+		counts.put(severity, count != null ? count + 1 : 1);
+	}
+
+	private static void writeCounts(JsonWriter json, Map<String, Integer> counts) throws IOException {
+		json.beginObject();
+
+		for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+			json.name(entry.getKey()).value(entry.getValue());
+		}
+
+		json.endObject();
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 digest helpers used when fingerprinting build inputs.
+ *
+ * @author Nicholas Smethurst
+ */
+public class Digests {
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Create a new SHA-256 message digest.
+	 *
+	 * @return a new message digest
+	 */
+	public static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is required to be present in every Java platform.
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Calculate the hex encoded SHA-256 digest of the supplied string.
+	 *
+	 * @param value the string to digest (UTF-8 encoded)
+	 * @return the hex encoded digest
+	 */
+	public static String digest(String value) {
+		return toHex(newDigest().digest(value.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	/**
+	 * Calculate the hex encoded SHA-256 digest of the contents of the supplied file.
+	 *
+	 * @param file the file to digest
+	 * @return the hex encoded digest
+	 * @throws IOException if the file could not be read
+	 */
+	public static String digest(Path file) throws IOException {
+		return toHex(digestBytes(file));
+	}
+
+	/**
+	 * Calculate the SHA-256 digest of the contents of the supplied file.
+	 *
+	 * @param file the file to digest
+	 * @return the digest
+	 * @throws IOException if the file could not be read
+	 */
+	public static byte[] digestBytes(Path file) throws IOException {
+		final MessageDigest digest = newDigest();
+		final byte[] buffer = new byte[65536];
+
+		try (InputStream stream = Files.newInputStream(file)) {
+			int count;
+
+			while ((count = stream.read(buffer)) != -1) {
+				digest.update(buffer, 0, count);
+			}
+		}
+
+		return digest.digest();
+	}
+
+	/**
+	 * Hex encode the supplied bytes.
+	 *
+	 * @param bytes the bytes to encode
+	 * @return the lower case hex encoded string
+	 */
+	public static String toHex(byte[] bytes) {
+		final char[] chars = new char[bytes.length * 2];
+
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+
+		return new String(chars);
+	}
+
+	private Digests() {}
+}
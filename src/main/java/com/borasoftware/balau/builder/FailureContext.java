@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Retains the output of a process that is needed to explain its failure.
+ *
+ * The last lines of output are kept in a ring buffer, along with the first lines that
+ * look like errors. Lines are truncated to a maximum length, so the memory used is
+ * bounded regardless of the amount of output.
+ *
+ * @author Nicholas Smethurst
+ */
+public class FailureContext implements OutputConsumer {
+	// The maximum number of characters retained per line.
+	static final int MAXIMUM_LINE_LENGTH = 1024;
+
+	// Compiler, linker, CMake, Make and Ninja error lines.
+	private static final Pattern ERROR_REGEX = Pattern.compile(
+		"(?i)\\b(?:error|fatal|failed)\\b|undefined reference|\\*\\*\\*"
+	);
+
+	private final String[] lastLines;
+	private final int maximumErrorLines;
+	private final List<String> errorLines = new ArrayList<>();
+	private long lineCount;
+
+	/**
+	 * Create a failure context.
+	 *
+	 * @param lastLineCount the number of last lines retained
+	 * @param errorLineCount the number of first error lines retained
+	 */
+	public FailureContext(int lastLineCount, int errorLineCount) {
+		this.lastLines = new String[Math.max(0, lastLineCount)];
+		this.maximumErrorLines = Math.max(0, errorLineCount);
+	}
+
+	@Override
+	public void consume(String line, boolean error) {
+		final String truncated = line.length() > MAXIMUM_LINE_LENGTH
+			? line.substring(0, MAXIMUM_LINE_LENGTH) + "..."
+			: line;
+
+		if (lastLines.length > 0) {
+			lastLines[(int) (lineCount % lastLines.length)] = truncated;
+		}
+
+		++lineCount;
+
+		if (errorLines.size() < maximumErrorLines && ERROR_REGEX.matcher(line).find()) {
+			errorLines.add(truncated);
+		}
+	}
+
+	/**
+	 * Get the first error lines, in output order.
+	 *
+	 * @return the error lines
+	 */
+	public List<String> getErrorLines() {
+		return new ArrayList<>(errorLines);
+	}
+
+	/**
+	 * Get the last lines, in output order.
+	 *
+	 * @return the last lines
+	 */
+	public List<String> getLastLines() {
+		final int count = (int) Math.min(lineCount, lastLines.length);
+		final List<String> lines = new ArrayList<>(count);
+
+		for (long i = lineCount - count; i < lineCount; i++) {
+			lines.add(lastLines[(int) (i % lastLines.length)]);
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Format the retained lines for inclusion in an exception message or failure report.
+	 *
+	 * @return the formatted lines, or an empty string if no lines were retained
+	 */
+	public String format() {
+		final String separator = System.lineSeparator();
+		final StringBuilder builder = new StringBuilder();
+		final List<String> last = getLastLines();
+
+		if (!errorLines.isEmpty()) {
+			builder.append(separator).append("First error lines:");
+
+			for (String line : errorLines) {
+				builder.append(separator).append("  ").append(line);
+			}
+		}
+
+		if (!last.isEmpty()) {
+			builder.append(separator).append("Last ").append(last.size()).append(" of ").append(lineCount).append(" lines:");
+
+			for (String line : last) {
+				builder.append(separator).append("  ").append(line);
+			}
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Write a failure report containing the failure message and the retained lines.
+	 *
+	 * @param reportFile the report file
+	 * @param message the failure message
+	 * @throws IOException if the report could not be written
+	 */
+	public void writeReport(Path reportFile, String message) throws IOException {
+		final Path parent = reportFile.toAbsolutePath().getParent();
+
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+
+		Files.write(reportFile, (message + format() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent index of the state (size, modification time and optionally content hash)
+ * of the inputs and outputs of a successful build. If a scan of the same files finds no
+ * change, the build tool does not need to be run.
+ *
+ * The index is stored in a compact binary file which is read into a single buffer and
+ * compared in a single pass against the sorted scan, so no per-entry objects are created
+ * when loading. The file is not memory mapped, as a mapping would keep the file open until
+ * it is garbage collected, which prevents it from being replaced or deleted on Windows.
+ * The file holds a header (magic, version, key and entry count) followed by the entries
+ * sorted by path: the UTF-8 path, the size, the modification time in nanoseconds and an
+ * optional SHA-256 content hash.
+ *
+ * @author Nicholas Smethurst
+ */
+public class FileStateIndex {
+	private static final int MAGIC = 0x434d4649;
+	private static final int VERSION = 1;
+	private static final int HASH_LENGTH = 32;
+
+	private static final Comparator<Entry> BY_PATH = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry lhs, Entry rhs) {
+			return lhs.path.compareTo(rhs.path);
+		}
+	};
+
+	/**
+	 * The state of a file. Missing files have a size of -1.
+	 */
+	public static class Entry {
+		private final String path;
+		private final long size;
+		private final long modified;
+
+		Entry(String path, long size, long modified) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getModified() {
+			return modified;
+		}
+	}
+
+	/**
+	 * Scan the regular files of a directory tree in parallel, skipping hidden and excluded directories.
+	 *
+	 * @param root the root of the directory tree
+	 * @param excludedDirectories the directories that are not scanned (may be null)
+	 * @param parallelism the number of scanning threads
+	 * @return the file states sorted by path
+	 * @throws IOException if the tree could not be scanned
+	 */
+	public static List<Entry> scanTree(Path root, Collection<Path> excludedDirectories, int parallelism)
+		throws IOException {
+		final Set<Path> excluded = new HashSet<>();
+
+		if (excludedDirectories != null) {
+			for (Path directory : excludedDirectories) {
+				excluded.add(directory.toAbsolutePath().normalize());
+			}
+		}
+
+		final ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+
+		try {
+			final List<Entry> entries = pool.invoke(new ScanTask(root.toAbsolutePath().normalize(), excluded));
+			Collections.sort(entries, BY_PATH);
+			return entries;
+		} catch (ScanException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Obtain the state of the specified files.
+	 *
+	 * @param files the files
+	 * @return the file states sorted by path
+	 */
+	public static List<Entry> scanFiles(Collection<Path> files) {
+		final List<Entry> entries = new ArrayList<>();
+
+		for (Path file : files) {
+			entries.add(stat(file.toAbsolutePath().normalize()));
+		}
+
+		Collections.sort(entries, BY_PATH);
+		return entries;
+	}
+
+	/**
+	 * Merge sorted entry lists.
+	 *
+	 * @param lists the sorted lists
+	 * @return a sorted list containing the entries of all lists, without duplicate paths
+	 */
+	@SafeVarargs
+	public static List<Entry> merge(List<Entry>... lists) {
+		final Map<String, Entry> entries = new HashMap<>();
+
+		for (List<Entry> list : lists) {
+			for (Entry entry : list) {
+				entries.put(entry.path, entry);
+			}
+		}
+
+		final List<Entry> merged = new ArrayList<>(entries.values());
+		Collections.sort(merged, BY_PATH);
+		return merged;
+	}
+
+	/**
+	 * Determine whether the stored index matches the current state.
+	 *
+	 * If the index holds content hashes, a file whose size is unchanged but whose
+	 * modification time differs is hashed and considered unchanged if the hash matches.
+	 *
+	 * @param indexFile the index file
+	 * @param key the key of the build (targets, options etc.) which must match the stored key
+	 * @param current the current state, sorted by path
+	 * @return true if the index exists, has the same key and every entry matches
+	 * @throws IOException if the index could not be read
+	 */
+	public static boolean matches(Path indexFile, String key, List<Entry> current) throws IOException {
+		if (!Files.isRegularFile(indexFile)) {
+			return false;
+		}
+
+		final ByteBuffer buffer;
+
+		try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+			final long size = channel.size();
+
+			if (size > Integer.MAX_VALUE) {
+				return false;
+			}
+
+			buffer = ByteBuffer.allocate((int) size);
+
+			while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+				// Read the whole file.
+			}
+
+			buffer.flip();
+		}
+
+		try {
+			if (!readHeader(buffer, key) || buffer.getInt() != current.size()) {
+				return false;
+			}
+
+			final boolean hashes = buffer.get() != 0;
+
+			for (Entry entry : current) {
+				final String path = readString(buffer);
+				final long size = buffer.getLong();
+				final long modified = buffer.getLong();
+				final byte[] hash = hashes ? readHash(buffer) : null;
+
+				if (!path.equals(entry.path) || size != entry.size) {
+					return false;
+				}
+
+				if (modified != entry.modified && (hash == null || size < 0 || !Arrays.equals(hash, hash(entry.path)))) {
+					return false;
+				}
+			}
+
+			return true;
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			// Truncated or corrupt index.
+			return false;
+		}
+	}
+
+	/**
+	 * Store the index. The file is written next to the target and atomically moved into place.
+	 *
+	 * The content hash of a file whose size or modification time no longer matches its entry
+	 * is stored as zeros, so that a change made after the entry was scanned (for example during
+	 * the build) is not taken to be the scanned state.
+	 *
+	 * @param indexFile the index file
+	 * @param key the key of the build
+	 * @param entries the state of the files, sorted by path
+	 * @param hashContents whether to store the content hashes of the files
+	 * @throws IOException if the index could not be written
+	 */
+	public static void store(Path indexFile, String key, List<Entry> entries, boolean hashContents) throws IOException {
+		final Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			writeString(output, key);
+			output.writeInt(entries.size());
+			output.writeByte(hashContents ? 1 : 0);
+
+			for (Entry entry : entries) {
+				writeString(output, entry.path);
+				output.writeLong(entry.size);
+				output.writeLong(entry.modified);
+
+				if (hashContents) {
+					output.write(hashUnchanged(entry));
+				}
+			}
+		}
+
+		Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Delete the index, so that the next build runs the build tool.
+	 *
+	 * @param indexFile the index file
+	 * @throws IOException if the index could not be deleted
+	 */
+	public static void delete(Path indexFile) throws IOException {
+		Files.deleteIfExists(indexFile);
+	}
+
+	private static boolean readHeader(ByteBuffer buffer, String key) {
+		return buffer.getInt() == MAGIC && buffer.getInt() == VERSION && readString(buffer).equals(key);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		final int length = buffer.getInt();
+
+		// A corrupt length would otherwise allocate an arbitrarily large array.
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] readHash(ByteBuffer buffer) {
+		final byte[] hash = new byte[HASH_LENGTH];
+		buffer.get(hash);
+		return hash;
+	}
+
+	private static void writeString(DataOutputStream output, String value) throws IOException {
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	private static byte[] hash(String path) throws IOException {
+		try {
+			return Digests.digestBytes(Paths.get(path));
+		} catch (NoSuchFileException e) {
+			return new byte[HASH_LENGTH];
+		}
+	}
+
+	//
+	// The file is hashed before it is checked, so a change made while hashing is also detected.
+	//
+	private static byte[] hashUnchanged(Entry entry) throws IOException {
+		if (entry.size < 0) {
+			return new byte[HASH_LENGTH];
+		}
+
+		final byte[] hash = hash(entry.path);
+		final Entry current = stat(Paths.get(entry.path));
+
+		return current.size == entry.size && current.modified == entry.modified ? hash : new byte[HASH_LENGTH];
+	}
+
+	private static Entry stat(Path file) {
+		try {
+			final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			return new Entry(file.toString(), attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+		} catch (IOException e) {
+			return new Entry(file.toString(), -1, 0);
+		}
+	}
+
+	private static class ScanTask extends RecursiveTask<List<Entry>> {
+		private static final long serialVersionUID = 1L;
+
+		private final Path directory;
+		private final Set<Path> excluded;
+
+		ScanTask(Path directory, Set<Path> excluded) {
+			this.directory = directory;
+			this.excluded = excluded;
+		}
+
+		@Override
+		protected List<Entry> compute() {
+			final List<Entry> entries = new ArrayList<>();
+			final List<ScanTask> subtasks = new ArrayList<>();
+
+			try (DirectoryStream<Path> children = Files.newDirectoryStream(directory)) {
+				for (Path child : children) {
+					final BasicFileAttributes attributes;
+
+					try {
+						attributes = Files.readAttributes(child, BasicFileAttributes.class);
+					} catch (IOException e) {
+						// Dangling symlinks and entries deleted during the scan.
+						continue;
+					}
+
+					if (attributes.isDirectory()) {
+						// Hidden directories such as .git and .idea do not hold build inputs.
+						if (!excluded.contains(child) && !child.getFileName().toString().startsWith(".")) {
+							final ScanTask subtask = new ScanTask(child, excluded);
+							subtask.fork();
+							subtasks.add(subtask);
+						}
+					} else if (attributes.isRegularFile()) {
+						entries.add(new Entry(
+							child.toString(), attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+						));
+					}
+				}
+			} catch (IOException e) {
+				throw new ScanException(e);
+			}
+
+			for (ScanTask subtask : subtasks) {
+				entries.addAll(subtask.join());
+			}
+
+			return entries;
+		}
+	}
+
+	private static class ScanException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		ScanException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+}
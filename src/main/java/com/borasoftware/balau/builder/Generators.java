@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import com.borasoftware.balau.cleaner.Cleaner;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Selects the fastest CMake generator whose build tool is available on the machine.
+ *
+ * Without calibration, Ninja is preferred over the Makefile generators. A calibration
+ * configures a small synthetic project with each available generator and times its no-op
+ * builds, which dominate incremental development builds. The result of a calibration is
+ * cached per machine, keyed on the CMake version and the build tools found on the path.
+ *
+ * @author Nicholas Smethurst
+ */
+public class Generators {
+	/**
+	 * The generator setting that selects the fastest available generator.
+	 */
+	public static final String AUTO = "auto";
+
+	// The number of timed no-op builds of each calibrated generator.
+	private static final int NO_OP_BUILDS = 3;
+
+	// The number of targets and the number of commands of each target of the calibration project.
+	private static final int CALIBRATION_TARGETS = 10;
+	private static final int CALIBRATION_COMMANDS = 20;
+
+	// The entry of the CMake cache holding the generator of the binary directory.
+	private static final String CACHE_GENERATOR_ENTRY = "CMAKE_GENERATOR:INTERNAL=";
+
+	/**
+	 * Detect the generators whose build tool is on the path, in order of preference
+	 * when no calibration is made.
+	 *
+	 * @param environmentVariables the expanded extra environment variables, used to obtain the path
+	 * @return the available generators
+	 */
+	public static List<String> detect(Map<String, String> environmentVariables) {
+		final String path = Utilities.getSearchPath(environmentVariables);
+		final List<String> generators = new ArrayList<>();
+
+		if (Utilities.findExecutable("ninja", path) != null) {
+			generators.add("Ninja");
+		}
+
+		if (File.separatorChar == '\\') {
+			if (Utilities.findExecutable("nmake", path) != null) {
+				generators.add("NMake Makefiles");
+			}
+		} else if (Utilities.findExecutable("make", path) != null || Utilities.findExecutable("gmake", path) != null) {
+			generators.add("Unix Makefiles");
+		}
+
+		return generators;
+	}
+
+	/**
+	 * Select the fastest available generator.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param calibrationFile the file caching the calibration results of the machine
+	 * @param calibrate whether to calibrate the generators when there is no cached result
+	 * @param context the launch context of the CMake processes
+	 * @return the selected generator, or an empty string if CMake's default generator should be used
+	 */
+	public static String select(Log log, Path calibrationFile, boolean calibrate, LaunchContext context) {
+		final Map<String, String> expandedEnvironment = context.getExpandedEnvironment();
+		final List<String> candidates = detect(expandedEnvironment);
+
+		if (candidates.isEmpty()) {
+			log.info("No generator build tool was found on the path, using the default generator.");
+			return "";
+		}
+
+		if (!calibrate || candidates.size() == 1) {
+			log.info("Selected the " + candidates.get(0) + " generator (available: " + candidates + ").");
+			return candidates.get(0);
+		}
+
+		// Modules configured concurrently share a single calibration.
+		synchronized (Generators.class) {
+			final Path directory = calibrationFile.toAbsolutePath().getParent();
+			final Properties calibrations = new Properties();
+
+			try {
+				Files.createDirectories(directory);
+
+				if (Files.isRegularFile(calibrationFile)) {
+					try (InputStream stream = Files.newInputStream(calibrationFile)) {
+						calibrations.load(stream);
+					}
+				}
+			} catch (IOException e) {
+				log.warn("Failed to read the generator calibrations " + calibrationFile + ": " + e.getMessage());
+			}
+
+			final String key = Digests.digest(
+				context.getVersion(log, directory) + "\n"
+				+ candidates + "\n" + Utilities.getSearchPath(expandedEnvironment)
+			);
+
+			final String calibrated = calibrations.getProperty(key);
+
+			if (calibrated != null && candidates.contains(calibrated)) {
+				log.info("Selected the " + calibrated + " generator (calibrated, available: " + candidates + ").");
+				return calibrated;
+			}
+
+			final String fastest = calibrate(log, candidates, context);
+
+			if (fastest == null) {
+				log.info("Selected the " + candidates.get(0) + " generator (available: " + candidates + ").");
+				return candidates.get(0);
+			}
+
+			calibrations.setProperty(key, fastest);
+
+			try {
+				final Path temporary = Files.createTempFile(directory, calibrationFile.getFileName().toString(), ".tmp");
+
+				try (OutputStream stream = Files.newOutputStream(temporary)) {
+					calibrations.store(stream, "Generator calibrations of cmake-maven-plugin");
+				}
+
+				Files.move(temporary, calibrationFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				log.warn("Failed to store the generator calibrations " + calibrationFile + ": " + e.getMessage());
+			}
+
+			log.info("Selected the " + fastest + " generator (calibrated, available: " + candidates + ").");
+			return fastest;
+		}
+	}
+
+	/**
+	 * Get the generator recorded in the CMake cache of the binary directory.
+	 *
+	 * @param binaryDirectory the CMake binary directory
+	 * @return the generator, or null if the binary directory has not been configured
+	 * @throws IOException if the CMake cache could not be read
+	 */
+	public static String getConfiguredGenerator(Path binaryDirectory) throws IOException {
+		final Path cache = binaryDirectory.resolve("CMakeCache.txt");
+
+		if (!Files.isRegularFile(cache)) {
+			return null;
+		}
+
+		for (String line : Files.readAllLines(cache, StandardCharsets.UTF_8)) {
+			if (line.startsWith(CACHE_GENERATOR_ENTRY)) {
+				return line.substring(CACHE_GENERATOR_ENTRY.length()).trim();
+			}
+		}
+
+		return null;
+	}
+
+	//
+	// Time the no-op builds of each generator. Returns the generator with the fastest
+	// no-op build, or null if no generator could be calibrated.
+	//
+	private static String calibrate(Log log, List<String> candidates, LaunchContext context) {
+		Path directory = null;
+		String fastest = null;
+		long fastestNanos = Long.MAX_VALUE;
+
+		log.info("Calibrating the generators " + candidates + ".");
+
+		try {
+			directory = Files.createTempDirectory("cmake-maven-plugin-calibration");
+
+			final Path sourceDirectory = writeCalibrationProject(directory.resolve("source"));
+
+			for (String generator : candidates) {
+				final Path binaryDirectory = Files.createDirectories(directory.resolve(generator.replace(' ', '-')));
+
+				try {
+					run(log, context, binaryDirectory, Arrays.asList("-G", generator, sourceDirectory.toString()));
+					run(log, context, binaryDirectory, Arrays.asList("--build", "."));
+
+					long best = Long.MAX_VALUE;
+
+					for (int i = 0; i < NO_OP_BUILDS; i++) {
+						final long start = System.nanoTime();
+						run(log, context, binaryDirectory, Arrays.asList("--build", "."));
+						best = Math.min(best, System.nanoTime() - start);
+					}
+
+					log.info(String.format("Generator %s: no-op build %.0f ms.", generator, best / 1000000.0));
+
+					if (best < fastestNanos) {
+						fastest = generator;
+						fastestNanos = best;
+					}
+				} catch (MojoExecutionException e) {
+					log.warn("Failed to calibrate the " + generator + " generator: " + e.getMessage());
+				}
+			}
+		} catch (IOException e) {
+			log.warn("Failed to calibrate the generators: " + e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.warn("Generator calibration was interrupted.");
+			return null;
+		} finally {
+			if (directory != null) {
+				deleteQuietly(log, directory);
+			}
+		}
+
+		return fastest;
+	}
+
+	//
+	// A project without languages, so that the calibration does not depend on the compilers.
+	// The custom commands of several targets exercise the dependency checks of the build tool.
+	//
+	private static Path writeCalibrationProject(Path sourceDirectory) throws IOException {
+		final String cmakeLists = "cmake_minimum_required(VERSION 3.5)\n"
+			+ "project(GeneratorCalibration NONE)\n"
+			+ "foreach(target RANGE 1 " + CALIBRATION_TARGETS + ")\n"
+			+ "\tset(outputs)\n"
+			+ "\tforeach(command RANGE 1 " + CALIBRATION_COMMANDS + ")\n"
+			+ "\t\tset(output ${CMAKE_CURRENT_BINARY_DIR}/output-${target}-${command}.txt)\n"
+			+ "\t\tadd_custom_command(OUTPUT ${output} COMMAND ${CMAKE_COMMAND} -E touch ${output}"
+			+ " DEPENDS ${CMAKE_CURRENT_SOURCE_DIR}/input.txt)\n"
+			+ "\t\tlist(APPEND outputs ${output})\n"
+			+ "\tendforeach()\n"
+			+ "\tadd_custom_target(calibration-${target} ALL DEPENDS ${outputs})\n"
+			+ "endforeach()\n";
+
+		Files.createDirectories(sourceDirectory);
+		Files.write(sourceDirectory.resolve("CMakeLists.txt"), cmakeLists.getBytes(StandardCharsets.UTF_8));
+		Files.write(sourceDirectory.resolve("input.txt"), Collections.<String>emptyList(), StandardCharsets.UTF_8);
+		return sourceDirectory;
+	}
+
+	private static void run(Log log, LaunchContext context, Path directory, List<String> arguments)
+		throws IOException, InterruptedException, MojoExecutionException {
+		Utilities.captureProcess("cmake", Utilities.createProcess(log, context, context.getCMake(), directory, arguments));
+	}
+
+	private static void deleteQuietly(Log log, Path directory) {
+		try {
+			new Cleaner(log, false).delete(directory.toFile(), null, false, true, false);
+		} catch (IOException e) {
+			log.debug("Failed to delete the calibration directory " + directory + ": " + e.getMessage());
+		}
+	}
+
+	private Generators() {}
+}
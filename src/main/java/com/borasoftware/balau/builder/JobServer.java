@@ -0,0 +1,392 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of build job tokens shared by all the modules built in a Maven session.
+ *
+ * Each build leases one or more job slots from the pool before running the build
+ * tool, so that concurrently building modules do not oversubscribe the machine.
+ * A build leases at most its fair share of the pool, which is the number of job
+ * slots divided by the number of builds holding or waiting for a lease. A lease is
+ * rebalanced before each build tool invocation (see {@link Lease#rebalance}), so
+ * that it returns the slots above its share when other builds are waiting, and
+ * takes the slots freed by builds that have completed.
+ *
+ * When a job server FIFO is in use, the pool is also exposed to the build tool
+ * as a GNU make jobserver (fifo style, as supported by GNU Make 4.4 and Ninja
+ * 1.13). The build leases its implicit job slot from the FIFO and the build tool
+ * takes additional tokens from the FIFO itself. Processes that are not jobserver
+ * clients (such as CTest) lease all their tokens explicitly instead (see
+ * {@link #acquireTokens}).
+ *
+ * @author Nicholas Smethurst
+ */
+public class JobServer {
+	private static final byte TOKEN = '+';
+
+	// The time spent collecting the available tokens of an explicit FIFO lease.
+	private static final long TOKEN_WAIT_MILLIS = 100;
+
+	private final int jobs;
+	private final Semaphore semaphore;
+	private final AtomicInteger activeBuilds = new AtomicInteger();
+	private final File fifo;
+	private final RandomAccessFile fifoHandle;
+
+	/**
+	 * Create a job server with the specified number of job slots.
+	 *
+	 * If a FIFO is requested but cannot be created (for example on Windows),
+	 * the job server falls back to an in-process pool.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param jobs the number of job slots
+	 * @param useFifo whether to expose the pool to the build tool as a GNU make jobserver FIFO
+	 * @return a new job server
+	 */
+	public static JobServer create(Log log, int jobs, boolean useFifo) {
+		final int slots = Math.max(1, jobs);
+
+		if (useFifo) {
+			try {
+				final File fifo = createFifo();
+				return new JobServer(slots, fifo, openFifo(fifo, slots));
+			} catch (IOException e) {
+				log.warn("Failed to create the job server FIFO, using an in-process job pool: " + e.getMessage());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		return new JobServer(slots, null, null);
+	}
+
+	/**
+	 * Lease job slots from the pool.
+	 *
+	 * The call blocks until at least one job slot is available, then takes as many further
+	 * slots as are immediately available, up to the requested number and the build's fair
+	 * share of the pool.
+	 *
+	 * @param requested the number of job slots requested by the build
+	 * @return the lease, which must be closed when the build completes
+	 * @throws InterruptedException if the current thread is interrupted whilst waiting for a job slot
+	 * @throws IOException if the job server FIFO could not be read
+	 */
+	public Lease acquire(int requested) throws InterruptedException, IOException {
+		if (fifo != null) {
+			// The build tool takes its additional tokens from the FIFO itself.
+			if (fifoHandle.read() == -1) {
+				throw new IOException("Job server FIFO was closed.");
+			}
+
+			return new Lease(1, 1, false);
+		}
+
+		activeBuilds.incrementAndGet();
+
+		try {
+			semaphore.acquire();
+		} catch (InterruptedException e) {
+			activeBuilds.decrementAndGet();
+			throw e;
+		}
+
+		final Lease lease = new Lease(1, requested, false);
+
+		// The waiting builds are counted once this build has its first slot.
+		lease.rebalance();
+		return lease;
+	}
+
+	/**
+	 * Lease job slots from the pool for a process that is not a jobserver client.
+	 *
+	 * With an in-process pool, this is equivalent to {@link #acquire}. When a FIFO is in
+	 * use, the call blocks until one token is available, then takes the further tokens
+	 * that are available within a short bounded wait, up to the requested number. The
+	 * concurrency of the lease is the number of tokens held, and the FIFO is not
+	 * exposed to the process.
+	 *
+	 * @param requested the number of job slots requested by the process
+	 * @return the lease, which must be closed when the process completes
+	 * @throws InterruptedException if the current thread is interrupted whilst waiting for a job slot
+	 * @throws IOException if the job server FIFO could not be read
+	 */
+	public Lease acquireTokens(int requested) throws InterruptedException, IOException {
+		if (fifo == null) {
+			return acquire(requested);
+		}
+
+		if (fifoHandle.read() == -1) {
+			throw new IOException("Job server FIFO was closed.");
+		}
+
+		final int wanted = Math.max(1, Math.min(requested, jobs));
+
+		try {
+			return new Lease(1 + (wanted > 1 ? readAvailableTokens(wanted - 1) : 0), wanted, true);
+		} catch (InterruptedException e) {
+			fifoHandle.write(TOKEN);
+			throw e;
+		}
+	}
+
+	/**
+	 * Get the total number of job slots in the pool.
+	 *
+	 * @return the number of job slots
+	 */
+	public int getJobs() {
+		return jobs;
+	}
+
+	//
+	// The number of builds holding or waiting for an in-process lease.
+	//
+	int getActiveBuilds() {
+		return activeBuilds.get();
+	}
+
+	/**
+	 * Determine whether the pool is exposed to the build tool as a GNU make jobserver FIFO.
+	 *
+	 * @return true if a job server FIFO is in use
+	 */
+	public boolean isFifo() {
+		return fifo != null;
+	}
+
+	/**
+	 * A set of job slots leased from the pool.
+	 */
+	public class Lease implements AutoCloseable {
+		private final int requested;
+		private final boolean explicit;
+		private int leased;
+		private boolean closed;
+
+		/**
+		 * Get the concurrency that the build should specify to the build tool.
+		 *
+		 * @return the number of leased job slots, or zero if the build tool takes its slots from the job server FIFO
+		 */
+		public synchronized int getConcurrency() {
+			return fifo != null && !explicit ? 0 : leased;
+		}
+
+		/**
+		 * Adjust the lease to the build's current fair share of the in-process pool. Slots
+		 * above the share are returned to the pool for the waiting builds, and free slots
+		 * are taken up to the share and the requested number. Leases of a job server FIFO
+		 * are not rebalanced, as the build tool takes its tokens from the FIFO itself.
+		 *
+		 * @return the concurrency of the lease
+		 */
+		public synchronized int rebalance() {
+			if (fifo != null || closed) {
+				return getConcurrency();
+			}
+
+			final int fairShare = Math.max(1, jobs / Math.max(1, activeBuilds.get()));
+			final int wanted = Math.max(1, Math.min(requested, fairShare));
+
+			while (leased < wanted && semaphore.tryAcquire()) {
+				++leased;
+			}
+
+			if (leased > wanted) {
+				semaphore.release(leased - wanted);
+				leased = wanted;
+			}
+
+			return leased;
+		}
+
+		/**
+		 * Merge the environment variables required by the build tool into the supplied environment variables.
+		 *
+		 * @param environmentVariables the extra environment variables specified to the build (may be null)
+		 * @return the supplied environment variables, plus the job server variables if a FIFO is in use
+		 */
+		public Map<String, String> getEnvironment(Map<String, String> environmentVariables) {
+			if (fifo == null || explicit) {
+				return environmentVariables;
+			}
+
+			final Map<String, String> environment = environmentVariables != null
+				? new HashMap<>(environmentVariables)
+				: new HashMap<String, String>();
+
+			environment.put("MAKEFLAGS", "-j" + jobs + " --jobserver-auth=fifo:" + fifo.getAbsolutePath());
+			return environment;
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			if (closed) {
+				return;
+			}
+
+			closed = true;
+
+			if (fifo != null) {
+				final byte[] tokens = new byte[leased];
+
+				Arrays.fill(tokens, TOKEN);
+				fifoHandle.write(tokens);
+			} else {
+				// Released slots are shared between the remaining builds only.
+				activeBuilds.decrementAndGet();
+				semaphore.release(leased);
+			}
+		}
+
+		private Lease(int leased, int requested, boolean explicit) {
+			this.leased = leased;
+			this.requested = Math.min(jobs, Math.max(1, requested));
+			this.explicit = explicit;
+		}
+	}
+
+	private JobServer(int jobs, File fifo, RandomAccessFile fifoHandle) {
+		this.jobs = jobs;
+		this.semaphore = new Semaphore(jobs);
+		this.fifo = fifo;
+		this.fifoHandle = fifoHandle;
+	}
+
+	//
+	// Read up to the specified number of tokens from the FIFO, waiting briefly for them.
+	// A FIFO cannot be read without blocking, so the tokens are read by a helper thread
+	// through its own interruptible channel. When the wait ends, the helper is interrupted,
+	// which closes the channel and aborts its read, and the helper is joined, so that no
+	// thread is left blocked on the FIFO. Every token the helper has read is counted,
+	// including a token consumed by a read that then fails because of the interrupt.
+	//
+	private int readAvailableTokens(final int maximum) throws InterruptedException, IOException {
+		final FileChannel channel = FileChannel.open(fifo.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		final AtomicInteger tokens = new AtomicInteger();
+
+		final Thread reader = new Thread("cmake-maven-plugin job token reader") {
+			@Override
+			public void run() {
+				final ByteBuffer buffer = ByteBuffer.allocate(1);
+
+				try {
+					while (tokens.get() < maximum) {
+						buffer.clear();
+
+						if (channel.read(buffer) == -1) {
+							return;
+						}
+
+						tokens.incrementAndGet();
+					}
+				} catch (ClosedChannelException e) {
+					// The wait has ended. The interrupt is checked once the read has completed,
+					// so a token may have been consumed by the read that failed.
+					if (buffer.position() > 0) {
+						tokens.incrementAndGet();
+					}
+				} catch (IOException e) {
+					// The FIFO failed, so no further tokens are available.
+				}
+			}
+		};
+
+		reader.setDaemon(true);
+		reader.start();
+
+		InterruptedException interrupted = null;
+
+		try {
+			reader.join(TOKEN_WAIT_MILLIS);
+		} catch (InterruptedException e) {
+			interrupted = e;
+		}
+
+		reader.interrupt();
+		boolean joined = false;
+
+		while (!joined) {
+			try {
+				reader.join();
+				joined = true;
+			} catch (InterruptedException e) {
+				interrupted = e;
+			}
+		}
+
+		channel.close();
+
+		final int count = tokens.get();
+
+		if (interrupted != null) {
+			// Return the tokens read so far.
+			for (int i = 0; i < count; i++) {
+				fifoHandle.write(TOKEN);
+			}
+
+			throw interrupted;
+		}
+
+		return count;
+	}
+
+	private static File createFifo() throws IOException, InterruptedException {
+		final File fifo = new File(System.getProperty("java.io.tmpdir"), "cmake-maven-jobserver-" + UUID.randomUUID());
+		final Process process = new ProcessBuilder("mkfifo", "-m", "600", fifo.getAbsolutePath())
+			.redirectErrorStream(true)
+			.start();
+
+		if (process.waitFor() != 0 || !fifo.exists()) {
+			throw new IOException("mkfifo failed for " + fifo);
+		}
+
+		fifo.deleteOnExit();
+		return fifo;
+	}
+
+	private static RandomAccessFile openFifo(File fifo, int jobs) throws IOException {
+		// Opening the FIFO read-write keeps it open without a separate writer.
+		final RandomAccessFile handle = new RandomAccessFile(fifo, "rw");
+		final byte[] tokens = new byte[jobs];
+
+		Arrays.fill(tokens, TOKEN);
+		handle.write(tokens);
+		return handle;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The resolved launch configuration of the CMake, build tool and CTest processes.
+ *
+ * A launch context holds the absolute paths of the CMake and CTest binaries, the
+ * extra environment variables with their placeholders already expanded, and the CMake
+ * capabilities once they have been obtained. Contexts are immutable apart from the
+ * capabilities, and are shared by the modules of a build session with the same CMake
+ * path and environment configuration (see {@link #getKey}). A context becomes invalid
+ * when the resolved CMake binary is replaced.
+ *
+ * @author Nicholas Smethurst
+ */
+public class LaunchContext {
+	private final Map<String, String> environmentVariables;
+	private final SortedMap<String, String> expandedEnvironment;
+	private final String cmake;
+	private final String ctest;
+	private final FileTime cmakeModified;
+
+	// The capabilities of the CMake binary, obtained on first use.
+	private volatile CMakeCapabilities capabilities;
+
+	/**
+	 * Get the key of the launch context of the specified configuration. The key includes
+	 * the path of the current process, which is searched for the CMake binary.
+	 *
+	 * @param cmakePath optional path to CMake binary (if null or empty, the path is searched)
+	 * @param environmentVariables a map containing extra environment variables (may be null or empty)
+	 * @return the key
+	 */
+	public static String getKey(String cmakePath, Map<String, String> environmentVariables) {
+		return cmakePath + "\n"
+			+ (environmentVariables != null ? new TreeMap<>(environmentVariables) : "") + "\n"
+			+ System.getenv("PATH");
+	}
+
+	/**
+	 * Resolve the launch context of the specified configuration.
+	 *
+	 * @param cmakePath optional path to CMake binary (if null or empty, the path is searched)
+	 * @param environmentVariables a map containing extra environment variables (may be null or empty)
+	 * @return the launch context
+	 */
+	public static LaunchContext create(String cmakePath, Map<String, String> environmentVariables) {
+		final String name = cmakePath != null && !cmakePath.isEmpty() ? cmakePath : "cmake";
+
+		// Processes are started with the path of the current process, not the supplied path.
+		final Path resolved = name.indexOf('/') >= 0 || name.indexOf(File.separatorChar) >= 0
+			? Paths.get(name).toAbsolutePath()
+			: Utilities.findExecutable(name, System.getenv("PATH"));
+
+		FileTime modified = null;
+
+		if (resolved != null) {
+			try {
+				modified = Files.getLastModifiedTime(resolved);
+			} catch (IOException e) {
+				// Not resolved, the process start will report the error.
+			}
+		}
+
+		final String cmake = modified != null ? resolved.toString() : name;
+
+		return new LaunchContext(
+			  environmentVariables != null
+				? Collections.unmodifiableMap(new HashMap<>(environmentVariables))
+				: Collections.<String, String>emptyMap()
+			, Collections.unmodifiableSortedMap(Utilities.expandEnvironment(environmentVariables))
+			, cmake
+			, modified != null || (cmakePath != null && !cmakePath.isEmpty()) ? CTest.getCTestPath(cmake) : "ctest"
+			, modified
+		);
+	}
+
+	private LaunchContext(Map<String, String> environmentVariables,
+	                      SortedMap<String, String> expandedEnvironment,
+	                      String cmake,
+	                      String ctest,
+	                      FileTime cmakeModified) {
+		this.environmentVariables = environmentVariables;
+		this.expandedEnvironment = expandedEnvironment;
+		this.cmake = cmake;
+		this.ctest = ctest;
+		this.cmakeModified = cmakeModified;
+	}
+
+	/**
+	 * Derive a launch context with additional environment variables, which are not expanded.
+	 * The derived context shares the resolved binaries and the CMake capabilities.
+	 *
+	 * @param additionalVariables the additional environment variables (may be null or empty)
+	 * @return the derived launch context, or this context if there are no additional variables
+	 */
+	public LaunchContext withEnvironment(Map<String, String> additionalVariables) {
+		if (additionalVariables == null || additionalVariables.isEmpty()) {
+			return this;
+		}
+
+		final Map<String, String> variables = new HashMap<>(environmentVariables);
+		final SortedMap<String, String> expanded = new TreeMap<>(expandedEnvironment);
+
+		variables.putAll(additionalVariables);
+		expanded.putAll(additionalVariables);
+
+		final LaunchContext context = new LaunchContext(
+			  Collections.unmodifiableMap(variables)
+			, Collections.unmodifiableSortedMap(expanded)
+			, cmake
+			, ctest
+			, cmakeModified
+		);
+
+		context.capabilities = capabilities;
+		return context;
+	}
+
+	/**
+	 * Determine whether the resolved CMake binary is unchanged since the context was created.
+	 *
+	 * @return true if the context can be reused
+	 */
+	public boolean isValid() {
+		if (cmakeModified == null) {
+			// Not resolved, so resolve it again in case it has since been installed.
+			return false;
+		}
+
+		try {
+			return cmakeModified.equals(Files.getLastModifiedTime(Paths.get(cmake)));
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Get the CMake binary.
+	 *
+	 * @return the absolute path of the CMake binary, or the configured name if it could not be resolved
+	 */
+	public String getCMake() {
+		return cmake;
+	}
+
+	/**
+	 * Get the CTest binary that accompanies the CMake binary.
+	 *
+	 * @return the CTest binary
+	 */
+	public String getCTest() {
+		return ctest;
+	}
+
+	/**
+	 * Get the extra environment variables as supplied, for the build listeners.
+	 *
+	 * @return the unexpanded extra environment variables
+	 */
+	public Map<String, String> getEnvironmentVariables() {
+		return environmentVariables;
+	}
+
+	/**
+	 * Get the extra environment variables, expanded against the environment of the current process.
+	 *
+	 * @return the expanded extra environment variables
+	 */
+	public SortedMap<String, String> getExpandedEnvironment() {
+		return expandedEnvironment;
+	}
+
+	/**
+	 * Get the capabilities of the CMake binary. On first use, the persisted capabilities
+	 * are loaded or the binary is probed (see {@link CMakeCapabilities}).
+	 *
+	 * @param log the Maven plugin logger
+	 * @param buildDirectory the directory in which CMake will be executed if it is probed
+	 * @return the capabilities
+	 */
+	public CMakeCapabilities getCapabilities(Log log, Path buildDirectory) {
+		CMakeCapabilities result = capabilities;
+
+		if (result == null) {
+			result = CMakeCapabilities.get(log, buildDirectory, this, CMakeCapabilities.getDefaultDirectory());
+
+			// A failed probe is repeated on the next call.
+			if (result.getVersionLine() != null) {
+				capabilities = result;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the version line of the CMake binary.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param buildDirectory the directory in which CMake will be executed if it is probed
+	 * @return the version line, or null if the version could not be obtained
+	 */
+	public String getVersion(Log log, Path buildDirectory) {
+		return getCapabilities(log, buildDirectory).getVersionLine();
+	}
+}
@@ -21,8 +21,10 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -33,7 +35,7 @@ import java.util.Map;
  */
 public class Make {
 	/**
-	 * Run the Make process.
+	 * Run the Make process, building each target in turn.
 	 *
 	 * @param log the Maven plugin logger
 	 * @param concurrency the number of make threads to run
@@ -51,31 +53,115 @@ public class Make {
 	                                  List<String> makeOptions,
 	                                  Map<String, String> environmentVariables,
 	                                  String cmakePath) throws MojoExecutionException {
-		try {
-			final String cmake = cmakePath != null && !cmakePath.isEmpty() ? cmakePath : "cmake";
-			final List<String> argumentsBase = new ArrayList<>();
+		runMakeTargets(
+			  new ProcessOutput(log)
+			, concurrency
+			, null
+			, buildDirectory
+			, null
+			, targets
+			, makeOptions
+			, LaunchContext.create(cmakePath, environmentVariables)
+			, false
+		);
+	}
+
+	/**
+	 * Run the Make process with job slots leased from a job server. The lease is rebalanced
+	 * before each build invocation, so that targets built in turn use the slots freed by
+	 * other builds.
+	 *
+	 * When combining targets, all the targets are passed to a single build invocation so
+	 * that the build tool can schedule the complete target set in parallel. This requires
+	 * CMake 3.15 or later. Older versions of CMake fall back to building each target in turn.
+	 *
+	 * @param output the process output pump
+	 * @param lease the job slots leased for the build
+	 * @param buildDirectory the directory in which Make will be executed
+	 * @param configuration the configuration to build (if null, the generator's default configuration is built)
+	 * @param targets the Make targets to build
+	 * @param makeOptions extra command line options to pass to Make
+	 * @param context the launch context
+	 * @param combineTargets whether to build all the targets in a single build invocation
+	 * @throws MojoExecutionException if an error occurs
+	 */
+	public static void runMakeTargets(ProcessOutput output,
+	                                  JobServer.Lease lease,
+	                                  Path buildDirectory,
+	                                  String configuration,
+	                                  List<String> targets,
+	                                  List<String> makeOptions,
+	                                  LaunchContext context,
+	                                  boolean combineTargets) throws MojoExecutionException {
+		runMakeTargets(output, 0, lease, buildDirectory, configuration, targets, makeOptions, context, combineTargets);
+	}
 
-			argumentsBase.add("--build");
-			argumentsBase.add(".");
+	private static void runMakeTargets(ProcessOutput output,
+	                                   int concurrency,
+	                                   JobServer.Lease lease,
+	                                   Path buildDirectory,
+	                                   String configuration,
+	                                   List<String> targets,
+	                                   List<String> makeOptions,
+	                                   LaunchContext context,
+	                                   boolean combineTargets) throws MojoExecutionException {
+		final Log log = output.getLog();
 
-			if (concurrency > 1) {
-				argumentsBase.add("--parallel");
-				argumentsBase.add(Integer.toString(concurrency));
-			}
+		try {
+			final String cmake = context.getCMake();
+			final CMakeCapabilities capabilities = context.getCapabilities(log, buildDirectory);
+			final List<List<String>> invocations = new ArrayList<>();
 
 			if (targets == null || targets.isEmpty()) {
 				// Default target.
-				runCommand(log, cmake, buildDirectory, argumentsBase, makeOptions, environmentVariables);
+				invocations.add(Collections.<String>emptyList());
+			} else if (combineTargets && targets.size() > 1 && supportsMultipleTargets(log, capabilities)) {
+				// Multiple targets in a single build invocation.
+				invocations.add(targets);
 			} else {
 				// Multiple targets.
 				for (String target : targets) {
-					final List<String> arguments = new ArrayList<>(argumentsBase);
+					invocations.add(Collections.singletonList(target));
+				}
+			}
 
-					arguments.add("--target");
-					arguments.add(target);
+			for (List<String> invocationTargets : invocations) {
+				final int jobs = lease != null ? lease.rebalance() : concurrency;
+				final List<String> arguments = new ArrayList<>();
+				final List<String> nativeOptions = new ArrayList<>();
 
-					runCommand(log, cmake, buildDirectory, arguments, makeOptions, environmentVariables);
+				arguments.add("--build");
+				arguments.add(".");
+
+				if (configuration != null && !configuration.isEmpty()) {
+					arguments.add("--config");
+					arguments.add(configuration);
 				}
+
+				if (jobs > 1) {
+					if (capabilities.supportsParallelOption()) {
+						arguments.add("--parallel");
+						arguments.add(Integer.toString(jobs));
+					} else if (Files.isRegularFile(buildDirectory.resolve("Makefile"))
+					           || Files.isRegularFile(buildDirectory.resolve("build.ninja"))) {
+						// Pre 3.12 CMake, so pass the job count directly to Make or Ninja.
+						nativeOptions.add("-j" + jobs);
+					} else {
+						log.info("CMake " + capabilities.getVersion()
+							+ " does not support parallel builds with this generator, building serially.");
+					}
+				}
+
+				if (makeOptions != null) {
+					nativeOptions.addAll(makeOptions);
+				}
+
+				if (!invocationTargets.isEmpty()) {
+					arguments.add("--target");
+					arguments.addAll(invocationTargets);
+				}
+
+				runCommand(output, cmake, buildDirectory, arguments, nativeOptions, context);
 			}
 		} catch (InterruptedException e) {
 			throw new MojoExecutionException("Make command was interrupted.", e);
@@ -84,22 +170,37 @@ public class Make {
 		}
 	}
 
-	private static void runCommand(Log log,
+	//
+	// Multiple --target values in a single build invocation are supported from CMake 3.15.
+	//
+	private static boolean supportsMultipleTargets(Log log, CMakeCapabilities capabilities) {
+		if (!capabilities.supportsMultipleTargets()) {
+			final CMakeVersion version = capabilities.getVersion();
+
+			log.info("CMake " + (version != null ? version : "(unknown version)")
+				+ " does not support multiple targets per build, building targets in turn.");
+			return false;
+		}
+
+		return true;
+	}
+
+	private static void runCommand(ProcessOutput output,
 	                               String cmake,
 	                               Path buildDirectory,
 	                               List<String> arguments,
 	                               List<String> makeOptions,
-	                               Map<String, String> environmentVariables) throws IOException, MojoExecutionException, InterruptedException {
+	                               LaunchContext context) throws IOException, MojoExecutionException, InterruptedException {
 		if (makeOptions != null && !makeOptions.isEmpty()) {
 			arguments.add("--");
 			arguments.addAll(makeOptions);
 		}
 
 		final Process process = Utilities.createProcess(
-			log, cmake, buildDirectory, arguments, environmentVariables
+			output, context, cmake, buildDirectory, arguments
 		);
 
-		Utilities.runProcess("make", log, process);
+		output.run("make", process);
 	}
 
 	private Make() {}
@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Analyses the edges recorded in a Ninja build log (.ninja_log) by a build.
+ *
+ * The Ninja log holds the start and end time of each edge, but not the
+ * dependencies between edges. The critical path is therefore approximated
+ * by walking back from the last edge to finish, each time choosing the
+ * edge that finished most recently before the current edge started.
+ *
+ * A goal may run Ninja several times (one run per target when the targets
+ * are not combined), and the times of each run are relative to the start of
+ * that run. Ninja appends the edges of a run in completion order, so a new run
+ * is detected where the end time goes backwards. The runs of a goal execute one
+ * after the other, so each run is shifted to start when the previous run ended,
+ * which places all the edges on a single time base.
+ *
+ * @author Nicholas Smethurst
+ */
+public class NinjaLog {
+	/**
+	 * The name of the Ninja log file in the CMake binary directory.
+	 */
+	public static final String FILE_NAME = ".ninja_log";
+
+	/**
+	 * A build edge (a command that produced one or more outputs).
+	 */
+	public static class Edge {
+		public final long start;
+		public final long end;
+		public final List<String> outputs = new ArrayList<>();
+
+		Edge(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		public long getDuration() {
+			return end - start;
+		}
+
+		public String getOutput() {
+			return outputs.get(0);
+		}
+
+		/**
+		 * Determine whether the edge compiles a translation unit.
+		 *
+		 * @return true if the edge's output is an object file
+		 */
+		public boolean isCompile() {
+			final String output = getOutput();
+			return output.endsWith(".o") || output.endsWith(".obj");
+		}
+	}
+
+	/**
+	 * The state of the Ninja log before a build.
+	 */
+	public static class Position {
+		private final long size;
+		private final Object fileKey;
+
+		Position(long size, Object fileKey) {
+			this.size = size;
+			this.fileKey = fileKey;
+		}
+
+		public long getSize() {
+			return size;
+		}
+	}
+
+	private static final String HEADER = "# ninja log";
+
+	private final List<Edge> edges;
+	private final int runCount;
+
+	/**
+	 * Get the current state of the Ninja log in the supplied binary directory.
+	 *
+	 * @param binaryDirectory the CMake binary directory
+	 * @return the position, with a zero size if there is no log
+	 */
+	public static Position mark(Path binaryDirectory) {
+		try {
+			final Path file = binaryDirectory.resolve(FILE_NAME);
+
+			if (Files.isRegularFile(file)) {
+				final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+				return new Position(attributes.size(), attributes.fileKey());
+			}
+		} catch (IOException e) {
+			// Treated as no log.
+		}
+
+		return new Position(0, null);
+	}
+
+	/**
+	 * Read the edges appended to the Ninja log after the specified position.
+	 *
+	 * Ninja recompacts the log when it starts if the log has grown too large, which
+	 * rewrites the log and invalidates the position. A recompaction is detected by a
+	 * replaced or truncated file, a position that is no longer at the start of a line,
+	 * or a log header after the position. The entries of the build cannot then be
+	 * distinguished, and null is returned.
+	 *
+	 * @param binaryDirectory the CMake binary directory
+	 * @param position the state of the log before the build
+	 * @return the edges recorded by the build, or null if there is no Ninja log or it was recompacted
+	 * @throws IOException if the log could not be read
+	 */
+	public static NinjaLog read(Path binaryDirectory, Position position) throws IOException {
+		final Path file = binaryDirectory.resolve(FILE_NAME);
+
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+
+		final long offset = position.size;
+
+		if (offset > 0 && position.fileKey != null) {
+			final Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+
+			if (fileKey != null && !fileKey.equals(position.fileKey)) {
+				return null;
+			}
+		}
+
+		final Map<String, Edge> edges = new LinkedHashMap<>();
+		int run = 0;
+		long runOffset = 0;
+		long previousEnd = Long.MIN_VALUE;
+		long lastEnd = 0;
+
+		try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+			if (offset > 0) {
+				if (offset > channel.size() || !isLineStart(channel, offset)) {
+					return null;
+				}
+
+				channel.position(offset);
+			}
+
+			final InputStream stream = Channels.newInputStream(channel);
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("#")) {
+					if (offset > 0 && line.startsWith(HEADER)) {
+						// The log was rewritten.
+						return null;
+					}
+
+					continue;
+				}
+
+				final String[] fields = line.split("\t");
+
+				if (fields.length < 4) {
+					continue;
+				}
+
+				try {
+					final long start = Long.parseLong(fields[0]);
+					final long end = Long.parseLong(fields[1]);
+
+					if (end < previousEnd) {
+						// A new Ninja run, which starts when the previous run ended.
+						++run;
+						runOffset = lastEnd;
+					}
+
+					previousEnd = end;
+					lastEnd = Math.max(lastEnd, runOffset + end);
+
+					// Outputs of the same edge share the run, start time, end time and command hash.
+					final String key = run + "\t" + fields[0] + '\t' + fields[1] + '\t' + (fields.length > 4 ? fields[4] : fields[3]);
+					Edge edge = edges.get(key);
+
+					if (edge == null) {
+						edge = new Edge(runOffset + start, runOffset + end);
+						edges.put(key, edge);
+					}
+
+					edge.outputs.add(fields[3]);
+				} catch (NumberFormatException e) {
+					// Ignore corrupt lines.
+				}
+			}
+		}
+
+		return new NinjaLog(new ArrayList<>(edges.values()), edges.isEmpty() ? 0 : run + 1);
+	}
+
+	public NinjaLog(List<Edge> edges, int runCount) {
+		this.edges = edges;
+		this.runCount = runCount;
+	}
+
+	public List<Edge> getEdges() {
+		return edges;
+	}
+
+	/**
+	 * Get the number of Ninja runs that recorded the edges.
+	 *
+	 * @return the number of runs
+	 */
+	public int getRunCount() {
+		return runCount;
+	}
+
+	/**
+	 * Get the elapsed time between the first edge starting and the last edge finishing.
+	 *
+	 * @return the elapsed time in milliseconds
+	 */
+	public long getWallTime() {
+		if (edges.isEmpty()) {
+			return 0;
+		}
+
+		long start = Long.MAX_VALUE;
+		long end = Long.MIN_VALUE;
+
+		for (Edge edge : edges) {
+			start = Math.min(start, edge.start);
+			end = Math.max(end, edge.end);
+		}
+
+		return end - start;
+	}
+
+	/**
+	 * Get the sum of the durations of all the edges.
+	 *
+	 * @return the total edge time in milliseconds
+	 */
+	public long getTotalEdgeTime() {
+		return getTotalTime(edges);
+	}
+
+	/**
+	 * Get the fraction of the requested concurrency that was used during the build.
+	 *
+	 * @param concurrency the requested concurrency
+	 * @return the utilisation, between zero and one
+	 */
+	public double getUtilisation(int concurrency) {
+		final long wallTime = getWallTime();
+
+		if (wallTime == 0 || concurrency < 1) {
+			return 0;
+		}
+
+		return Math.min(1.0, (double) getTotalEdgeTime() / ((double) wallTime * concurrency));
+	}
+
+	/**
+	 * Get the slowest edges that match the supplied compile flag.
+	 *
+	 * @param compile true for translation unit compiles, false for link and other steps
+	 * @param count the maximum number of edges to return
+	 * @return the slowest edges, slowest first
+	 */
+	public List<Edge> getSlowest(boolean compile, int count) {
+		final List<Edge> selected = new ArrayList<>();
+
+		for (Edge edge : edges) {
+			if (edge.isCompile() == compile) {
+				selected.add(edge);
+			}
+		}
+
+		Collections.sort(selected, new Comparator<Edge>() {
+			@Override
+			public int compare(Edge lhs, Edge rhs) {
+				return Long.compare(rhs.getDuration(), lhs.getDuration());
+			}
+		});
+
+		return selected.subList(0, Math.min(count, selected.size()));
+	}
+
+	/**
+	 * Get the approximate critical path of the build.
+	 *
+	 * @return the edges of the critical path, in build order
+	 */
+	public List<Edge> getCriticalPath() {
+		final List<Edge> byEnd = new ArrayList<>(edges);
+		final List<Edge> path = new ArrayList<>();
+
+		if (byEnd.isEmpty()) {
+			return path;
+		}
+
+		Collections.sort(byEnd, new Comparator<Edge>() {
+			@Override
+			public int compare(Edge lhs, Edge rhs) {
+				return Long.compare(lhs.end, rhs.end);
+			}
+		});
+
+		int index = byEnd.size() - 1;
+		Edge current = byEnd.get(index);
+		path.add(current);
+
+		while (true) {
+			// Find the latest edge that finished before the current edge started.
+			int low = 0;
+			int high = index - 1;
+			int found = -1;
+
+			while (low <= high) {
+				final int middle = (low + high) >>> 1;
+
+				if (byEnd.get(middle).end <= current.start) {
+					found = middle;
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+
+			if (found == -1) {
+				break;
+			}
+
+			index = found;
+			current = byEnd.get(index);
+			path.add(current);
+		}
+
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * Get the sum of the durations of the supplied edges.
+	 *
+	 * @param edges the edges
+	 * @return the total time in milliseconds
+	 */
+	public static long getTotalTime(List<Edge> edges) {
+		long total = 0;
+
+		for (Edge edge : edges) {
+			total += edge.getDuration();
+		}
+
+		return total;
+	}
+
+	/**
+	 * Write a JSON report of the build analysis.
+	 *
+	 * @param file the file to write
+	 * @param concurrency the requested concurrency
+	 * @param count the number of slowest edges to list
+	 * @throws IOException if the report could not be written
+	 */
+	public void writeReport(Path file, int concurrency, int count) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+
+		final List<Edge> criticalPath = getCriticalPath();
+
+		try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		     JsonWriter json = new JsonWriter(writer)) {
+			json.setIndent("  ");
+			json.beginObject();
+			json.name("edges").value(edges.size());
+			json.name("runs").value(runCount);
+			json.name("wallTimeMillis").value(getWallTime());
+			json.name("totalEdgeTimeMillis").value(getTotalEdgeTime());
+			json.name("concurrency").value(concurrency);
+			json.name("utilisation").value(getUtilisation(concurrency));
+			json.name("criticalPathMillis").value(getTotalTime(criticalPath));
+			json.name("criticalPath");
+			writeEdges(json, criticalPath);
+			json.name("slowestCompiles");
+			writeEdges(json, getSlowest(true, count));
+			json.name("slowestOtherSteps");
+			writeEdges(json, getSlowest(false, count));
+			json.endObject();
+		}
+	}
+
+	private static boolean isLineStart(SeekableByteChannel channel, long offset) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(1);
+
+		channel.position(offset - 1);
+		return channel.read(buffer) == 1 && buffer.get(0) == '\n';
+	}
+
+	private static void writeEdges(JsonWriter json, List<Edge> edges) throws IOException {
+		json.beginArray();
+
+		for (Edge edge : edges) {
+			json.beginObject();
+			json.name("output").value(edge.getOutput());
+			json.name("startMillis").value(edge.start);
+			json.name("durationMillis").value(edge.getDuration());
+			json.endObject();
+		}
+
+		json.endArray();
+	}
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import com.borasoftware.balau.cleaner.Cleaner;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * A local content-addressed cache of build outputs.
+ *
+ * Entries are keyed on a hash of the source tree and the other input directories, the
+ * CMake defines and version, the generator, the compiler identity, the build tool options,
+ * the environment variables and the requested targets. Each entry is a directory holding
+ * the cached files and a manifest which is written last. Entries are published by an
+ * atomic rename of a fully populated temporary directory, so concurrent writers of the
+ * same key are safe and readers never see partial entries. The modification time of
+ * the manifest records the last use of an entry, and the least recently used entries
+ * are evicted when the cache exceeds its maximum size.
+ *
+ * @author Nicholas Smethurst
+ */
+public class OutputCache {
+	/**
+	 * The name of the manifest file within a cache entry.
+	 */
+	public static final String MANIFEST = "manifest";
+
+	private static final String FILES = "files";
+	private static final String LOCK_FILE = ".lock";
+	private static final String TEMPORARY_PREFIX = ".tmp-";
+
+	// The age after which a temporary directory is considered to be abandoned by its writer.
+	private static final long TEMPORARY_GRACE_PERIOD = TimeUnit.HOURS.toMillis(1);
+
+	// The compiler identification files written by CMake, e.g. CMakeFiles/3.16.3/CMakeCXXCompiler.cmake.
+	private static final Pattern COMPILER_IDENTIFICATION = Pattern.compile("CMake[A-Za-z]*Compiler\\.cmake");
+
+	private final Log log;
+	private final Path root;
+	private final long maximumSize;
+
+	/**
+	 * Create an output cache.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param root the root directory of the cache
+	 * @param maximumSize the maximum size of the cache in bytes
+	 */
+	public OutputCache(Log log, Path root, long maximumSize) {
+		this.log = log;
+		this.root = root;
+		this.maximumSize = maximumSize;
+	}
+
+	/**
+	 * Calculate the cache key of a build.
+	 *
+	 * @param sourceDirectory the CMake source directory
+	 * @param externalDirectories the directories outside of the source directory holding inputs (may be null)
+	 * @param excludedDirectories the directories within the source directory that are not hashed
+	 * @param binaryDirectory the configured CMake binary directory, from which the compiler identity is obtained
+	 * @param generator the CMake generator
+	 * @param cmakeVersion the CMake version line (may be null)
+	 * @param cmakeDefines the CMake defines (may be null)
+	 * @param makeOptions the build tool options (may be null)
+	 * @param environmentVariables the expanded extra environment variables (may be null)
+	 * @param targets the requested targets (may be null)
+	 * @return the cache key
+	 * @throws IOException if the source tree could not be read
+	 */
+	public static String calculateKey(Path sourceDirectory,
+	                                  Collection<Path> externalDirectories,
+	                                  Collection<Path> excludedDirectories,
+	                                  Path binaryDirectory,
+	                                  String generator,
+	                                  String cmakeVersion,
+	                                  Map<String, String> cmakeDefines,
+	                                  List<String> makeOptions,
+	                                  Map<String, String> environmentVariables,
+	                                  List<String> targets) throws IOException {
+		final SortedMap<String, String> entries = new TreeMap<>();
+		final Path source = sourceDirectory.toAbsolutePath().normalize();
+
+		entries.put("generator", generator != null ? generator.trim() : "");
+		entries.put("cmake", cmakeVersion != null ? cmakeVersion : "");
+		entries.put("makeOptions", makeOptions != null ? makeOptions.toString() : "[]");
+		entries.put("targets", targets != null ? targets.toString() : "[]");
+
+		if (cmakeDefines != null) {
+			for (Map.Entry<String, String> entry : cmakeDefines.entrySet()) {
+				entries.put("define:" + entry.getKey(), entry.getValue() != null ? entry.getValue() : "");
+			}
+		}
+
+		if (environmentVariables != null) {
+			for (Map.Entry<String, String> entry : environmentVariables.entrySet()) {
+				entries.put("env:" + entry.getKey(), entry.getValue() != null ? entry.getValue() : "");
+			}
+		}
+
+		for (Path file : ConfigureFingerprint.findFiles(source, excludedDirectories, false)) {
+			entries.put("file:" + ConfigureFingerprint.relativeName(source, file), Digests.digest(file));
+		}
+
+		if (externalDirectories != null) {
+			for (Path directory : externalDirectories) {
+				final Path external = directory.toAbsolutePath().normalize();
+
+				if (!Files.isDirectory(external)) {
+					entries.put("external:" + external, "");
+					continue;
+				}
+
+				for (Path file : ConfigureFingerprint.findFiles(external, excludedDirectories, false)) {
+					entries.put("external:" + file, Digests.digest(file));
+				}
+			}
+		}
+
+		final Path cmakeFiles = binaryDirectory.resolve("CMakeFiles");
+
+		if (Files.isDirectory(cmakeFiles)) {
+			try (DirectoryStream<Path> versions = Files.newDirectoryStream(cmakeFiles)) {
+				for (Path version : versions) {
+					if (!Files.isDirectory(version)) {
+						continue;
+					}
+
+					try (DirectoryStream<Path> files = Files.newDirectoryStream(version)) {
+						for (Path file : files) {
+							if (COMPILER_IDENTIFICATION.matcher(file.getFileName().toString()).matches()) {
+								entries.put("compiler:" + file.getFileName(), Digests.digest(file));
+							}
+						}
+					}
+				}
+			}
+		}
+
+		final MessageDigest digest = Digests.newDigest();
+
+		for (Map.Entry<String, String> entry : entries.entrySet()) {
+			digest.update((entry.getKey() + '\t' + entry.getValue() + '\n').getBytes(StandardCharsets.UTF_8));
+		}
+
+		return Digests.toHex(digest.digest());
+	}
+
+	/**
+	 * Restore the files of the specified entry into the binary directory.
+	 *
+	 * @param key the cache key
+	 * @param binaryDirectory the directory into which the cached files are restored
+	 * @return the number of restored files, or -1 if the key is not cached or the entry could not be read
+	 */
+	public int restore(String key, Path binaryDirectory) {
+		final Path entry = getEntry(key);
+		final Path manifest = entry.resolve(MANIFEST);
+
+		if (!Files.isRegularFile(manifest)) {
+			return -1;
+		}
+
+		try {
+			final List<String> files = readManifest(manifest);
+
+			for (String file : files) {
+				final Path target = binaryDirectory.resolve(file);
+				Files.createDirectories(target.getParent());
+				Files.copy(
+					  entry.resolve(FILES).resolve(file)
+					, target
+					, StandardCopyOption.REPLACE_EXISTING
+					, StandardCopyOption.COPY_ATTRIBUTES
+				);
+			}
+
+			// Record the use of the entry for the LRU eviction.
+			Files.setLastModifiedTime(manifest, FileTime.fromMillis(System.currentTimeMillis()));
+			return files.size();
+		} catch (IOException e) {
+			// The entry may have been evicted concurrently.
+			log.warn("Failed to restore cached outputs " + key + ": " + e.getMessage());
+			return -1;
+		}
+	}
+
+	/**
+	 * Store the specified files of the binary directory in a new entry, then evict the
+	 * least recently used entries if the cache exceeds its maximum size. Nothing is stored
+	 * if there are no files, as an empty entry would be restored in place of a build.
+	 *
+	 * @param key the cache key
+	 * @param binaryDirectory the directory containing the files
+	 * @param files the paths of the files to store, relative to the binary directory
+	 * @throws IOException if the entry could not be written
+	 */
+	public void store(String key, Path binaryDirectory, List<String> files) throws IOException {
+		final Path entry = getEntry(key);
+
+		if (files.isEmpty() || Files.isRegularFile(entry.resolve(MANIFEST))) {
+			return;
+		}
+
+		Files.createDirectories(root);
+
+		final Path temporary = root.resolve(TEMPORARY_PREFIX + UUID.randomUUID());
+		final Path temporaryFiles = temporary.resolve(FILES);
+		long size = 0;
+
+		try {
+			Files.createDirectories(temporaryFiles);
+
+			for (String file : files) {
+				final Path target = temporaryFiles.resolve(file);
+				Files.createDirectories(target.getParent());
+				Files.copy(binaryDirectory.resolve(file), target, StandardCopyOption.COPY_ATTRIBUTES);
+				size += Files.size(target);
+			}
+
+			writeManifest(temporary.resolve(MANIFEST), size, files);
+			Files.createDirectories(entry.getParent());
+
+			try {
+				Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				throw new IOException("The output cache " + root + " does not support atomic renames.", e);
+			} catch (IOException e) {
+				// The exception raised when another writer published the same entry first
+				// depends on the platform (e.g. a plain FileSystemException for ENOTEMPTY).
+				if (!Files.isDirectory(entry)) {
+					throw e;
+				}
+
+				log.debug("Cached outputs " + key + " were stored concurrently.");
+			}
+		} finally {
+			delete(temporary);
+		}
+
+		evict();
+	}
+
+	/**
+	 * Get the root directory of the cache.
+	 *
+	 * @return the root directory
+	 */
+	public Path getRoot() {
+		return root;
+	}
+
+	//
+	// Evict the least recently used entries until the cache fits within its maximum size.
+	// Eviction is serialised between processes with a lock file. Entries are renamed before
+	// being deleted, so that readers see either the complete entry or nothing. Temporary
+	// directories left by crashed writers or failed deletions are also removed here, as
+	// they are not counted against the maximum size.
+	//
+	void evict() throws IOException {
+		try (FileChannel channel = FileChannel.open(
+			root.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			final FileLock lock;
+
+			try {
+				lock = channel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				return;
+			}
+
+			if (lock == null) {
+				// Another process is evicting.
+				return;
+			}
+
+			try {
+				deleteAbandonedTemporaries();
+
+				final List<Entry> entries = listEntries();
+				long total = 0;
+
+				for (Entry entry : entries) {
+					total += entry.size;
+				}
+
+				Collections.sort(entries, new Comparator<Entry>() {
+					@Override
+					public int compare(Entry lhs, Entry rhs) {
+						return Long.compare(lhs.lastUsed, rhs.lastUsed);
+					}
+				});
+
+				for (Entry entry : entries) {
+					if (total <= maximumSize) {
+						break;
+					}
+
+					final Path evicted = root.resolve(TEMPORARY_PREFIX + UUID.randomUUID());
+
+					try {
+						Files.move(entry.directory, evicted, StandardCopyOption.ATOMIC_MOVE);
+					} catch (IOException e) {
+						log.debug("Failed to evict " + entry.directory + ": " + e.getMessage());
+						continue;
+					}
+
+					delete(evicted);
+					total -= entry.size;
+					log.debug("Evicted cached outputs " + entry.directory.getFileName());
+				}
+			} finally {
+				lock.release();
+			}
+		}
+	}
+
+	private void deleteAbandonedTemporaries() throws IOException {
+		final long expiry = System.currentTimeMillis() - TEMPORARY_GRACE_PERIOD;
+
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(root, TEMPORARY_PREFIX + "*")) {
+			for (Path child : children) {
+				try {
+					if (Files.getLastModifiedTime(child).toMillis() < expiry) {
+						delete(child);
+						log.debug("Deleted abandoned temporary directory " + child.getFileName());
+					}
+				} catch (IOException e) {
+					// Deleted concurrently.
+				}
+			}
+		}
+	}
+
+	private List<Entry> listEntries() throws IOException {
+		final List<Entry> entries = new ArrayList<>();
+
+		try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(root)) {
+			for (Path prefix : prefixes) {
+				if (!Files.isDirectory(prefix) || prefix.getFileName().toString().startsWith(".")) {
+					continue;
+				}
+
+				try (DirectoryStream<Path> directories = Files.newDirectoryStream(prefix)) {
+					for (Path directory : directories) {
+						final Path manifest = directory.resolve(MANIFEST);
+
+						try {
+							entries.add(new Entry(
+								directory, readManifestSize(manifest), Files.getLastModifiedTime(manifest).toMillis()
+							));
+						} catch (IOException e) {
+							// Evicted concurrently or not an entry.
+						}
+					}
+				}
+			}
+		}
+
+		return entries;
+	}
+
+	private Path getEntry(String key) {
+		return root.resolve(key.substring(0, 2)).resolve(key);
+	}
+
+	//
+	// The manifest holds the total size on the first line, followed by one relative path per line.
+	//
+	private static void writeManifest(Path manifest, long size, List<String> files) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(manifest, StandardCharsets.UTF_8)) {
+			writer.write(Long.toString(size));
+			writer.newLine();
+
+			for (String file : files) {
+				writer.write(file);
+				writer.newLine();
+			}
+		}
+	}
+
+	private static List<String> readManifest(Path manifest) throws IOException {
+		final List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+		return lines.isEmpty() ? lines : new ArrayList<>(lines.subList(1, lines.size()));
+	}
+
+	private static long readManifestSize(Path manifest) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+			final String line = reader.readLine();
+
+			try {
+				return line != null ? Long.parseLong(line.trim()) : 0;
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid manifest " + manifest);
+			}
+		}
+	}
+
+	private void delete(Path directory) {
+		if (!Files.exists(directory)) {
+			return;
+		}
+
+		try {
+			new Cleaner(null, false).delete(directory.toFile(), null, false, true, false);
+		} catch (IOException e) {
+			log.debug("Failed to delete " + directory + ": " + e.getMessage());
+		}
+	}
+
+	private static class Entry {
+		private final Path directory;
+		private final long size;
+		private final long lastUsed;
+
+		Entry(Path directory, long size, long lastUsed) {
+			this.directory = directory;
+			this.size = size;
+			this.lastUsed = lastUsed;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Collapses the progress lines of CMake, the build tool and CTest into periodic summary lines.
+ *
+ * Makefile progress ("[ 42%] Building CXX object ..."), Ninja progress ("[12/345] ..."),
+ * the directory and dependency scanning chatter of Make, and the passed test lines of
+ * CTest are suppressed. All other lines, including compiler diagnostics and failed tests,
+ * are logged as they arrive.
+ *
+ * @author Nicholas Smethurst
+ */
+class OutputCondenser {
+	private static final Pattern MAKE_PROGRESS = Pattern.compile("^\\[\\s*(\\d+)%\\]\\s(.*)$");
+	private static final Pattern NINJA_PROGRESS = Pattern.compile("^\\[(\\d+)/(\\d+)\\]\\s");
+	private static final Pattern CTEST_START = Pattern.compile("^\\s*Start\\s+\\d+: ");
+	private static final Pattern CTEST_PASSED = Pattern.compile("^\\s*(\\d+)/(\\d+) Test\\s+#\\d+: .*\\sPassed\\s");
+	private static final Pattern MAKE_DIRECTORY = Pattern.compile("^g?make(\\[\\d+\\])?: (Entering|Leaving) directory ");
+
+	private static final String SCANNING = "Scanning dependencies of target ";
+	private static final String CONSOLIDATING = "Consolidate compiler generated dependencies of target ";
+	private static final String BUILT_TARGET = "Built target ";
+
+	private final long intervalNanos;
+	private final long startNanos;
+	private long lastSummaryNanos;
+
+	private int percent = -1;
+	private long steps;
+	private long totalSteps;
+	private long targets;
+	private long suppressed;
+	private long suppressedSinceSummary;
+
+	/**
+	 * Create a condenser.
+	 *
+	 * @param intervalMillis the minimum interval between summary lines
+	 * @param nowNanos the current time
+	 */
+	OutputCondenser(long intervalMillis, long nowNanos) {
+		this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+		this.startNanos = nowNanos;
+		this.lastSummaryNanos = nowNanos;
+	}
+
+	/**
+	 * Determine whether a line is a progress line, recording the progress if it is.
+	 *
+	 * @param line the line
+	 * @return true if the line should not be logged
+	 */
+	boolean suppress(String line) {
+		Matcher matcher = MAKE_PROGRESS.matcher(line);
+
+		if (matcher.find()) {
+			percent = Integer.parseInt(matcher.group(1));
+
+			if (matcher.group(2).startsWith(BUILT_TARGET)) {
+				++targets;
+			} else {
+				++steps;
+			}
+
+			return count();
+		}
+
+		matcher = NINJA_PROGRESS.matcher(line);
+
+		if (matcher.find()) {
+			steps = Long.parseLong(matcher.group(1));
+			totalSteps = Long.parseLong(matcher.group(2));
+			return count();
+		}
+
+		matcher = CTEST_PASSED.matcher(line);
+
+		if (matcher.find()) {
+			steps = Long.parseLong(matcher.group(1));
+			totalSteps = Long.parseLong(matcher.group(2));
+			return count();
+		}
+
+		if (line.startsWith(SCANNING)
+			|| line.startsWith(CONSOLIDATING)
+			|| CTEST_START.matcher(line).find()
+			|| MAKE_DIRECTORY.matcher(line).find()) {
+			return count();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Get a summary line if lines have been suppressed and the interval has elapsed.
+	 *
+	 * @param nowNanos the current time
+	 * @return the summary line, or null if no summary is due
+	 */
+	String getSummary(long nowNanos) {
+		if (suppressedSinceSummary == 0 || nowNanos - lastSummaryNanos < intervalNanos) {
+			return null;
+		}
+
+		return summarise(nowNanos);
+	}
+
+	/**
+	 * Get the final summary line once the process has completed.
+	 *
+	 * @param nowNanos the current time
+	 * @return the summary line, or null if no lines have been suppressed since the last summary
+	 */
+	String getFinalSummary(long nowNanos) {
+		return suppressedSinceSummary == 0 ? null : summarise(nowNanos);
+	}
+
+	/**
+	 * Get the total number of suppressed lines.
+	 *
+	 * @return the number of suppressed lines
+	 */
+	long getSuppressed() {
+		return suppressed;
+	}
+
+	private boolean count() {
+		++suppressed;
+		++suppressedSinceSummary;
+		return true;
+	}
+
+	private String summarise(long nowNanos) {
+		final double seconds = Math.max(1, nowNanos - startNanos) / 1e9;
+		final StringBuilder builder = new StringBuilder("Progress: ");
+		final int currentPercent = totalSteps > 0 ? (int) (steps * 100 / totalSteps) : percent;
+
+		if (currentPercent >= 0) {
+			builder.append(currentPercent).append("%, ");
+		}
+
+		builder.append(steps);
+
+		if (totalSteps > 0) {
+			builder.append('/').append(totalSteps);
+		}
+
+		builder.append(" steps");
+
+		if (targets > 0) {
+			builder.append(", ").append(targets).append(" targets built");
+		}
+
+		builder.append(String.format(Locale.ROOT, ", %.1f steps/s (%d lines condensed).", steps / seconds, suppressed));
+
+		lastSummaryNanos = nowNanos;
+		suppressedSinceSummary = 0;
+		return builder.toString();
+	}
+}
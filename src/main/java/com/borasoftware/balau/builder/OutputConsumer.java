@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+/**
+ * Receives each line of process output as it is read.
+ *
+ * Consumers are called on the logging thread, in output order.
+ *
+ * @author Nicholas Smethurst
+ */
+public interface OutputConsumer {
+	/**
+	 * Consume a line of process output.
+	 *
+	 * @param line the line, without the line terminator
+	 * @param error true if the line was read from a separated error stream
+	 */
+	void consume(String line, boolean error);
+}
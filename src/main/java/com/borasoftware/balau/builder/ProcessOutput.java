@@ -0,0 +1,573 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import com.borasoftware.balau.listener.BuildListeners;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pumps the output of a process to the Maven logger.
+ *
+ * The output streams of the process are read by dedicated pump threads and
+ * decoded with an explicit charset. The decoded lines are placed in a bounded
+ * queue, from which the calling thread takes them in batches. This keeps the
+ * process' pipes drained when the console is slow. Each line is logged with its
+ * own call to the Maven logger, so that every line has the logger's level prefix,
+ * whereas the build listeners receive each batch as a single chunk.
+ *
+ * In condensed mode, progress lines are collapsed into periodic summary lines
+ * (see {@link OutputCondenser}). The complete output can be written to a raw log
+ * file, which is truncated by the first process run and appended to by later runs.
+ *
+ * The output needed to explain a failure is retained per process (see {@link FailureContext}),
+ * and is included in the exception thrown for a non-zero exit status and in the optional
+ * failure report file.
+ *
+ * @author Nicholas Smethurst
+ */
+public class ProcessOutput {
+	private static final int DEFAULT_QUEUE_CAPACITY = 8192;
+	private static final int DEFAULT_BATCH_SIZE = 256;
+	private static final int DEFAULT_FAILURE_LAST_LINES = 50;
+	private static final int DEFAULT_FAILURE_ERROR_LINES = 20;
+
+	private final Log log;
+	private Charset charset = Charset.defaultCharset();
+	private boolean separateErrorStream;
+	private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private final List<OutputConsumer> consumers = new ArrayList<>();
+	private BuildListeners listeners;
+	private long condenseInterval = -1;
+	private Path logFile;
+	private boolean logFileStarted;
+	private int failureLastLines = DEFAULT_FAILURE_LAST_LINES;
+	private int failureErrorLines = DEFAULT_FAILURE_ERROR_LINES;
+	private Path failureReport;
+
+	// The identifier and start time of the most recently started process.
+	private long processId;
+	private long startNanos = System.nanoTime();
+
+	private static final AtomicLong PROCESS_IDS = new AtomicLong();
+
+	/**
+	 * Create a process output pump that logs to the supplied logger.
+	 *
+	 * @param log the Maven plugin logger
+	 */
+	public ProcessOutput(Log log) {
+		this.log = log;
+		this.listeners = new BuildListeners(log);
+	}
+
+	/**
+	 * Set the charset used to decode the output of the process (default is the platform charset).
+	 *
+	 * @param charset the charset
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * Set whether the error stream of the process is kept separate from its output stream.
+	 * Separated error stream lines are logged at warning level.
+	 *
+	 * @param separateErrorStream true to keep the error stream separate
+	 */
+	public void setSeparateErrorStream(boolean separateErrorStream) {
+		this.separateErrorStream = separateErrorStream;
+	}
+
+	/**
+	 * Set the maximum number of lines buffered between the pump threads and the logger.
+	 *
+	 * @param queueCapacity the maximum number of buffered lines
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = Math.max(1, queueCapacity);
+	}
+
+	/**
+	 * Set the maximum number of lines taken from the queue at once, and passed
+	 * to the build listeners as a single chunk.
+	 *
+	 * @param batchSize the maximum number of lines per batch
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Add a consumer that receives each line of output as it is read.
+	 *
+	 * @param consumer the consumer
+	 */
+	public void addConsumer(OutputConsumer consumer) {
+		consumers.add(consumer);
+	}
+
+	/**
+	 * Collapse progress lines into summary lines logged at most once per interval.
+	 *
+	 * @param intervalMillis the minimum interval between summary lines (a negative value logs all lines)
+	 */
+	public void setCondenseInterval(long intervalMillis) {
+		this.condenseInterval = intervalMillis;
+	}
+
+	/**
+	 * Set the file to which the complete output of the processes is written (UTF-8 encoded).
+	 *
+	 * @param logFile the log file (if null, no log file is written)
+	 */
+	public void setLogFile(Path logFile) {
+		this.logFile = logFile;
+		this.logFileStarted = false;
+	}
+
+	/**
+	 * Set the number of lines retained per process to explain a failure.
+	 *
+	 * @param lastLines the number of last lines retained
+	 * @param errorLines the number of first error lines retained
+	 */
+	public void setFailureContext(int lastLines, int errorLines) {
+		this.failureLastLines = lastLines;
+		this.failureErrorLines = errorLines;
+	}
+
+	/**
+	 * Set the file to which the failure context of a failed process is written.
+	 *
+	 * @param failureReport the report file (if null, no report is written)
+	 */
+	public void setFailureReport(Path failureReport) {
+		this.failureReport = failureReport;
+	}
+
+	/**
+	 * Set the build listeners that receive process lifecycle and output events.
+	 *
+	 * @param listeners the build listeners
+	 */
+	public void setListeners(BuildListeners listeners) {
+		this.listeners = listeners;
+	}
+
+	public Log getLog() {
+		return log;
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	public boolean isSeparateErrorStream() {
+		return separateErrorStream;
+	}
+
+	/**
+	 * Start a process and notify the build listeners.
+	 *
+	 * @param builder the process builder
+	 * @param environmentVariables the extra environment variables specified to the process (may be null)
+	 * @return the started process
+	 * @throws IOException if the process could not be started
+	 */
+	public Process start(ProcessBuilder builder, Map<String, String> environmentVariables) throws IOException {
+		final long start = System.nanoTime();
+		final Process process = builder.start();
+
+		processId = PROCESS_IDS.incrementAndGet();
+		startNanos = start;
+
+		if (!listeners.isEmpty()) {
+			listeners.processStarted(
+				  processId
+				, Collections.unmodifiableList(builder.command())
+				, builder.directory().toPath()
+				, environmentVariables != null
+					? Collections.unmodifiableMap(environmentVariables)
+					: Collections.<String, String>emptyMap()
+			);
+		}
+
+		return process;
+	}
+
+	/**
+	 * Log the process' output to the Maven logger and wait for the process to complete.
+	 *
+	 * If the current thread is interrupted whilst waiting, or a consumer or listener throws,
+	 * the process and its descendants are destroyed, and the call returns once they have exited.
+	 *
+	 * @param command the original command supplied to the process (for error logging purposes)
+	 * @param process the process
+	 * @exception  IOException  If an I/O error occurs
+	 * @throws InterruptedException if the current thread is interrupted whilst waiting for the process
+	 * @throws MojoExecutionException if the exit status of the process is non-zero
+	 */
+	public void run(String command, Process process) throws IOException, InterruptedException, MojoExecutionException {
+		final BlockingQueue<Line> queue = new ArrayBlockingQueue<>(queueCapacity);
+		final List<Pump> pumps = new ArrayList<>();
+		final RawLog rawLog = openRawLog();
+		final FailureContext failureContext = new FailureContext(failureLastLines, failureErrorLines);
+
+		pumps.add(new Pump(command, process.getInputStream(), false, queue));
+
+		if (separateErrorStream) {
+			pumps.add(new Pump(command, process.getErrorStream(), true, queue));
+		}
+
+		try {
+			for (Pump pump : pumps) {
+				pump.start();
+			}
+
+			drain(queue, pumps.size(), rawLog, failureContext);
+
+			final int exitStatus = process.waitFor();
+
+			if (!listeners.isEmpty()) {
+				listeners.processExited(processId, exitStatus, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+			}
+
+			for (Pump pump : pumps) {
+				pump.join();
+
+				if (pump.failure != null) {
+					throw pump.failure;
+				}
+			}
+
+			if (exitStatus != 0) {
+				final String message = command + " command failed with exit status of " + exitStatus;
+
+				if (failureReport != null) {
+					try {
+						failureContext.writeReport(failureReport, message);
+						log.error("The failure report is written to " + failureReport);
+					} catch (IOException e) {
+						log.warn("Failed to write the failure report " + failureReport + ": " + e.getMessage());
+					}
+				}
+
+				throw new MojoExecutionException(message + failureContext.format());
+			}
+		} catch (InterruptedException | RuntimeException | Error e) {
+			// Also reached when a consumer or listener fails, in which case the pumps would block
+			// on the full queue and the process on its output pipe.
+			// Wait for the build tool and compilers to exit, so that a following build does not overlap them.
+			ProcessTree.destroy(process);
+
+			for (Pump pump : pumps) {
+				pump.interrupt();
+			}
+
+			throw e;
+		} finally {
+			if (rawLog != null) {
+				rawLog.close();
+			}
+		}
+	}
+
+	//
+	// Open the raw log file, truncating it on the first run. Failure to write the
+	// log file is reported but does not fail the build.
+	//
+	private RawLog openRawLog() {
+		if (logFile == null) {
+			return null;
+		}
+
+		try {
+			final Path parent = logFile.toAbsolutePath().getParent();
+
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+
+			final RawLog rawLog = new RawLog(FileChannel.open(
+				  logFile
+				, StandardOpenOption.CREATE
+				, StandardOpenOption.WRITE
+				, logFileStarted ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING
+			));
+
+			if (!logFileStarted) {
+				logFileStarted = true;
+				log.info("The complete output is written to " + logFile);
+			}
+
+			return rawLog;
+		} catch (IOException e) {
+			log.warn("Failed to open the output log file " + logFile + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	//
+	// Log the queued lines until all the pumps have reached the end of their streams.
+	//
+	private void drain(BlockingQueue<Line> queue,
+	                   int pumpCount,
+	                   RawLog rawLog,
+	                   FailureContext failureContext) throws InterruptedException {
+		final List<Line> batch = new ArrayList<>(batchSize);
+		final StringBuilder builder = new StringBuilder();
+		final OutputCondenser condenser = condenseInterval >= 0 ? new OutputCondenser(condenseInterval, System.nanoTime()) : null;
+		int remainingPumps = pumpCount;
+
+		while (remainingPumps > 0) {
+			batch.add(queue.take());
+			queue.drainTo(batch, batchSize - 1);
+
+			boolean error = false;
+
+			for (Line line : batch) {
+				if (line == Line.END) {
+					--remainingPumps;
+					continue;
+				}
+
+				if (rawLog != null) {
+					rawLog.write(line.text);
+				}
+
+				failureContext.consume(line.text, line.error);
+
+				for (OutputConsumer consumer : consumers) {
+					consumer.consume(line.text, line.error);
+				}
+
+				if (condenser != null && condenser.suppress(line.text)) {
+					continue;
+				}
+
+				if (builder.length() > 0 && line.error != error) {
+					flush(builder, error);
+				}
+
+				if (line.error) {
+					log.warn(line.text);
+				} else {
+					log.info(line.text);
+				}
+
+				if (!listeners.isEmpty()) {
+					if (builder.length() > 0) {
+						builder.append(System.lineSeparator());
+					}
+
+					builder.append(line.text);
+				}
+
+				error = line.error;
+			}
+
+			flush(builder, error);
+			batch.clear();
+
+			if (condenser != null) {
+				final String summary = remainingPumps > 0
+					? condenser.getSummary(System.nanoTime())
+					: condenser.getFinalSummary(System.nanoTime());
+
+				if (summary != null) {
+					log.info(summary);
+
+					if (!listeners.isEmpty()) {
+						listeners.processOutput(processId, summary, false);
+					}
+				}
+			}
+		}
+	}
+
+	//
+	// Pass the lines of the batch logged at the same level to the listeners as a single chunk.
+	//
+	private void flush(StringBuilder builder, boolean error) {
+		if (builder.length() == 0) {
+			return;
+		}
+
+		listeners.processOutput(processId, builder.toString(), error);
+		builder.setLength(0);
+	}
+
+	//
+	// A line of output, or the end of stream marker.
+	//
+	private static class Line {
+		static final Line END = new Line(null, false);
+
+		final String text;
+		final boolean error;
+
+		Line(String text, boolean error) {
+			this.text = text;
+			this.error = error;
+		}
+	}
+
+	//
+	// Writes the raw output lines to the log file through a buffered channel.
+	// A write failure disables the log for the rest of the run.
+	//
+	private class RawLog implements Closeable {
+		private final FileChannel channel;
+		private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+		private final String separator = System.lineSeparator();
+		private boolean failed;
+
+		RawLog(FileChannel channel) {
+			this.channel = channel;
+		}
+
+		void write(String line) {
+			if (!failed) {
+				try {
+					encode(CharBuffer.wrap(line));
+					encode(CharBuffer.wrap(separator));
+				} catch (IOException e) {
+					fail(e);
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				if (!failed) {
+					writeBuffer();
+				}
+			} catch (IOException e) {
+				fail(e);
+			} finally {
+				try {
+					channel.close();
+				} catch (IOException e) {
+					log.warn("Failed to close the output log file " + logFile + ": " + e.getMessage());
+				}
+			}
+		}
+
+		private void encode(CharBuffer characters) throws IOException {
+			encoder.reset();
+
+			while (true) {
+				final CoderResult result = encoder.encode(characters, buffer, true);
+
+				if (result.isOverflow()) {
+					writeBuffer();
+				} else {
+					break;
+				}
+			}
+		}
+
+		private void writeBuffer() throws IOException {
+			buffer.flip();
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			buffer.clear();
+		}
+
+		private void fail(IOException e) {
+			failed = true;
+			log.warn("Failed to write the output log file " + logFile + ": " + e.getMessage());
+		}
+	}
+
+	//
+	// Reads and decodes a stream of the process, placing the lines in the queue.
+	//
+	private class Pump extends Thread {
+		private final InputStream stream;
+		private final boolean error;
+		private final BlockingQueue<Line> queue;
+		private volatile IOException failure;
+
+		Pump(String command, InputStream stream, boolean error, BlockingQueue<Line> queue) {
+			super(command + (error ? " stderr" : " stdout") + " pump");
+			setDaemon(true);
+
+			this.stream = stream;
+			this.error = error;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, charset))) {
+				String line;
+
+				while ((line = reader.readLine()) != null) {
+					queue.put(new Line(line, error));
+				}
+			} catch (IOException e) {
+				failure = e;
+			} catch (InterruptedException e) {
+				// The logging thread has been interrupted and is no longer draining the queue.
+				return;
+			}
+
+			try {
+				queue.put(Line.END);
+			} catch (InterruptedException e) {
+				// The logging thread has been interrupted and is no longer draining the queue.
+			}
+		}
+	}
+}
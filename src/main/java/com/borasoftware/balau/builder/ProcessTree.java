@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Destroys a process together with its descendants, and waits for them to exit.
+ *
+ * "cmake --build" runs the build tool as a child process, which in turn runs the
+ * compilers, so destroying the CMake process alone leaves the build tool running
+ * in the binary directory.
+ *
+ * The plugin targets Java 7, so the descendants are obtained from the process
+ * handle API of Java 9 and later via reflection. On older runtimes, only the
+ * process itself is destroyed.
+ *
+ * @author Nicholas Smethurst
+ */
+class ProcessTree {
+	// The time given to the processes to exit after being destroyed, before they are destroyed forcibly.
+	private static final long GRACE_MILLIS = 10000;
+
+	private static final long POLL_MILLIS = 50;
+
+	/**
+	 * Destroy the process and its descendants, then wait for them to exit. If the
+	 * calling thread is interrupted whilst waiting, the wait continues and the
+	 * interrupt status is restored before returning.
+	 *
+	 * @param process the process
+	 */
+	static void destroy(Process process) {
+		// The descendants must be obtained before the process exits and they are reparented.
+		final List<Object> descendants = getDescendants(process);
+		boolean interrupted = false;
+
+		process.destroy();
+
+		for (Object descendant : descendants) {
+			invoke(descendant, "destroy");
+		}
+
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(GRACE_MILLIS);
+
+		while (true) {
+			boolean alive = isAlive(process);
+
+			for (Object descendant : descendants) {
+				alive |= Boolean.TRUE.equals(invoke(descendant, "isAlive"));
+			}
+
+			if (!alive) {
+				break;
+			}
+
+			if (System.nanoTime() > deadline) {
+				destroyForcibly(process);
+
+				for (Object descendant : descendants) {
+					invoke(descendant, "destroyForcibly");
+				}
+
+				break;
+			}
+
+			try {
+				Thread.sleep(POLL_MILLIS);
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		// Reap the process after a forcible destruction.
+		while (true) {
+			try {
+				process.waitFor();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static List<Object> getDescendants(Process process) {
+		final List<Object> descendants = new ArrayList<>();
+		final Object stream = invoke(process, "descendants");
+
+		if (stream != null) {
+			final Object iterator = invoke(stream, "iterator");
+
+			if (iterator instanceof Iterator) {
+				final Iterator<?> handles = (Iterator<?>) iterator;
+
+				while (handles.hasNext()) {
+					descendants.add(handles.next());
+				}
+			}
+		}
+
+		return descendants;
+	}
+
+	private static boolean isAlive(Process process) {
+		try {
+			process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException e) {
+			return true;
+		}
+	}
+
+	private static void destroyForcibly(Process process) {
+		if (invoke(process, "destroyForcibly") == null) {
+			process.destroy();
+		}
+	}
+
+	//
+	// Invoke a public no-argument method of a public interface or class by name,
+	// returning null if the method is not available on this runtime.
+	//
+	private static Object invoke(Object target, String name) {
+		try {
+			final Method method = findMethod(target.getClass(), name);
+			return method != null ? method.invoke(target) : null;
+		} catch (IllegalAccessException | InvocationTargetException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	//
+	// The implementation classes are not accessible, so the method is looked up in the public
+	// superclasses and interfaces (java.lang.Process, java.lang.ProcessHandle, java.util.stream.BaseStream).
+	//
+	private static Method findMethod(Class<?> type, String name) {
+		for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+			final Method method = findPublicMethod(current, name);
+
+			if (method != null) {
+				return method;
+			}
+		}
+
+		return null;
+	}
+
+	private static Method findPublicMethod(Class<?> type, String name) {
+		if (Modifier.isPublic(type.getModifiers()) && type.getName().startsWith("java.")) {
+			try {
+				return type.getMethod(name);
+			} catch (NoSuchMethodException e) {
+				// Look in the interfaces.
+			}
+		}
+
+		for (Class<?> implemented : type.getInterfaces()) {
+			final Method method = findPublicMethod(implemented, name);
+
+			if (method != null) {
+				return method;
+			}
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic assignment of tests to shards, balanced by historical test cost.
+ *
+ * The tests are sorted by decreasing cost (then by name) and each test is assigned to
+ * the shard with the lowest total cost so far (then the lowest index), which is the
+ * longest processing time first heuristic. Tests without a recorded cost are given the
+ * median cost of the tests that have one. Every shard computes the same assignment from
+ * the same test list and cost data, so the cost data must be a fixed file shared by the
+ * shards rather than the cost data that CTest rewrites after each run.
+ *
+ * @author Nicholas Smethurst
+ */
+public class TestShards {
+	// The cost of tests when no test has a recorded cost, which balances the shards by count.
+	private static final double DEFAULT_COST = 1.0;
+
+	private final List<List<String>> shards;
+	private final double[] costs;
+
+	/**
+	 * Assign the tests to shards.
+	 *
+	 * @param tests the test names
+	 * @param recordedCosts the recorded test costs in seconds (may be null or empty)
+	 * @param count the number of shards
+	 * @return the assignment
+	 */
+	public static TestShards assign(List<String> tests, final Map<String, Double> recordedCosts, int count) {
+		final double defaultCost = getMedianCost(tests, recordedCosts);
+		final List<String> sorted = new ArrayList<>(tests);
+		final List<List<String>> shards = new ArrayList<>();
+		final double[] costs = new double[count];
+
+		for (int i = 0; i < count; i++) {
+			shards.add(new ArrayList<String>());
+		}
+
+		Collections.sort(sorted, new Comparator<String>() {
+			@Override
+			public int compare(String lhs, String rhs) {
+				final int result = Double.compare(getCost(rhs, recordedCosts, defaultCost), getCost(lhs, recordedCosts, defaultCost));
+				return result != 0 ? result : lhs.compareTo(rhs);
+			}
+		});
+
+		for (String test : sorted) {
+			int lightest = 0;
+
+			for (int i = 1; i < count; i++) {
+				if (costs[i] < costs[lightest]) {
+					lightest = i;
+				}
+			}
+
+			shards.get(lightest).add(test);
+			costs[lightest] += getCost(test, recordedCosts, defaultCost);
+		}
+
+		return new TestShards(shards, costs);
+	}
+
+	/**
+	 * Assign the tests to shards, balanced by the costs of the specified cost data file.
+	 *
+	 * @param tests the test names
+	 * @param costFile the cost data file shared by the shards (may be null to balance by test count)
+	 * @param count the number of shards
+	 * @return the assignment
+	 * @throws IOException if the cost data file could not be read
+	 */
+	public static TestShards assignFromFile(List<String> tests, Path costFile, int count) throws IOException {
+		final CTestCostData costData = costFile != null ? CTestCostData.readFile(costFile) : null;
+
+		if (costFile != null && costData == null) {
+			throw new NoSuchFileException(costFile.toString(), null, "The shard cost file does not exist.");
+		}
+
+		return assign(tests, costData != null ? costData.getCosts() : null, count);
+	}
+
+	private TestShards(List<List<String>> shards, double[] costs) {
+		this.shards = shards;
+		this.costs = costs;
+	}
+
+	/**
+	 * Get the tests of the specified shard, most expensive first.
+	 *
+	 * @param index the zero based shard index
+	 * @return the test names
+	 */
+	public List<String> getTests(int index) {
+		return Collections.unmodifiableList(shards.get(index));
+	}
+
+	/**
+	 * Get the expected cost of the specified shard.
+	 *
+	 * @param index the zero based shard index
+	 * @return the sum of the test costs in seconds
+	 */
+	public double getCost(int index) {
+		return costs[index];
+	}
+
+	private static double getCost(String test, Map<String, Double> recordedCosts, double defaultCost) {
+		final Double cost = recordedCosts != null ? recordedCosts.get(test) : null;
+		return cost != null ? cost : defaultCost;
+	}
+
+	private static double getMedianCost(List<String> tests, Map<String, Double> recordedCosts) {
+		final List<Double> known = new ArrayList<>();
+
+		if (recordedCosts != null) {
+			for (String test : tests) {
+				final Double cost = recordedCosts.get(test);
+
+				if (cost != null) {
+					known.add(cost);
+				}
+			}
+		}
+
+		if (known.isEmpty()) {
+			return DEFAULT_COST;
+		}
+
+		Collections.sort(known);
+		return known.get(known.size() / 2);
+	}
+}
@@ -24,11 +24,14 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -98,6 +101,89 @@ public class Utilities {
 		return Runtime.getRuntime().availableProcessors();
 	}
 
+	/**
+	 * Divide the concurrency fairly between the specified number of concurrent builds.
+	 * Each build is given at least one job.
+	 *
+	 * @param concurrency the specified concurrency or zero if the default concurrency should be used
+	 * @param count the number of concurrent builds
+	 * @return the concurrency of each build
+	 */
+	public static int[] divideConcurrency(int concurrency, int count) {
+		final int total = getConcurrency(concurrency);
+		final int[] shares = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			shares[i] = Math.max(1, total / count + (i < total % count ? 1 : 0));
+		}
+
+		return shares;
+	}
+
+	/**
+	 * Determine whether the generator writes the build files of several configurations to a single
+	 * binary directory (Ninja Multi-Config, Visual Studio and Xcode).
+	 *
+	 * @param generator the generator name (may be null or empty)
+	 * @return true if the generator is a multi-configuration generator
+	 */
+	public static boolean isMultiConfigGenerator(String generator) {
+		if (generator == null) {
+			return false;
+		}
+
+		final String name = generator.trim();
+
+		return name.equals("Ninja Multi-Config") || name.equals("Xcode") || name.startsWith("Visual Studio");
+	}
+
+	/**
+	 * Determine whether the generator writes Ninja build files (Ninja and Ninja Multi-Config).
+	 *
+	 * @param generator the generator name (may be null or empty)
+	 * @return true if the generator is a Ninja generator
+	 */
+	public static boolean isNinjaGenerator(String generator) {
+		return generator != null && generator.trim().startsWith("Ninja");
+	}
+
+	/**
+	 * Get the executable search path of the processes started with the supplied environment variables.
+	 *
+	 * @param environmentVariables the expanded extra environment variables (may be null or empty)
+	 * @return the PATH of the supplied environment variables if specified, otherwise the PATH of the current process
+	 */
+	public static String getSearchPath(Map<String, String> environmentVariables) {
+		return environmentVariables != null && environmentVariables.containsKey("PATH")
+			? environmentVariables.get("PATH")
+			: System.getenv("PATH");
+	}
+
+	//
+	// Search the supplied path for the named executable. Returns null if it was not found.
+	//
+	static Path findExecutable(String name, String path) {
+		if (path == null) {
+			return null;
+		}
+
+		final boolean windows = File.separatorChar == '\\';
+
+		for (String directory : path.split(File.pathSeparator)) {
+			if (directory.isEmpty()) {
+				continue;
+			}
+
+			final Path candidate = Paths.get(directory, windows ? name + ".exe" : name);
+
+			if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+				return candidate;
+			}
+		}
+
+		return null;
+	}
+
 	/**
 	 * Concatenate the supplied string list for logging purposes.
 	 *
@@ -136,6 +222,126 @@ public class Utilities {
 	                             Path buildDirectory,
 	                             List<String> arguments,
 	                             Map<String, String> environmentVariables) throws IOException, MojoExecutionException {
+		return createProcessBuilder(log, command, buildDirectory, arguments, environmentVariables, true, true).start();
+	}
+
+	/**
+	 * Create and start a new process with the specified command line arguments, notifying
+	 * the build listeners of the supplied process output pump.
+	 *
+	 * @param output the process output pump that will log the process' output
+	 * @param command the command
+	 * @param buildDirectory the working directory in which the process will launch
+	 * @param arguments the command line arguments
+	 * @param environmentVariables a map containing extra environment variables (may be null or empty)
+	 * @return a new process
+	 * @throws IOException if an I/O error occurs
+	 */
+	static Process createProcess(ProcessOutput output,
+	                             String command,
+	                             Path buildDirectory,
+	                             List<String> arguments,
+	                             Map<String, String> environmentVariables) throws IOException, MojoExecutionException {
+		final ProcessBuilder builder = createProcessBuilder(
+			output.getLog(), command, buildDirectory, arguments, environmentVariables, !output.isSeparateErrorStream(), true
+		);
+
+		return output.start(builder, environmentVariables);
+	}
+
+	/**
+	 * Create and start a new process with the environment of the supplied launch context.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param context the launch context
+	 * @param command the command
+	 * @param buildDirectory the working directory in which the process will launch
+	 * @param arguments the command line arguments
+	 * @return a new process
+	 * @throws IOException if an I/O error occurs
+	 */
+	static Process createProcess(Log log,
+	                             LaunchContext context,
+	                             String command,
+	                             Path buildDirectory,
+	                             List<String> arguments) throws IOException, MojoExecutionException {
+		final ProcessBuilder builder = createProcessBuilder(log, command, buildDirectory, arguments, null, true, true);
+
+		applyEnvironment(builder.environment(), context);
+		return builder.start();
+	}
+
+	/**
+	 * Create and start a new process with the environment of the supplied launch context,
+	 * logging the command line at debug level. This is used for the queries that are run
+	 * around each build, such as those of the compiler cache statistics.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param context the launch context
+	 * @param command the command
+	 * @param buildDirectory the working directory in which the process will launch
+	 * @param arguments the command line arguments
+	 * @return a new process
+	 * @throws IOException if an I/O error occurs
+	 */
+	static Process createQueryProcess(Log log,
+	                                  LaunchContext context,
+	                                  String command,
+	                                  Path buildDirectory,
+	                                  List<String> arguments) throws IOException, MojoExecutionException {
+		final ProcessBuilder builder = createProcessBuilder(log, command, buildDirectory, arguments, null, true, false);
+
+		applyEnvironment(builder.environment(), context);
+		return builder.start();
+	}
+
+	/**
+	 * Create and start a new process with the environment of the supplied launch context,
+	 * notifying the build listeners of the supplied process output pump.
+	 *
+	 * @param output the process output pump that will log the process' output
+	 * @param context the launch context
+	 * @param command the command
+	 * @param buildDirectory the working directory in which the process will launch
+	 * @param arguments the command line arguments
+	 * @return a new process
+	 * @throws IOException if an I/O error occurs
+	 */
+	static Process createProcess(ProcessOutput output,
+	                             LaunchContext context,
+	                             String command,
+	                             Path buildDirectory,
+	                             List<String> arguments) throws IOException, MojoExecutionException {
+		final ProcessBuilder builder = createProcessBuilder(
+			output.getLog(), command, buildDirectory, arguments, null, !output.isSeparateErrorStream(), true
+		);
+
+		applyEnvironment(builder.environment(), context);
+		return output.start(builder, context.getEnvironmentVariables());
+	}
+
+	//
+	// The environment variables of the launch context are already expanded.
+	//
+	private static void applyEnvironment(Map<String, String> processEnvironment, LaunchContext context) throws MojoExecutionException {
+		if (context.getExpandedEnvironment().isEmpty()) {
+			return;
+		}
+
+		try {
+			processEnvironment.putAll(context.getExpandedEnvironment());
+		} catch (UnsupportedOperationException | IllegalArgumentException e) {
+			throw new MojoExecutionException("Failed to update environment due to a restriction of the operating system: ", e);
+		}
+	}
+
+	private static ProcessBuilder createProcessBuilder(Log log,
+	                                                   String command,
+	                                                   Path buildDirectory,
+	                                                   List<String> arguments,
+	                                                   Map<String, String> environmentVariables,
+	                                                   boolean redirectErrorStream,
+	                                                   boolean logCommandLine) throws MojoExecutionException {
 		final List<String> commandLine = new ArrayList<>();
 
 		commandLine.add(command);
@@ -146,16 +352,20 @@ public class Utilities {
 			}
 		}
 
-		log.info("command line: " + concatenateStringList(commandLine));
+		if (logCommandLine) {
+			log.info("command line: " + concatenateStringList(commandLine));
+		} else {
+			log.debug("command line: " + concatenateStringList(commandLine));
+		}
 
 		final ProcessBuilder builder = new ProcessBuilder(commandLine);
 
 		builder.directory(buildDirectory.toFile());
-		builder.redirectErrorStream(true);
+		builder.redirectErrorStream(redirectErrorStream);
 
 		updateEnvironment(builder.environment(), environmentVariables);
 
-		return builder.start();
+		return builder;
 	}
 
 	/**
@@ -172,11 +382,26 @@ public class Utilities {
 	 * @throws MojoExecutionException if the exit status of the process is non-zero
 	 */
 	static void runProcess(String command, Log log, Process process) throws IOException, InterruptedException, MojoExecutionException {
+		new ProcessOutput(log).run(command, process);
+	}
+
+	/**
+	 * Run the supplied process to completion and return its output lines.
+	 *
+	 * @param command the original command supplied to the process (for error logging purposes)
+	 * @param process the process
+	 * @return the lines output by the process
+	 * @exception  IOException  If an I/O error occurs
+	 * @throws InterruptedException if the current thread is interrupted whilst waiting for the process
+	 * @throws MojoExecutionException if the exit status of the process is non-zero
+	 */
+	static List<String> captureProcess(String command, Process process) throws IOException, InterruptedException, MojoExecutionException {
+		final List<String> lines = new ArrayList<>();
 		final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
 		String line;
 
 		while ((line = reader.readLine()) != null) {
-			log.info(line);
+			lines.add(line);
 		}
 
 		final int exitStatus = process.waitFor();
@@ -184,6 +409,22 @@ public class Utilities {
 		if (exitStatus != 0) {
 			throw new MojoExecutionException(command + " command failed with exit status of " + exitStatus);
 		}
+
+		return lines;
+	}
+
+	/**
+	 * Expand the supplied environment variables against the environment of the current process.
+	 *
+	 * @param suppliedEnvironmentVariables the environment variables to expand (may be null or empty)
+	 * @return a sorted map containing the expanded environment variables
+	 */
+	public static SortedMap<String, String> expandEnvironment(Map<String, String> suppliedEnvironmentVariables) {
+		if (suppliedEnvironmentVariables == null || suppliedEnvironmentVariables.isEmpty()) {
+			return new TreeMap<>();
+		}
+
+		return expandEnvironment(System.getenv(), suppliedEnvironmentVariables);
 	}
 
 	//
@@ -198,54 +439,64 @@ public class Utilities {
 		}
 
 		try {
-			final Map<String, String> originalEnvironment = new HashMap<>(processEnvironment);
-
-			for (Map.Entry<String, String> entry : suppliedEnvironmentVariables.entrySet()) {
-				final String name = entry.getKey();
-				final String value = entry.getValue();
-				final Matcher matcher = ENV_VAR_PLACEHOLDER_REGEX.matcher(value);
-				int start, end;
+			processEnvironment.putAll(expandEnvironment(processEnvironment, suppliedEnvironmentVariables));
+		} catch (UnsupportedOperationException | IllegalArgumentException e) {
+			throw new MojoExecutionException("Failed to update environment due to a restriction of the operating system: ", e);
+		}
+	}
 
-				if (matcher.find()) {
-					final StringBuilder newValue = new StringBuilder();
+	//
+	// Expand the placeholders of the supplied environment variables against the original environment.
+	//
+	private static SortedMap<String, String> expandEnvironment(Map<String, String> originalEnvironment,
+	                                                           Map<String, String> suppliedEnvironmentVariables) {
+		final SortedMap<String, String> expandedEnvironment = new TreeMap<>();
+
+		for (Map.Entry<String, String> entry : suppliedEnvironmentVariables.entrySet()) {
+			final String name = entry.getKey();
+			final String value = entry.getValue();
+			final Matcher matcher = ENV_VAR_PLACEHOLDER_REGEX.matcher(value);
+			int start, end;
+
+			if (matcher.find()) {
+				final StringBuilder newValue = new StringBuilder();
+
+				start = matcher.start();
+				end = matcher.end();
+				newValue.append(value, 0, start);
+
+				// Extract environment variable name (remove leading and trailing % characters).
+				String originalEnvironmentName = value.substring(start + 1, end - 1);
+				String originalEnvironmentValue = originalEnvironment.get(originalEnvironmentName);
+
+				// Add the value if such an environment variable exists in the process builder's environment.
+				if (originalEnvironmentValue != null) {
+					newValue.append(originalEnvironmentValue);
+				}
 
+				while (matcher.find()) {
 					start = matcher.start();
+					newValue.append(value, end, start);
 					end = matcher.end();
-					newValue.append(value, 0, start);
 
 					// Extract environment variable name (remove leading and trailing % characters).
-					String originalEnvironmentName = value.substring(start + 1, end - 1);
-					String originalEnvironmentValue = originalEnvironment.get(originalEnvironmentName);
+					originalEnvironmentName = value.substring(start + 1, end - 1);
+					originalEnvironmentValue = originalEnvironment.get(originalEnvironmentName);
 
 					// Add the value if such an environment variable exists in the process builder's environment.
 					if (originalEnvironmentValue != null) {
 						newValue.append(originalEnvironmentValue);
 					}
-
-					while (matcher.find()) {
-						start = matcher.start();
-						newValue.append(value, end, start);
-						end = matcher.end();
-
-						// Extract environment variable name (remove leading and trailing % characters).
-						originalEnvironmentName = value.substring(start + 1, end - 1);
-						originalEnvironmentValue = originalEnvironment.get(originalEnvironmentName);
-
-						// Add the value if such an environment variable exists in the process builder's environment.
-						if (originalEnvironmentValue != null) {
-							newValue.append(originalEnvironmentValue);
-						}
-					}
-
-					processEnvironment.put(name, newValue.toString());
-				} else {
-					// No placeholders to expand.. set the environment variable as is.
-					processEnvironment.put(name, value);
 				}
+
+				expandedEnvironment.put(name, newValue.toString());
+			} else {
+				// No placeholders to expand.. set the environment variable as is.
+				expandedEnvironment.put(name, value);
 			}
-		} catch (UnsupportedOperationException | IllegalArgumentException e) {
-			throw new MojoExecutionException("Failed to update environment due to a restriction of the operating system: ", e);
 		}
+
+		return expandedEnvironment;
 	}
 
 	private Utilities() {}
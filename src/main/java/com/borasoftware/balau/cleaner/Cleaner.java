@@ -19,12 +19,25 @@
 
 package com.borasoftware.balau.cleaner;
 
+import com.borasoftware.balau.listener.BuildListener;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.shared.utils.Os;
 import org.apache.maven.shared.utils.io.FileUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Cleans directories.
@@ -39,6 +52,13 @@ public class Cleaner {
 	private final Logger logVerbose;
 	private final Logger logWarn;
 
+	private static final int PROGRESS_INTERVAL = 1000;
+
+	private final BuildListener listener;
+
+	private Path progressDirectory;
+	private final AtomicLong deletedEntries = new AtomicLong();
+
 	/**
 	 * Creates a new cleaner.
 	 *
@@ -46,6 +66,19 @@ public class Cleaner {
 	 * @param verbose Whether to perform verbose logging.
 	 */
 	public Cleaner(final Log log, boolean verbose) {
+		this(log, verbose, null);
+	}
+
+	/**
+	 * Creates a new cleaner that reports its progress to a build listener.
+	 *
+	 * @param log      The logger to use, may be <code>null</code> to disable logging.
+	 * @param verbose  Whether to perform verbose logging.
+	 * @param listener The build listener to notify of clean progress, may be <code>null</code>.
+	 */
+	public Cleaner(final Log log, boolean verbose, BuildListener listener) {
+		this.listener = listener;
+
 		logDebug = (log == null || !log.isDebugEnabled()) ? null : new Logger() {
 			public void log(CharSequence message) {
 				log.debug(message);
@@ -80,6 +113,24 @@ public class Cleaner {
 	 * @throws IOException If a file/directory could not be deleted and <code>failOnError</code> is <code>true</code>.
 	 */
 	public void delete(File basedir, Selector selector, boolean followSymlinks, boolean failOnError, boolean retryOnError)
+		throws IOException {
+		delete(basedir, selector, followSymlinks, failOnError, retryOnError, 1);
+	}
+
+	/**
+	 * Deletes the specified directories and its contents, deleting sibling subtrees concurrently.
+	 *
+	 * @param basedir        The directory to delete, must not be <code>null</code>. Non-existing directories will be silently
+	 *                       ignored.
+	 * @param selector       The selector used to determine what contents to delete, may be <code>null</code> to delete
+	 *                       everything.
+	 * @param followSymlinks Whether to follow symlinks.
+	 * @param failOnError    Whether to abort with an exception in case a selected file/directory could not be deleted.
+	 * @param retryOnError   Whether to undertake additional delete attempts in case the first attempt failed.
+	 * @param parallelism    The number of threads used to delete, <code>1</code> to delete on the calling thread.
+	 * @throws IOException If a file/directory could not be deleted and <code>failOnError</code> is <code>true</code>.
+	 */
+	public void delete(File basedir, Selector selector, boolean followSymlinks, boolean failOnError, boolean retryOnError, int parallelism)
 		throws IOException {
 		if (!basedir.isDirectory()) {
 			if (!basedir.exists()) {
@@ -97,7 +148,56 @@ public class Cleaner {
 
 		File file = followSymlinks ? basedir : basedir.getCanonicalFile();
 
-		delete(file, "", selector, followSymlinks, failOnError, retryOnError);
+		final long start = System.nanoTime();
+		progressDirectory = basedir.toPath();
+		deletedEntries.set(0);
+
+		if (listener != null) {
+			listener.cleanStarted(progressDirectory);
+		}
+
+		Result result;
+
+		if (parallelism > 1) {
+			result = deleteInParallel(file.toPath(), selector, followSymlinks, failOnError, retryOnError, parallelism);
+		} else {
+			result = delete(file, "", selector, followSymlinks, failOnError, retryOnError);
+		}
+
+		if (listener != null) {
+			listener.cleanFinished(
+				progressDirectory, deletedEntries.get(), result.failures, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+			);
+		}
+	}
+
+	/**
+	 * Deletes the specified directory with a fork/join pool, reading the attributes of each entry once.
+	 *
+	 * @param basedir        The directory to delete, must not be <code>null</code>. If <code>followSymlinks</code> is
+	 *                       <code>false</code>, it is assumed that the directory is canonical.
+	 * @param selector       The selector used to determine what contents to delete, may be <code>null</code> to delete
+	 *                       everything.
+	 * @param followSymlinks Whether to follow symlinks.
+	 * @param failOnError    Whether to abort with an exception in case a selected file/directory could not be deleted.
+	 * @param retryOnError   Whether to undertake additional delete attempts in case the first attempt failed.
+	 * @param parallelism    The number of threads used to delete.
+	 * @return The result of the cleaning, never <code>null</code>.
+	 * @throws IOException If a file/directory could not be deleted and <code>failOnError</code> is <code>true</code>.
+	 */
+	private Result deleteInParallel(Path basedir, Selector selector, boolean followSymlinks, boolean failOnError,
+	                                boolean retryOnError, int parallelism)
+		throws IOException {
+		final ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try {
+			final BasicFileAttributes attributes = Files.readAttributes(basedir, BasicFileAttributes.class);
+			return pool.invoke(new DeleteTask(basedir, "", attributes, selector, followSymlinks, failOnError, retryOnError));
+		} catch (DeleteException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
 	}
 
 	/**
@@ -208,9 +308,224 @@ public class Cleaner {
 			}
 		}
 
+		deleted();
 		return 0;
 	}
 
+	/**
+	 * Deletes the specified path. If the path denotes a symlink, only the link is removed, its target is left untouched.
+	 *
+	 * @param path         The path to delete, must not be <code>null</code>.
+	 * @param failOnError  Whether to abort with an exception in case the path could not be deleted.
+	 * @param retryOnError Whether to undertake additional delete attempts in case the first attempt failed.
+	 * @return <code>0</code> if the path was deleted, <code>1</code> otherwise.
+	 * @throws IOException If the path could not be deleted and <code>failOnError</code> is <code>true</code>.
+	 */
+	private int delete(Path path, boolean failOnError, boolean retryOnError)
+		throws IOException {
+		if (!tryDelete(path)) {
+			boolean deleted = false;
+
+			if (retryOnError) {
+				if (ON_WINDOWS) {
+					// try to release any locks held by non-closed files
+					System.gc();
+				}
+
+				final int[] delays = {50, 250, 750};
+				for (int i = 0; !deleted && i < delays.length; i++) {
+					try {
+						Thread.sleep(delays[i]);
+					} catch (InterruptedException e) {
+						// ignore
+					}
+					deleted = tryDelete(path) || !Files.exists(path, LinkOption.NOFOLLOW_LINKS);
+				}
+			} else {
+				deleted = !Files.exists(path, LinkOption.NOFOLLOW_LINKS);
+			}
+
+			if (!deleted) {
+				if (failOnError) {
+					throw new IOException("Failed to delete " + path);
+				} else {
+					if (logWarn != null) {
+						logWarn.log("Failed to delete " + path);
+					}
+					return 1;
+				}
+			}
+		}
+
+		deleted();
+		return 0;
+	}
+
+	private static boolean tryDelete(Path path) {
+		try {
+			Files.delete(path);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private void deleted() {
+		final long count = deletedEntries.incrementAndGet();
+
+		if (listener != null && count % PROGRESS_INTERVAL == 0) {
+			listener.cleanProgress(progressDirectory, count);
+		}
+	}
+
+	/**
+	 * Deletes a directory entry and, for directories, its contents. Subdirectories are deleted by forked tasks.
+	 */
+	private class DeleteTask extends RecursiveTask<Result> {
+		private static final long serialVersionUID = 1L;
+
+		private final Path path;
+		private final String pathname;
+		private final BasicFileAttributes attributes;
+		private final Selector selector;
+		private final boolean followSymlinks;
+		private final boolean failOnError;
+		private final boolean retryOnError;
+
+		DeleteTask(Path path, String pathname, BasicFileAttributes attributes, Selector selector, boolean followSymlinks,
+		           boolean failOnError, boolean retryOnError) {
+			this.path = path;
+			this.pathname = pathname;
+			this.attributes = attributes;
+			this.selector = selector;
+			this.followSymlinks = followSymlinks;
+			this.failOnError = failOnError;
+			this.retryOnError = retryOnError;
+		}
+
+		@Override
+		protected Result compute() {
+			try {
+				return deleteDirectory();
+			} catch (IOException e) {
+				throw new DeleteException(e);
+			}
+		}
+
+		private Result deleteDirectory() throws IOException {
+			Result result = new Result();
+
+			if (selector == null || selector.couldHoldSelected(pathname)) {
+				if (followSymlinks || !attributes.isSymbolicLink()) {
+					final List<DeleteTask> subtasks = new ArrayList<>();
+					final String prefix = pathname.length() > 0 ? pathname + File.separatorChar : "";
+
+					try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+						for (Path child : children) {
+							final String childPathname = prefix + child.getFileName();
+							final BasicFileAttributes childAttributes = readAttributes(child);
+
+							if (childAttributes == null) {
+								continue;
+							}
+
+							if (childAttributes.isDirectory()) {
+								final DeleteTask subtask = new DeleteTask(
+									child, childPathname, childAttributes, selector, followSymlinks, failOnError, retryOnError
+								);
+
+								subtask.fork();
+								subtasks.add(subtask);
+							} else {
+								result.update(deleteFile(child, childPathname, childAttributes));
+							}
+						}
+					}
+
+					for (DeleteTask subtask : subtasks) {
+						result.update(subtask.join());
+					}
+				} else if (logDebug != null) {
+					logDebug.log("Not recursing into symlink " + path);
+				}
+			} else if (logDebug != null) {
+				logDebug.log("Not recursing into directory without included files " + path);
+			}
+
+			if (!result.excluded && (selector == null || selector.isSelected(pathname))) {
+				if (logVerbose != null) {
+					logVerbose.log("Deleting directory " + path);
+				}
+				result.failures += delete(path, failOnError, retryOnError);
+			} else {
+				result.excluded = true;
+			}
+
+			return result;
+		}
+
+		private Result deleteFile(Path file, String filePathname, BasicFileAttributes fileAttributes) throws IOException {
+			Result result = new Result();
+
+			if (selector == null || selector.isSelected(filePathname)) {
+				if (logVerbose != null) {
+					if (fileAttributes.isSymbolicLink()) {
+						logVerbose.log("Deleting symlink " + file);
+					} else {
+						logVerbose.log("Deleting file " + file);
+					}
+				}
+				result.failures += delete(file, failOnError, retryOnError);
+			} else {
+				result.excluded = true;
+			}
+
+			return result;
+		}
+
+		/**
+		 * Reads the attributes of a directory entry. Symlinks are only resolved when following symlinks, in which case
+		 * a symlink to a directory is reported as a directory (and remains a symlink when not followed).
+		 *
+		 * @return The attributes, or <code>null</code> if the entry no longer exists.
+		 */
+		private BasicFileAttributes readAttributes(Path child) throws IOException {
+			try {
+				final BasicFileAttributes linkAttributes =
+					Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+				if (followSymlinks && linkAttributes.isSymbolicLink()) {
+					try {
+						return Files.readAttributes(child, BasicFileAttributes.class);
+					} catch (NoSuchFileException e) {
+						// dangling symlink
+						return linkAttributes;
+					}
+				}
+
+				return linkAttributes;
+			} catch (NoSuchFileException e) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Carries an I/O exception out of a fork/join task.
+	 */
+	private static class DeleteException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		DeleteException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
 	private static class Result {
 		private int failures;
 
@@ -25,7 +25,7 @@ package com.borasoftware.balau.cleaner;
  *
  * @author Benjamin Bentmann
  */
-interface Selector {
+public interface Selector {
 	/**
 	 * Determines whether a path is selected for deletion.
 	 *
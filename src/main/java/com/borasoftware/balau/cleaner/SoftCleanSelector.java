@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.cleaner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the build outputs of a CMake binary directory (object files, libraries and
+ * executables) whilst keeping the configure state (CMakeCache.txt, the generated build
+ * system and the CMakeFiles/&lt;version&gt; compiler identification results) and tool
+ * caches such as ccache directories. Directories are never selected, so that the
+ * directory structure created by the configure step is preserved.
+ *
+ * @author Nicholas Smethurst
+ */
+public class SoftCleanSelector implements Selector {
+	private static final Set<String> OUTPUT_EXTENSIONS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		"o", "obj", "a", "lib", "so", "dylib", "dll", "exe", "pdb", "ilk", "exp", "gch", "pch"
+	)));
+
+	// Directories that are never entered.
+	private static final Set<String> KEPT_DIRECTORIES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		".ccache", "ccache", ".sccache", "sccache", ".cmake", "CMakeTmp", "CMakeScratch"
+	)));
+
+	// Versioned shared libraries (libfoo.so.1.2.3).
+	private static final Pattern VERSIONED_SHARED_LIBRARY = Pattern.compile(".+\\.so(\\.[0-9]+)+");
+
+	// The compiler identification results in CMakeFiles/<version>.
+	private static final Pattern CMAKE_VERSION_DIRECTORY = Pattern.compile("[0-9]+\\.[0-9]+\\.[0-9]+.*");
+
+	private static final byte[][] EXECUTABLE_MAGIC = {
+		{ 0x7f, 'E', 'L', 'F' }, // ELF
+		{ (byte) 0xcf, (byte) 0xfa, (byte) 0xed, (byte) 0xfe }, // Mach-O 64 bit
+		{ (byte) 0xce, (byte) 0xfa, (byte) 0xed, (byte) 0xfe }, // Mach-O 32 bit
+		{ (byte) 0xca, (byte) 0xfe, (byte) 0xba, (byte) 0xbe }, // Mach-O universal
+		{ 'M', 'Z' } // PE
+	};
+
+	private final Path basedir;
+
+	/**
+	 * Create a soft clean selector for the specified binary directory.
+	 *
+	 * @param basedir the binary directory that the selected pathnames are relative to
+	 */
+	public SoftCleanSelector(Path basedir) {
+		this.basedir = basedir;
+	}
+
+	@Override
+	public boolean isSelected(String pathname) {
+		if (pathname.isEmpty()) {
+			return false;
+		}
+
+		final Path path = basedir.resolve(pathname);
+
+		if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+			return false;
+		}
+
+		final String name = path.getFileName().toString();
+		final String lowerCaseName = name.toLowerCase(Locale.ROOT);
+		final int dot = lowerCaseName.lastIndexOf('.');
+
+		if (dot > 0 && OUTPUT_EXTENSIONS.contains(lowerCaseName.substring(dot + 1))) {
+			return true;
+		}
+
+		if (VERSIONED_SHARED_LIBRARY.matcher(lowerCaseName).matches()) {
+			return true;
+		}
+
+		return isExecutable(path);
+	}
+
+	@Override
+	public boolean couldHoldSelected(String pathname) {
+		if (pathname.isEmpty()) {
+			return true;
+		}
+
+		final String[] segments = pathname.split(Pattern.quote(File.separator));
+		final String name = segments[segments.length - 1];
+
+		if (KEPT_DIRECTORIES.contains(name)) {
+			return false;
+		}
+
+		return !(segments.length >= 2
+			&& segments[segments.length - 2].equals("CMakeFiles")
+			&& CMAKE_VERSION_DIRECTORY.matcher(name).matches());
+	}
+
+	@Override
+	public String toString() {
+		return "soft clean";
+	}
+
+	//
+	// An executable is a regular file with the execute permission and a binary
+	// executable header. Scripts are not selected.
+	//
+	private static boolean isExecutable(Path path) {
+		if (!Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS) || !Files.isExecutable(path)) {
+			return false;
+		}
+
+		final byte[] header = new byte[4];
+		int length = 0;
+
+		try (InputStream input = Files.newInputStream(path)) {
+			int count;
+
+			while (length < header.length && (count = input.read(header, length, header.length - length)) != -1) {
+				length += count;
+			}
+		} catch (IOException e) {
+			return false;
+		}
+
+		for (byte[] magic : EXECUTABLE_MAGIC) {
+			if (length >= magic.length && startsWith(header, magic)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean startsWith(byte[] header, byte[] magic) {
+		for (int i = 0; i < magic.length; i++) {
+			if (header[i] != magic[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.cleaner;
+
+import com.borasoftware.balau.listener.BuildListener;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Instant removal of directories by renaming them to a tombstone name on the same
+ * filesystem. The tombstones are then deleted by a background daemon thread which
+ * the caller waits for, typically at the end of the build. Tombstones left behind
+ * by an interrupted build are found and deleted by the next clean. Tombstones that
+ * are still being deleted in the background by this JVM are not reported as leftovers,
+ * so that two deleters never work on the same tree.
+ *
+ * @author Nicholas Smethurst
+ */
+public class Tombstones {
+	/**
+	 * The prefix of tombstone directory names.
+	 */
+	public static final String PREFIX = ".cmake-maven-plugin-tombstone-";
+
+	// The tombstones being deleted by the background deleters (guarded by itself).
+	private static final Set<Path> deleting = new HashSet<>();
+
+	/**
+	 * Atomically rename the directory to a tombstone in its parent directory.
+	 *
+	 * @param directory the directory to rename
+	 * @return the tombstone path
+	 * @throws IOException if the directory could not be atomically renamed
+	 */
+	public static Path bury(Path directory) throws IOException {
+		final Path absolute = directory.toAbsolutePath();
+		final Path tombstone = absolute.resolveSibling(PREFIX + absolute.getFileName() + "-" + UUID.randomUUID());
+		Files.move(absolute, tombstone, StandardCopyOption.ATOMIC_MOVE);
+		return tombstone;
+	}
+
+	/**
+	 * Find tombstones left in the specified directory, excluding the tombstones that
+	 * are being deleted in the background.
+	 *
+	 * @param directory the directory in which tombstones are searched for
+	 * @return the tombstones, empty if there are none or the directory does not exist
+	 * @throws IOException if the directory could not be read
+	 */
+	public static List<Path> find(Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return Collections.emptyList();
+		}
+
+		final List<Path> tombstones = new ArrayList<>();
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*")) {
+			synchronized (deleting) {
+				for (Path path : stream) {
+					if (!deleting.contains(getKey(path))) {
+						tombstones.add(path);
+					}
+				}
+			}
+		}
+
+		return tombstones;
+	}
+
+	/**
+	 * Delete the tombstones in a background daemon thread. The caller is responsible for
+	 * waiting for the returned thread, as the JVM does not wait for daemon threads on exit.
+	 * Tombstones that are already being deleted in the background are skipped.
+	 *
+	 * @param log the Maven log
+	 * @param tombstones the tombstones to delete
+	 * @param listener the build listener notified of clean events or null
+	 * @param followSymlinks whether to follow symlinks
+	 * @param parallelism the number of threads used to delete each tombstone
+	 * @return the deleting thread
+	 */
+	public static Thread deleteInBackground(final Log log,
+	                                        final List<Path> tombstones,
+	                                        final BuildListener listener,
+	                                        final boolean followSymlinks,
+	                                        final int parallelism) {
+		final List<Path> claimed = new ArrayList<>();
+		final Thread thread = new Thread("cmake-maven-plugin tombstone deleter") {
+			@Override
+			public void run() {
+				try {
+					final Cleaner cleaner = new Cleaner(log, false, listener);
+
+					for (Path tombstone : claimed) {
+						try {
+							cleaner.delete(tombstone.toFile(), null, followSymlinks, false, true, parallelism);
+						} catch (IOException e) {
+							log.warn("Failed to delete " + tombstone + ": " + e.getMessage());
+						} finally {
+							synchronized (deleting) {
+								deleting.remove(getKey(tombstone));
+							}
+						}
+					}
+				} finally {
+					synchronized (deleting) {
+						for (Path tombstone : claimed) {
+							deleting.remove(getKey(tombstone));
+						}
+					}
+				}
+			}
+		};
+
+		thread.setDaemon(true);
+
+		synchronized (deleting) {
+			for (Path tombstone : tombstones) {
+				if (deleting.add(getKey(tombstone))) {
+					claimed.add(tombstone);
+				}
+			}
+		}
+
+		thread.start();
+		return thread;
+	}
+
+	private static Path getKey(Path tombstone) {
+		return tombstone.toAbsolutePath().normalize();
+	}
+}
@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.fileapi;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A client of the CMake File API (CMake 3.14 and later).
+ *
+ * The query is written into the binary directory before CMake is run, and CMake
+ * writes the reply during the generate step. The reply is parsed with a streaming JSON
+ * reader into a {@link FileApiReply} holding the targets, cache entries and toolchains.
+ *
+ * @author Nicholas Smethurst
+ */
+public class FileApi {
+	/**
+	 * The name of the File API client of the plugin.
+	 */
+	public static final String CLIENT = "client-cmake-maven-plugin";
+
+	/**
+	 * The object kinds queried by the plugin.
+	 */
+	public static final List<String> QUERIES = Collections.unmodifiableList(
+		Arrays.asList("codemodel-v2", "cache-v2", "toolchains-v1")
+	);
+
+	private static final String API_DIRECTORY = ".cmake/api/v1";
+
+	/**
+	 * Write the stateless query files of the plugin's client.
+	 *
+	 * @param binaryDirectory the top level binary directory
+	 * @return true if a query file was created, in which case CMake must be rerun to obtain a reply
+	 * @throws IOException if the query files could not be written
+	 */
+	public static boolean writeQuery(Path binaryDirectory) throws IOException {
+		final Path queryDirectory = binaryDirectory.resolve(API_DIRECTORY).resolve("query").resolve(CLIENT);
+		boolean created = false;
+
+		Files.createDirectories(queryDirectory);
+
+		for (String query : QUERIES) {
+			final Path file = queryDirectory.resolve(query);
+
+			if (!Files.exists(file)) {
+				Files.createFile(file);
+				created = true;
+			}
+		}
+
+		return created;
+	}
+
+	/**
+	 * Read the latest reply of the plugin's client.
+	 *
+	 * @param binaryDirectory the top level binary directory
+	 * @return the reply, or null if there is no reply (e.g. CMake is older than 3.14)
+	 * @throws IOException if the reply could not be read or is malformed
+	 */
+	public static FileApiReply read(Path binaryDirectory) throws IOException {
+		final Path replyDirectory = binaryDirectory.resolve(API_DIRECTORY).resolve("reply");
+		final Path index = findIndex(replyDirectory);
+
+		if (index == null) {
+			return null;
+		}
+
+		try {
+			final Map<String, String> objects = readIndex(index);
+
+			if (!objects.containsKey("codemodel-v2")) {
+				return null;
+			}
+
+			final List<Target> targets = readCodeModel(replyDirectory, objects.get("codemodel-v2"));
+
+			final Map<String, String> cache = objects.containsKey("cache-v2")
+				? readCache(replyDirectory.resolve(objects.get("cache-v2")))
+				: Collections.<String, String>emptyMap();
+
+			final List<Toolchain> toolchains = objects.containsKey("toolchains-v1")
+				? readToolchains(replyDirectory.resolve(objects.get("toolchains-v1")))
+				: Collections.<Toolchain>emptyList();
+
+			return new FileApiReply(targets, cache, toolchains);
+		} catch (JsonParseException | IllegalStateException | NumberFormatException e) {
+			throw new IOException("Malformed CMake File API reply " + index + ": " + e.getMessage(), e);
+		}
+	}
+
+	//
+	// The index file names contain a timestamp, so the latest index sorts last.
+	//
+	private static Path findIndex(Path replyDirectory) throws IOException {
+		if (!Files.isDirectory(replyDirectory)) {
+			return null;
+		}
+
+		Path latest = null;
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(replyDirectory, "index-*.json")) {
+			for (Path path : stream) {
+				if (latest == null || path.getFileName().toString().compareTo(latest.getFileName().toString()) > 0) {
+					latest = path;
+				}
+			}
+		}
+
+		return latest;
+	}
+
+	//
+	// Read the reply file names of the plugin's client from the index.
+	//
+	private static Map<String, String> readIndex(Path index) throws IOException {
+		final Map<String, String> objects = new TreeMap<>();
+
+		try (JsonReader reader = open(index)) {
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("reply")) {
+					reader.skipValue();
+					continue;
+				}
+
+				reader.beginObject();
+
+				while (reader.hasNext()) {
+					if (!reader.nextName().equals(CLIENT)) {
+						reader.skipValue();
+						continue;
+					}
+
+					reader.beginObject();
+
+					while (reader.hasNext()) {
+						final String kind = reader.nextName();
+						final String jsonFile = readJsonFile(reader);
+
+						if (jsonFile != null) {
+							objects.put(kind, jsonFile);
+						}
+					}
+
+					reader.endObject();
+				}
+
+				reader.endObject();
+			}
+
+			reader.endObject();
+		}
+
+		return objects;
+	}
+
+	//
+	// Read the jsonFile member of a reply object, skipping errors and other members.
+	//
+	private static String readJsonFile(JsonReader reader) throws IOException {
+		if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+			reader.skipValue();
+			return null;
+		}
+
+		String jsonFile = null;
+		reader.beginObject();
+
+		while (reader.hasNext()) {
+			if (reader.nextName().equals("jsonFile")) {
+				jsonFile = reader.nextString();
+			} else {
+				reader.skipValue();
+			}
+		}
+
+		reader.endObject();
+		return jsonFile;
+	}
+
+	private static List<Target> readCodeModel(Path replyDirectory, String codeModelFile) throws IOException {
+		// Target file name -> configuration name.
+		final Map<String, String> targetFiles = new LinkedHashMap<>();
+
+		try (JsonReader reader = open(replyDirectory.resolve(codeModelFile))) {
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("configurations")) {
+					reader.skipValue();
+					continue;
+				}
+
+				reader.beginArray();
+
+				while (reader.hasNext()) {
+					readConfiguration(reader, targetFiles);
+				}
+
+				reader.endArray();
+			}
+
+			reader.endObject();
+		}
+
+		final List<Target> targets = new ArrayList<>();
+
+		for (Map.Entry<String, String> entry : targetFiles.entrySet()) {
+			targets.add(readTarget(replyDirectory.resolve(entry.getKey()), entry.getValue()));
+		}
+
+		return targets;
+	}
+
+	private static void readConfiguration(JsonReader reader, Map<String, String> targetFiles) throws IOException {
+		final List<String> files = new ArrayList<>();
+		String name = "";
+
+		reader.beginObject();
+
+		while (reader.hasNext()) {
+			final String member = reader.nextName();
+
+			if (member.equals("name")) {
+				name = reader.nextString();
+			} else if (member.equals("targets")) {
+				reader.beginArray();
+
+				while (reader.hasNext()) {
+					final String jsonFile = readJsonFile(reader);
+
+					if (jsonFile != null) {
+						files.add(jsonFile);
+					}
+				}
+
+				reader.endArray();
+			} else {
+				reader.skipValue();
+			}
+		}
+
+		reader.endObject();
+
+		for (String file : files) {
+			targetFiles.put(file, name);
+		}
+	}
+
+	private static Target readTarget(Path file, String configuration) throws IOException {
+		final List<String> artifacts = new ArrayList<>();
+		final List<String> dependencies = new ArrayList<>();
+		final List<String> sources = new ArrayList<>();
+		final List<String> includeDirectories = new ArrayList<>();
+		String id = "";
+		String name = "";
+		String type = "";
+
+		try (JsonReader reader = open(file)) {
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				final String member = reader.nextName();
+
+				switch (member) {
+					case "id": {
+						id = reader.nextString();
+						break;
+					}
+
+					case "name": {
+						name = reader.nextString();
+						break;
+					}
+
+					case "type": {
+						type = reader.nextString();
+						break;
+					}
+
+					case "artifacts": {
+						readMembers(reader, "path", artifacts);
+						break;
+					}
+
+					case "dependencies": {
+						readMembers(reader, "id", dependencies);
+						break;
+					}
+
+					case "sources": {
+						readMembers(reader, "path", sources);
+						break;
+					}
+
+					case "compileGroups": {
+						readIncludeDirectories(reader, includeDirectories);
+						break;
+					}
+
+					default: {
+						reader.skipValue();
+						break;
+					}
+				}
+			}
+
+			reader.endObject();
+		}
+
+		return new Target(id, name, type, configuration, artifacts, dependencies, sources, includeDirectories);
+	}
+
+	//
+	// Read the non-system include directories of each compile group, without duplicates.
+	//
+	private static void readIncludeDirectories(JsonReader reader, List<String> values) throws IOException {
+		reader.beginArray();
+
+		while (reader.hasNext()) {
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("includes")) {
+					reader.skipValue();
+					continue;
+				}
+
+				reader.beginArray();
+
+				while (reader.hasNext()) {
+					String path = null;
+					boolean system = false;
+
+					reader.beginObject();
+
+					while (reader.hasNext()) {
+						final String member = reader.nextName();
+
+						if (member.equals("path") && reader.peek() == JsonToken.STRING) {
+							path = reader.nextString();
+						} else if (member.equals("isSystem") && reader.peek() == JsonToken.BOOLEAN) {
+							system = reader.nextBoolean();
+						} else {
+							reader.skipValue();
+						}
+					}
+
+					reader.endObject();
+
+					if (path != null && !system && !values.contains(path)) {
+						values.add(path);
+					}
+				}
+
+				reader.endArray();
+			}
+
+			reader.endObject();
+		}
+
+		reader.endArray();
+	}
+
+	//
+	// Read the named string member of each object in an array.
+	//
+	private static void readMembers(JsonReader reader, String name, List<String> values) throws IOException {
+		reader.beginArray();
+
+		while (reader.hasNext()) {
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				if (reader.nextName().equals(name) && reader.peek() == JsonToken.STRING) {
+					values.add(reader.nextString());
+				} else {
+					reader.skipValue();
+				}
+			}
+
+			reader.endObject();
+		}
+
+		reader.endArray();
+	}
+
+	private static Map<String, String> readCache(Path file) throws IOException {
+		final Map<String, String> entries = new TreeMap<>();
+
+		try (JsonReader reader = open(file)) {
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("entries")) {
+					reader.skipValue();
+					continue;
+				}
+
+				reader.beginArray();
+
+				while (reader.hasNext()) {
+					String name = null;
+					String value = "";
+
+					reader.beginObject();
+
+					while (reader.hasNext()) {
+						final String member = reader.nextName();
+
+						if (member.equals("name")) {
+							name = reader.nextString();
+						} else if (member.equals("value")) {
+							value = reader.nextString();
+						} else {
+							reader.skipValue();
+						}
+					}
+
+					reader.endObject();
+
+					if (name != null) {
+						entries.put(name, value);
+					}
+				}
+
+				reader.endArray();
+			}
+
+			reader.endObject();
+		}
+
+		return entries;
+	}
+
+	private static List<Toolchain> readToolchains(Path file) throws IOException {
+		final List<Toolchain> toolchains = new ArrayList<>();
+
+		try (JsonReader reader = open(file)) {
+			reader.beginObject();
+
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("toolchains")) {
+					reader.skipValue();
+					continue;
+				}
+
+				reader.beginArray();
+
+				while (reader.hasNext()) {
+					toolchains.add(readToolchain(reader));
+				}
+
+				reader.endArray();
+			}
+
+			reader.endObject();
+		}
+
+		return toolchains;
+	}
+
+	private static Toolchain readToolchain(JsonReader reader) throws IOException {
+		String language = "";
+		String path = null;
+		String id = null;
+		String version = null;
+
+		reader.beginObject();
+
+		while (reader.hasNext()) {
+			final String member = reader.nextName();
+
+			if (member.equals("language")) {
+				language = reader.nextString();
+			} else if (member.equals("compiler")) {
+				reader.beginObject();
+
+				while (reader.hasNext()) {
+					final String compilerMember = reader.nextName();
+
+					if (reader.peek() != JsonToken.STRING) {
+						reader.skipValue();
+					} else if (compilerMember.equals("path")) {
+						path = reader.nextString();
+					} else if (compilerMember.equals("id")) {
+						id = reader.nextString();
+					} else if (compilerMember.equals("version")) {
+						version = reader.nextString();
+					} else {
+						reader.skipValue();
+					}
+				}
+
+				reader.endObject();
+			} else {
+				reader.skipValue();
+			}
+		}
+
+		reader.endObject();
+		return new Toolchain(language, path, id, version);
+	}
+
+	private static JsonReader open(Path file) throws IOException {
+		final Reader input = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+		return new JsonReader(input);
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.fileapi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The model of a CMake File API reply: the targets of the code model, the cache entries
+ * and the toolchains.
+ *
+ * @author Nicholas Smethurst
+ */
+public class FileApiReply {
+	private final List<Target> targets;
+	private final Map<String, Target> targetsById;
+	private final Map<String, String> cache;
+	private final List<Toolchain> toolchains;
+
+	FileApiReply(List<Target> targets, Map<String, String> cache, List<Toolchain> toolchains) {
+		this.targets = Collections.unmodifiableList(targets);
+		this.cache = Collections.unmodifiableMap(cache);
+		this.toolchains = Collections.unmodifiableList(toolchains);
+		this.targetsById = new HashMap<>();
+
+		for (Target target : targets) {
+			targetsById.put(target.getId(), target);
+		}
+	}
+
+	/**
+	 * Get the targets of all configurations.
+	 *
+	 * @return the targets
+	 */
+	public List<Target> getTargets() {
+		return targets;
+	}
+
+	/**
+	 * Get the targets with the specified names, together with their transitive dependencies.
+	 *
+	 * @param names the target names, or null or empty for all targets
+	 * @return the targets in dependency discovery order
+	 */
+	public Collection<Target> getTargets(Collection<String> names) {
+		if (names == null || names.isEmpty() || names.contains("all")) {
+			return targets;
+		}
+
+		final Map<String, Target> selected = new LinkedHashMap<>();
+		final Deque<Target> pending = new ArrayDeque<>();
+
+		for (Target target : targets) {
+			if (names.contains(target.getName())) {
+				pending.add(target);
+			}
+		}
+
+		while (!pending.isEmpty()) {
+			final Target target = pending.remove();
+
+			if (selected.put(target.getId(), target) == null) {
+				for (String dependency : target.getDependencies()) {
+					final Target dependencyTarget = targetsById.get(dependency);
+
+					if (dependencyTarget != null) {
+						pending.add(dependencyTarget);
+					}
+				}
+			}
+		}
+
+		return new ArrayList<>(selected.values());
+	}
+
+	/**
+	 * Get the target with the specified identifier.
+	 *
+	 * @param id the target identifier
+	 * @return the target, or null if there is no such target
+	 */
+	public Target getTargetById(String id) {
+		return targetsById.get(id);
+	}
+
+	/**
+	 * Get the CMake cache entries.
+	 *
+	 * @return a sorted map of cache entry names to values
+	 */
+	public Map<String, String> getCache() {
+		return cache;
+	}
+
+	public List<Toolchain> getToolchains() {
+		return toolchains;
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.fileapi;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A build system target of the CMake File API code model.
+ *
+ * @author Nicholas Smethurst
+ */
+public class Target {
+	private final String id;
+	private final String name;
+	private final String type;
+	private final String configuration;
+	private final List<String> artifacts;
+	private final List<String> dependencies;
+	private final List<String> sources;
+	private final List<String> includeDirectories;
+
+	Target(String id,
+	       String name,
+	       String type,
+	       String configuration,
+	       List<String> artifacts,
+	       List<String> dependencies,
+	       List<String> sources,
+	       List<String> includeDirectories) {
+		this.id = id;
+		this.name = name;
+		this.type = type;
+		this.configuration = configuration;
+		this.artifacts = Collections.unmodifiableList(artifacts);
+		this.dependencies = Collections.unmodifiableList(dependencies);
+		this.sources = Collections.unmodifiableList(sources);
+		this.includeDirectories = Collections.unmodifiableList(includeDirectories);
+	}
+
+	/**
+	 * Get the unique identifier of the target.
+	 *
+	 * @return the target identifier
+	 */
+	public String getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the target type, e.g. EXECUTABLE, STATIC_LIBRARY, SHARED_LIBRARY or UTILITY.
+	 *
+	 * @return the target type
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Get the build configuration of the target (empty for single configuration generators without a build type).
+	 *
+	 * @return the build configuration
+	 */
+	public String getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * Get the files produced by the target, relative to the top level binary directory
+	 * unless they are outside of it.
+	 *
+	 * @return the artifact paths
+	 */
+	public List<String> getArtifacts() {
+		return artifacts;
+	}
+
+	/**
+	 * Get the identifiers of the targets that the target depends on.
+	 *
+	 * @return the dependency identifiers
+	 */
+	public List<String> getDependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * Get the source files of the target, relative to the top level source directory
+	 * unless they are outside of it.
+	 *
+	 * @return the source paths
+	 */
+	public List<String> getSources() {
+		return sources;
+	}
+
+	/**
+	 * Get the include directories of the target's compile groups, excluding system include
+	 * directories (e.g. those of imported targets).
+	 *
+	 * @return the include directory paths
+	 */
+	public List<String> getIncludeDirectories() {
+		return includeDirectories;
+	}
+
+	@Override
+	public String toString() {
+		return name + " (" + type + ")";
+	}
+}
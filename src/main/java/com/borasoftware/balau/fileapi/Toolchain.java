@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.fileapi;
+
+/**
+ * A toolchain of the CMake File API toolchains object.
+ *
+ * @author Nicholas Smethurst
+ */
+public class Toolchain {
+	private final String language;
+	private final String compilerPath;
+	private final String compilerId;
+	private final String compilerVersion;
+
+	Toolchain(String language, String compilerPath, String compilerId, String compilerVersion) {
+		this.language = language;
+		this.compilerPath = compilerPath;
+		this.compilerId = compilerId;
+		this.compilerVersion = compilerVersion;
+	}
+
+	public String getLanguage() {
+		return language;
+	}
+
+	public String getCompilerPath() {
+		return compilerPath;
+	}
+
+	/**
+	 * Get the compiler identifier, e.g. GNU, Clang or MSVC.
+	 *
+	 * @return the compiler identifier, or null if not known
+	 */
+	public String getCompilerId() {
+		return compilerId;
+	}
+
+	public String getCompilerVersion() {
+		return compilerVersion;
+	}
+
+	@Override
+	public String toString() {
+		return language + ": " + compilerId + " " + compilerVersion + " (" + compilerPath + ")";
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.listener;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for build listeners, with empty implementations of all events.
+ *
+ * @author Nicholas Smethurst
+ */
+public abstract class AbstractBuildListener implements BuildListener {
+	@Override
+	public void processStarted(long processId, List<String> commandLine, Path workingDirectory, Map<String, String> environment) {}
+
+	@Override
+	public void processOutput(long processId, String chunk, boolean error) {}
+
+	@Override
+	public void processExited(long processId, int exitStatus, long wallTimeMillis) {}
+
+	@Override
+	public void configureDecision(Path binaryDirectory, boolean skipped, List<String> reasons) {}
+
+	@Override
+	public void cleanStarted(Path directory) {}
+
+	@Override
+	public void cleanProgress(Path directory, long deletedEntries) {}
+
+	@Override
+	public void cleanFinished(Path directory, long deletedEntries, long failures, long wallTimeMillis) {}
+}
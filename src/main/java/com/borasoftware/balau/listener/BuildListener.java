@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.listener;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Receives build lifecycle and output events from the plugin.
+ *
+ * Listeners are discovered via {@link java.util.ServiceLoader} from the plugin's
+ * class path (add the listener's artifact as a plugin dependency), or are named
+ * in the buildListeners plugin parameter. Listener classes require a public no
+ * argument constructor.
+ *
+ * Events may be delivered concurrently from different modules' builds, so
+ * implementations must be thread safe. Implementations should extend
+ * {@link AbstractBuildListener} in order to remain compatible when new events
+ * are added.
+ *
+ * @author Nicholas Smethurst
+ */
+public interface BuildListener {
+	/**
+	 * A process has been started.
+	 *
+	 * @param processId the identifier of the process, unique within the JVM
+	 * @param commandLine the command line of the process
+	 * @param workingDirectory the working directory of the process
+	 * @param environment the extra environment variables specified to the process (unexpanded)
+	 */
+	void processStarted(long processId, List<String> commandLine, Path workingDirectory, Map<String, String> environment);
+
+	/**
+	 * A chunk of process output has been read.
+	 *
+	 * @param processId the identifier of the process
+	 * @param chunk one or more lines of output, separated by the platform line separator
+	 * @param error true if the chunk was read from a separated error stream
+	 */
+	void processOutput(long processId, String chunk, boolean error);
+
+	/**
+	 * A process has exited.
+	 *
+	 * @param processId the identifier of the process
+	 * @param exitStatus the exit status of the process
+	 * @param wallTimeMillis the elapsed time between starting the process and its exit
+	 */
+	void processExited(long processId, int exitStatus, long wallTimeMillis);
+
+	/**
+	 * The configure goal has decided whether to run CMake.
+	 *
+	 * @param binaryDirectory the CMake binary directory
+	 * @param skipped true if the configure run was skipped
+	 * @param reasons the inputs that required the configure run (empty if skipped)
+	 */
+	void configureDecision(Path binaryDirectory, boolean skipped, List<String> reasons);
+
+	/**
+	 * A directory clean has started.
+	 *
+	 * @param directory the directory being cleaned
+	 */
+	void cleanStarted(Path directory);
+
+	/**
+	 * Progress of a directory clean.
+	 *
+	 * @param directory the directory being cleaned
+	 * @param deletedEntries the number of entries deleted so far
+	 */
+	void cleanProgress(Path directory, long deletedEntries);
+
+	/**
+	 * A directory clean has finished.
+	 *
+	 * @param directory the directory that was cleaned
+	 * @param deletedEntries the number of entries deleted
+	 * @param failures the number of entries that could not be deleted
+	 * @param wallTimeMillis the elapsed time of the clean
+	 */
+	void cleanFinished(Path directory, long deletedEntries, long failures, long wallTimeMillis);
+}
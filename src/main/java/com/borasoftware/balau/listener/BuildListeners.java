@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.listener;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Dispatches build events to a set of build listeners.
+ *
+ * A failing listener is reported as a warning and does not fail the build.
+ *
+ * @author Nicholas Smethurst
+ */
+public class BuildListeners implements BuildListener {
+	private final Log log;
+	private final List<BuildListener> listeners;
+
+	/**
+	 * Load the build listeners registered via {@link ServiceLoader} in the supplied
+	 * class loader, plus the explicitly named listener classes.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param classLoader the class loader used to discover and load the listeners
+	 * @param classNames the names of additional listener classes (may be null or empty)
+	 * @return the loaded listeners
+	 * @throws MojoExecutionException if a named listener class could not be instantiated
+	 */
+	public static BuildListeners load(Log log, ClassLoader classLoader, List<String> classNames) throws MojoExecutionException {
+		final List<BuildListener> listeners = new ArrayList<>();
+
+		try {
+			for (BuildListener listener : ServiceLoader.load(BuildListener.class, classLoader)) {
+				listeners.add(listener);
+			}
+		} catch (ServiceConfigurationError e) {
+			throw new MojoExecutionException("Failed to load build listeners: " + e.getMessage(), e);
+		}
+
+		if (classNames != null) {
+			for (String className : classNames) {
+				try {
+					final Class<?> type = Class.forName(className.trim(), true, classLoader);
+					listeners.add(type.asSubclass(BuildListener.class).getDeclaredConstructor().newInstance());
+				} catch (InvocationTargetException e) {
+					// The constructor of the listener threw.
+					final Throwable cause = e.getCause();
+					throw new MojoExecutionException("Failed to instantiate build listener " + className + ": " + cause, cause);
+				} catch (ReflectiveOperationException | ClassCastException e) {
+					throw new MojoExecutionException("Failed to instantiate build listener " + className + ": " + e, e);
+				}
+			}
+		}
+
+		for (BuildListener listener : listeners) {
+			log.debug("Using build listener " + listener.getClass().getName());
+		}
+
+		return new BuildListeners(log, listeners);
+	}
+
+	/**
+	 * Create a dispatcher without listeners.
+	 *
+	 * @param log the Maven plugin logger
+	 */
+	public BuildListeners(Log log) {
+		this(log, Collections.<BuildListener>emptyList());
+	}
+
+	/**
+	 * Create a dispatcher for the supplied listeners.
+	 *
+	 * @param log the Maven plugin logger
+	 * @param listeners the listeners
+	 */
+	public BuildListeners(Log log, List<BuildListener> listeners) {
+		this.log = log;
+		this.listeners = listeners;
+	}
+
+	/**
+	 * Determine whether there are no listeners, in which case events need not be created.
+	 *
+	 * @return true if there are no listeners
+	 */
+	public boolean isEmpty() {
+		return listeners.isEmpty();
+	}
+
+	@Override
+	public void processStarted(long processId, List<String> commandLine, Path workingDirectory, Map<String, String> environment) {
+		for (BuildListener listener : listeners) {
+			try {
+				listener.processStarted(processId, commandLine, workingDirectory, environment);
+			} catch (RuntimeException e) {
+				failed(listener, e);
+			}
+		}
+	}
+
+	@Override
+	public void processOutput(long processId, String chunk, boolean error) {
+		for (BuildListener listener : listeners) {
+			try {
+				listener.processOutput(processId, chunk, error);
+			} catch (RuntimeException e) {
+				failed(listener, e);
+			}
+		}
+	}
+
+	@Override
+	public void processExited(long processId, int exitStatus, long wallTimeMillis) {
+		for (BuildListener listener : listeners) {
+			try {
+				listener.processExited(processId, exitStatus, wallTimeMillis);
+			} catch (RuntimeException e) {
+				failed(listener, e);
+			}
+		}
+	}
+
+	@Override
+	public void configureDecision(Path binaryDirectory, boolean skipped, List<String> reasons) {
+		for (BuildListener listener : listeners) {
+			try {
+				listener.configureDecision(binaryDirectory, skipped, reasons);
+			} catch (RuntimeException e) {
+				failed(listener, e);
+			}
+		}
+	}
+
+	@Override
+	public void cleanStarted(Path directory) {
+		for (BuildListener listener : listeners) {
+			try {
+				listener.cleanStarted(directory);
+			} catch (RuntimeException e) {
+				failed(listener, e);
+			}
+		}
+	}
+
+	@Override
+	public void cleanProgress(Path directory, long deletedEntries) {
+		for (BuildListener listener : listeners) {
+			try {
+				listener.cleanProgress(directory, deletedEntries);
+			} catch (RuntimeException e) {
+				failed(listener, e);
+			}
+		}
+	}
+
+	@Override
+	public void cleanFinished(Path directory, long deletedEntries, long failures, long wallTimeMillis) {
+		for (BuildListener listener : listeners) {
+			try {
+				listener.cleanFinished(directory, deletedEntries, failures, wallTimeMillis);
+			} catch (RuntimeException e) {
+				failed(listener, e);
+			}
+		}
+	}
+
+	private void failed(BuildListener listener, RuntimeException e) {
+		log.warn("Build listener " + listener.getClass().getName() + " failed: " + e, e);
+	}
+}
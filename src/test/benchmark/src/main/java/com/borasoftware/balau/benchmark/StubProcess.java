@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A child process that writes a specified amount of line oriented output, standing in
+ * for a verbose build tool.
+ *
+ * @author Nicholas Smethurst
+ */
+public class StubProcess {
+	/**
+	 * Write the output.
+	 *
+	 * @param arguments the number of bytes to write and the line length
+	 * @throws IOException if the output could not be written
+	 */
+	public static void main(String[] arguments) throws IOException {
+		final long size = Long.parseLong(arguments[0]);
+		final int lineLength = Integer.parseInt(arguments[1]);
+		final byte[] line = new byte[lineLength];
+
+		Arrays.fill(line, (byte) 'x');
+		line[lineLength - 1] = '\n';
+
+		try (OutputStream output = new BufferedOutputStream(System.out, 65536)) {
+			for (long written = 0; written < size; written += lineLength) {
+				output.write(line, 0, (int) Math.min(lineLength, size - written));
+			}
+		}
+	}
+
+	/**
+	 * Start the stub process in a new JVM.
+	 *
+	 * @param size the number of bytes to write
+	 * @param lineLength the line length, including the line terminator
+	 * @param discardOutput whether to discard the output instead of piping it to the parent
+	 * @return the process
+	 * @throws IOException if the process could not be started
+	 */
+	public static Process start(long size, int lineLength, boolean discardOutput) throws IOException {
+		final ProcessBuilder builder = new ProcessBuilder(
+			  System.getProperty("java.home") + File.separator + "bin" + File.separator + "java"
+			, "-cp"
+			, System.getProperty("java.class.path")
+			, StubProcess.class.getName()
+			, Long.toString(size)
+			, Integer.toString(lineLength)
+		);
+
+		builder.redirectErrorStream(true);
+
+		if (discardOutput) {
+			builder.redirectOutput(new File(File.separatorChar == '\\' ? "NUL" : "/dev/null"));
+		}
+
+		return builder.start();
+	}
+
+	/**
+	 * Get the command line of a native process that exits immediately.
+	 *
+	 * @return the command followed by its arguments
+	 */
+	public static String[] getTrivialCommand() {
+		return File.separatorChar == '\\'
+			? new String[] { "cmd", "/c", "exit" }
+			: new String[] { "true" };
+	}
+
+	private StubProcess() {}
+}
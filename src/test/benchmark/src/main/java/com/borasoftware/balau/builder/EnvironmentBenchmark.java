@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the expansion of the supplied environment variables into the environment of
+ * each process started by the plugin.
+ *
+ * @author Nicholas Smethurst
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvironmentBenchmark {
+	// The number of variables of the process environment.
+	@Param({ "100", "1000", "10000" })
+	int environmentSize;
+
+	// The number of supplied variables, each containing a placeholder.
+	@Param({ "1", "10", "100" })
+	int placeholders;
+
+	private Map<String, String> processEnvironment;
+	private Map<String, String> suppliedEnvironment;
+
+	@Setup
+	public void setUp() {
+		processEnvironment = new HashMap<>();
+		suppliedEnvironment = new HashMap<>();
+
+		for (int i = 0; i < environmentSize; i++) {
+			processEnvironment.put("VARIABLE_" + i, "/usr/local/value-" + i + "/bin:/opt/value-" + i + "/bin");
+		}
+
+		for (int i = 0; i < placeholders; i++) {
+			suppliedEnvironment.put("SUPPLIED_" + i, "/prefix-" + i + ":%VARIABLE_" + (i % environmentSize) + "%:/suffix");
+		}
+	}
+
+	//
+	// The process environment is copied on each call, as ProcessBuilder copies
+	// the environment of the current process for each process.
+	//
+	@Benchmark
+	public Map<String, String> updateEnvironment() throws MojoExecutionException {
+		final Map<String, String> environment = new HashMap<>(processEnvironment);
+		Utilities.updateEnvironment(environment, suppliedEnvironment);
+		return environment;
+	}
+
+	//
+	// The expansion used in the configure fingerprint and the build index keys.
+	//
+	@Benchmark
+	public Map<String, String> expandEnvironment() {
+		return Utilities.expandEnvironment(suppliedEnvironment);
+	}
+}
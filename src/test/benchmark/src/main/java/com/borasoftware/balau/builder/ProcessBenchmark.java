@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.builder;
+
+import com.borasoftware.balau.benchmark.NullLog;
+import com.borasoftware.balau.benchmark.StubProcess;
+import org.apache.maven.plugin.logging.Log;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the creation of the CMake and build tool processes, and the line pump that
+ * logs their output.
+ *
+ * @author Nicholas Smethurst
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessBenchmark {
+	// The number of bytes written by the child process.
+	@Param({ "1048576", "16777216" })
+	long outputSize;
+
+	// The length of the lines written by the child process.
+	@Param({ "80", "1000" })
+	int lineLength;
+
+	// The number of supplied environment variables of the created processes.
+	@Param({ "0", "100" })
+	int environmentVariables;
+
+	private final Log log = new NullLog();
+
+	private Path directory;
+	private String command;
+	private List<String> arguments;
+	private Map<String, String> environment;
+
+	@Setup
+	public void setUp() {
+		final String[] trivialCommand = StubProcess.getTrivialCommand();
+
+		directory = Paths.get(System.getProperty("java.io.tmpdir"));
+		command = trivialCommand[0];
+		arguments = Arrays.asList(trivialCommand).subList(1, trivialCommand.length);
+		environment = new HashMap<>();
+
+		for (int i = 0; i < environmentVariables; i++) {
+			environment.put("SUPPLIED_" + i, "/prefix-" + i + ":%PATH%");
+		}
+	}
+
+	//
+	// Create a native process that exits immediately and wait for it.
+	//
+	@Benchmark
+	public int createProcess() throws Exception {
+		final Process process = Utilities.createProcess(log, command, directory, arguments, environment);
+		process.getInputStream().close();
+		return process.waitFor();
+	}
+
+	//
+	// Log the output of the stub process through the line pump.
+	//
+	@Benchmark
+	public void runProcess() throws Exception {
+		Utilities.runProcess("stub", log, StubProcess.start(outputSize, lineLength, false));
+	}
+
+	//
+	// The cost of the stub process alone, with its output discarded by the operating system.
+	// The difference to runProcess is the cost of the line pump.
+	//
+	@Benchmark
+	public int discardOutput() throws Exception {
+		return StubProcess.start(outputSize, lineLength, true).waitFor();
+	}
+}
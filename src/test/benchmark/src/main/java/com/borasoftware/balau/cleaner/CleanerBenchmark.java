@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau.cleaner;
+
+import com.borasoftware.balau.benchmark.NullLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the deletion of generated binary directory trees. Each measurement deletes
+ * a tree that is generated before the measurement.
+ *
+ * @author Nicholas Smethurst
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CleanerBenchmark {
+	// The files of each leaf directory and the leaf directories of each intermediate directory.
+	private static final int FAN_OUT = 100;
+
+	// The number of files of the generated tree.
+	@Param({ "10000", "100000", "1000000" })
+	int entries;
+
+	// The number of delete threads (0 for the number of cores).
+	@Param({ "1", "0" })
+	int parallelism;
+
+	// Delete everything, or the outputs selected by a soft clean.
+	@Param({ "false", "true" })
+	boolean softClean;
+
+	private Path root;
+
+	@Setup(Level.Iteration)
+	public void createTree() throws IOException {
+		final String[] extensions = { ".o", ".d", ".a", ".cmake", ".txt" };
+		Path directory = null;
+
+		root = Files.createTempDirectory("cmake-maven-plugin-cleaner-benchmark");
+
+		for (int i = 0; i < entries; i++) {
+			if (i % FAN_OUT == 0) {
+				directory = Files.createDirectories(
+					root.resolve("CMakeFiles-" + i / (FAN_OUT * FAN_OUT)).resolve("target-" + i / FAN_OUT % FAN_OUT + ".dir")
+				);
+			}
+
+			Files.createFile(directory.resolve("file-" + i % FAN_OUT + extensions[i % extensions.length]));
+		}
+	}
+
+	@Benchmark
+	public void delete() throws IOException {
+		new Cleaner(new NullLog(), false).delete(
+			  root.toFile()
+			, softClean ? new SoftCleanSelector(root) : null
+			, false
+			, true
+			, false
+			, parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors()
+		);
+	}
+
+	@TearDown(Level.Iteration)
+	public void deleteTree() throws IOException {
+		new Cleaner(new NullLog(), false).delete(root.toFile(), null, false, true, true, 1);
+	}
+}
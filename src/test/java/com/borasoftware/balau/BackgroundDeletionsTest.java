@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau;
+
+import org.apache.maven.execution.AbstractExecutionListener;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that background deletions are waited for at the end of the Maven session.
+ */
+public class BackgroundDeletionsTest {
+	@Test
+	public void deletionsAreAwaitedAtSessionEnd() throws Exception {
+		final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+		final CountDownLatch sessionEnded = new CountDownLatch(1);
+
+		request.setExecutionListener(new AbstractExecutionListener() {
+			@Override
+			public void sessionEnded(ExecutionEvent event) {
+				sessionEnded.countDown();
+			}
+		});
+
+		final MavenSession session = new MavenSession(
+			  null
+			, new DefaultRepositorySystemSession()
+			, request
+			, new DefaultMavenExecutionResult()
+		);
+
+		final Thread first = startDeleter();
+		final Thread second = startDeleter();
+
+		BackgroundDeletions.awaitAtSessionEnd(session, new SystemStreamLog(), first);
+		BackgroundDeletions.awaitAtSessionEnd(session, new SystemStreamLog(), second);
+
+		// The listener is only wrapped once per session.
+		final BackgroundDeletions deletions = (BackgroundDeletions) request.getExecutionListener();
+		deletions.sessionEnded(null);
+
+		assertSame(deletions, request.getExecutionListener());
+		assertFalse(first.isAlive());
+		assertFalse(second.isAlive());
+		assertTrue(sessionEnded.await(0, TimeUnit.MILLISECONDS));
+	}
+
+	private static Thread startDeleter() {
+		final Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2019 Bora Software (contact@borasoftware.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.borasoftware.balau;
+
+import org.apache.maven.plugin.testing.AbstractMojoTestCase;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Perform the configure, compile and test-compile steps of several copies of the
+ * test projects concurrently, as a parallel Maven build (mvn -T) would.
+ *
+ * The test runs with the JUnit 4 runner, so that it is reported as skipped when
+ * CMake is not available.
+ */
+@RunWith(JUnit4.class)
+public class CMakeParallelMojoTest extends AbstractMojoTestCase {
+	private static final List<String> PROJECTS = Arrays.asList("src/test/test-project1", "src/test/test-project2");
+	private static final int COPIES = 3;
+
+	private File outputDirectory;
+
+	@Before
+	@Override
+	public void setUp() throws Exception {
+		super.setUp();
+		outputDirectory = getTestFile("target/parallel-mojo-test");
+		delete(outputDirectory.toPath());
+	}
+
+	@After
+	@Override
+	public void tearDown() throws Exception {
+		super.tearDown();
+		delete(outputDirectory.toPath());
+	}
+
+	@Test
+	public void test() throws Exception {
+		Assume.assumeTrue(isCMakeAvailable());
+
+		final List<List<AbstractCMakeMojo>> builds = new ArrayList<>();
+
+		// The mojos are looked up up front, as the test harness' container is not thread safe.
+		for (String project : PROJECTS) {
+			for (int copy = 0; copy < COPIES; copy++) {
+				final File buildDirectory = new File(outputDirectory, new File(project).getName() + "-" + copy);
+
+				builds.add(Arrays.asList(
+					  lookupMojo(project, "configure", buildDirectory)
+					, lookupMojo(project, "compile", buildDirectory)
+					, lookupMojo(project, "test-compile", buildDirectory)
+				));
+			}
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(builds.size());
+		final CountDownLatch startSignal = new CountDownLatch(1);
+		final List<Future<Void>> futures = new ArrayList<>();
+
+		try {
+			for (final List<AbstractCMakeMojo> goals : builds) {
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						startSignal.await();
+
+						for (AbstractCMakeMojo mojo : goals) {
+							mojo.execute();
+						}
+
+						return null;
+					}
+				}));
+			}
+
+			startSignal.countDown();
+
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw new AssertionError("Parallel build failed: " + e.getCause(), e.getCause());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		for (int i = 0; i < builds.size(); i++) {
+			final Path binDirectory = builds.get(i).get(0).cmakeBinaryDirectory.toPath();
+
+			assertTrue(Files.exists(binDirectory.resolve("bin").resolve("App")));
+			assertTrue(Files.exists(binDirectory.resolve("bin").resolve("UnitTests")));
+			assertTrue(Files.exists(binDirectory.resolve("lib").resolve("libLib.a")));
+		}
+	}
+
+	private AbstractCMakeMojo lookupMojo(String project, String goal, File buildDirectory) throws Exception {
+		final File pom = getTestFile(project + "/pom.xml");
+		assertTrue(pom.exists());
+
+		final AbstractCMakeMojo mojo = (AbstractCMakeMojo) lookupMojo(goal, pom);
+		assertNotNull(mojo);
+		mojo.projectBuildDirectory = buildDirectory;
+		mojo.cmakeBinaryDirectory = new File(buildDirectory, "cmake");
+		return mojo;
+	}
+
+	private static boolean isCMakeAvailable() {
+		try {
+			return new ProcessBuilder("cmake", "--version").redirectErrorStream(true).start().waitFor() == 0;
+		} catch (IOException | InterruptedException e) {
+			return false;
+		}
+	}
+
+	private static void delete(Path directory) throws IOException {
+		if (!Files.exists(directory)) {
+			return;
+		}
+
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
@@ -0,0 +1,39 @@
+package com.borasoftware.balau;
+
+import com.borasoftware.balau.builder.Utilities;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConfigurationJobsTest {
+	@Test
+	public void copiesKeepTheirShareOfTheConcurrency() throws Exception {
+		final CMakeCompileMojo mojo = new CMakeCompileMojo();
+		mojo.concurrency = 3;
+
+		final int[] shares = Utilities.divideConcurrency(mojo.concurrency, 3);
+
+		for (int i = 0; i < shares.length; i++) {
+			final String name = "Config" + i;
+			final AbstractCMakeMojo copy = mojo.copyForConfiguration(
+				name, "CMAKE_BUILD_TYPE", name, Paths.get("cmake", name), shares[i]
+			);
+
+			assertEquals(1, copy.getRequestedJobs());
+		}
+	}
+
+	@Test
+	public void sequentialCopiesUseTheConcurrency() throws Exception {
+		final CMakeCompileMojo mojo = new CMakeCompileMojo();
+		mojo.concurrency = 3;
+
+		final AbstractCMakeMojo copy = mojo.copyForConfiguration(
+			"Debug", "CMAKE_BUILD_TYPE", "Debug", Paths.get("cmake"), 0
+		);
+
+		assertEquals(3, copy.getRequestedJobs());
+	}
+}
@@ -0,0 +1,117 @@
+package com.borasoftware.balau;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WatchChangesTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void ignoresHiddenAndExcludedDirectories() throws Exception {
+		final Path source = folder.getRoot().toPath().toAbsolutePath().normalize();
+		final Set<Path> excluded = Collections.singleton(source.resolve("target"));
+
+		assertTrue(CMakeWatchMojo.isIgnored(source.resolve(".git"), excluded));
+		assertTrue(CMakeWatchMojo.isIgnored(source.resolve("target"), excluded));
+		assertFalse(CMakeWatchMojo.isIgnored(source.resolve("src"), excluded));
+	}
+
+	@Test
+	public void detectsCMakeInputs() throws Exception {
+		final Path source = folder.newFolder("src").toPath().toAbsolutePath().normalize();
+		final Set<Path> excluded = Collections.emptySet();
+
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			final Map<WatchKey, Path> keys = new HashMap<>();
+			CMakeWatchMojo.register(watcher, keys, source, excluded);
+
+			write(source.resolve("main.c"), "int main() { return 0; }");
+			assertFalse(CMakeWatchMojo.awaitChanges(watcher, keys, excluded, 100));
+
+			write(source.resolve("CMakeLists.txt"), "project(x)");
+			assertTrue(CMakeWatchMojo.awaitChanges(watcher, keys, excluded, 100));
+
+			write(source.resolve("module.cmake"), "set(X 1)");
+			assertTrue(CMakeWatchMojo.awaitChanges(watcher, keys, excluded, 100));
+		}
+	}
+
+	@Test
+	public void debouncesBursts() throws Exception {
+		final Path source = folder.newFolder("src").toPath().toAbsolutePath().normalize();
+		final Set<Path> excluded = Collections.emptySet();
+
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			final Map<WatchKey, Path> keys = new HashMap<>();
+			CMakeWatchMojo.register(watcher, keys, source, excluded);
+
+			final Thread writer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(200);
+						write(source.resolve("CMakeLists.txt"), "project(x)");
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+
+			write(source.resolve("main.c"), "int main() { return 0; }");
+			writer.start();
+
+			// The second change arrives within the debounce period and is part of the same burst.
+			assertTrue(CMakeWatchMojo.awaitChanges(watcher, keys, excluded, 2000));
+			writer.join();
+			assertNull(watcher.poll());
+		}
+	}
+
+	@Test
+	public void createdDirectories() throws Exception {
+		final Path source = folder.newFolder("src").toPath().toAbsolutePath().normalize();
+		final Path build = source.resolve("build");
+		final Set<Path> excluded = Collections.singleton(build);
+
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			final Map<WatchKey, Path> keys = new HashMap<>();
+			CMakeWatchMojo.register(watcher, keys, source, excluded);
+
+			Files.createDirectories(source.resolve(".git"));
+			Files.createDirectories(build);
+			assertFalse(CMakeWatchMojo.awaitChanges(watcher, keys, excluded, 100));
+			assertFalse(keys.containsValue(source.resolve(".git")));
+			assertFalse(keys.containsValue(build));
+
+			// A new directory may arrive populated, so it is treated as a CMake input change.
+			Files.createDirectories(source.resolve("lib"));
+			assertTrue(CMakeWatchMojo.awaitChanges(watcher, keys, excluded, 100));
+			assertTrue(keys.containsValue(source.resolve("lib")));
+
+			write(source.resolve("lib/CMakeLists.txt"), "add_library(x x.c)");
+			assertTrue(CMakeWatchMojo.awaitChanges(watcher, keys, excluded, 100));
+		}
+	}
+
+	private static void write(Path file, String content) throws Exception {
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+}
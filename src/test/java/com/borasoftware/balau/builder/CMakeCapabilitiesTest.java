@@ -0,0 +1,117 @@
+package com.borasoftware.balau.builder;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CMakeCapabilitiesTest {
+	private static final String CAPABILITIES =
+		"{\"version\":{\"major\":3,\"minor\":22,\"patch\":1,\"string\":\"3.22.1\"},"
+		+ "\"generators\":[{\"name\":\"Ninja\"},{\"name\":\"Unix Makefiles\",\"platformSupport\":false}],"
+		+ "\"fileApi\":{\"requests\":[{\"kind\":\"codemodel\",\"version\":[{\"major\":2,\"minor\":3}]},"
+		+ "{\"kind\":\"cache\",\"version\":[{\"major\":2,\"minor\":0}]}]},"
+		+ "\"serverMode\":false}";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void parseCapabilities() {
+		final CMakeCapabilities capabilities = CMakeCapabilities.parse("cmake version 3.22.1", CAPABILITIES);
+
+		assertEquals("3.22.1", capabilities.getVersion().toString());
+		assertEquals(Arrays.asList("Ninja", "Unix Makefiles"), capabilities.getGenerators());
+		assertTrue(capabilities.supportsParallelOption());
+		assertTrue(capabilities.supportsMultipleTargets());
+		assertFalse(capabilities.supportsFresh());
+		assertTrue(capabilities.supportsFileApi("codemodel"));
+		assertFalse(capabilities.supportsFileApi("toolchains"));
+	}
+
+	@Test
+	public void versionOnly() {
+		final CMakeCapabilities old = CMakeCapabilities.parse("cmake version 3.10.2", null);
+
+		assertFalse(old.supportsParallelOption());
+		assertFalse(old.supportsMultipleTargets());
+		assertFalse(old.supportsFileApi("codemodel"));
+		assertTrue(old.getGenerators().isEmpty());
+
+		// Invalid capabilities output falls back to the version.
+		final CMakeCapabilities recent = CMakeCapabilities.parse("cmake version 3.24.0", "not json");
+
+		assertTrue(recent.supportsFresh());
+		assertTrue(recent.supportsFileApi("codemodel"));
+
+		final CMakeCapabilities unknown = CMakeCapabilities.parse(null, null);
+
+		assertNull(unknown.getVersion());
+		assertTrue(unknown.supportsParallelOption());
+		assertFalse(unknown.supportsMultipleTargets());
+		assertTrue(unknown.supportsFileApi("codemodel"));
+	}
+
+	@Test
+	public void probeOnceAndPersist() throws Exception {
+		Assume.assumeTrue(File.separatorChar == '/');
+
+		final Path root = folder.getRoot().toPath();
+		final Path cmake = root.resolve("cmake");
+		final Path probes = root.resolve("probes.txt");
+		final Path directory = root.resolve("capabilities");
+		final SystemStreamLog log = new SystemStreamLog();
+
+		writeScript(cmake, probes, "3.22.1");
+
+		final CMakeCapabilities probed = CMakeCapabilities.get(log, root, LaunchContext.create(cmake.toString(), null), directory);
+
+		assertEquals("cmake version 3.22.1", probed.getVersionLine());
+		assertEquals(Arrays.asList("Ninja", "Unix Makefiles"), probed.getGenerators());
+		assertEquals(2, Files.readAllLines(probes, StandardCharsets.UTF_8).size());
+
+		// The persisted capabilities are used by a new context without running the binary.
+		final CMakeCapabilities persisted = CMakeCapabilities.get(log, root, LaunchContext.create(cmake.toString(), null), directory);
+
+		assertEquals("cmake version 3.22.1", persisted.getVersionLine());
+		assertEquals(Arrays.asList("Ninja", "Unix Makefiles"), persisted.getGenerators());
+		assertTrue(persisted.supportsFileApi("cache"));
+		assertEquals(2, Files.readAllLines(probes, StandardCharsets.UTF_8).size());
+
+		// A replaced binary is probed again.
+		writeScript(cmake, probes, "3.22.2");
+		Files.setLastModifiedTime(cmake, FileTime.fromMillis(Files.getLastModifiedTime(cmake).toMillis() + 10000));
+
+		final CMakeCapabilities replaced = CMakeCapabilities.get(log, root, LaunchContext.create(cmake.toString(), null), directory);
+
+		assertEquals("cmake version 3.22.2", replaced.getVersionLine());
+		assertEquals(4, Files.readAllLines(probes, StandardCharsets.UTF_8).size());
+	}
+
+	private static void writeScript(Path file, Path probes, String version) throws Exception {
+		Files.write(file, Arrays.asList(
+			  "#!/bin/sh"
+			, "echo \"$*\" >> '" + probes + "'"
+			, "if [ \"$1\" = \"-E\" ]; then"
+			, "  echo '" + CAPABILITIES + "'"
+			, "else"
+			, "  echo \"cmake version " + version + "\""
+			, "fi"
+		), StandardCharsets.UTF_8);
+
+		assertTrue(file.toFile().setExecutable(true));
+	}
+}
@@ -0,0 +1,31 @@
+package com.borasoftware.balau.builder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CMakeVersionTest {
+	@Test
+	public void versionLineIsParsed() {
+		final CMakeVersion version = CMakeVersion.parse("cmake version 3.16.3");
+
+		assertEquals(new CMakeVersion(3, 16, 3), version);
+		assertTrue(version.isAtLeast(3, 15));
+		assertTrue(version.isAtLeast(3, 16));
+		assertFalse(version.isAtLeast(3, 17));
+	}
+
+	@Test
+	public void releaseCandidateVersionLineIsParsed() {
+		assertEquals(new CMakeVersion(3, 14, 0), CMakeVersion.parse("cmake version 3.14.0-rc2"));
+	}
+
+	@Test
+	public void missingVersionIsNull() {
+		assertNull(CMakeVersion.parse("Incorrect binary test script called."));
+		assertNull(CMakeVersion.parse(null));
+	}
+}
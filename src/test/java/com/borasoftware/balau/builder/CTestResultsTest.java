@@ -0,0 +1,97 @@
+package com.borasoftware.balau.builder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CTestResultsTest {
+	private static final String TEST_XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+		+ "<Site BuildName=\"Linux\" Name=\"host\">\n"
+		+ "<Testing>\n"
+		+ "<TestList><Test>./fast</Test><Test>./slow</Test><Test>./disabled</Test></TestList>\n"
+		+ "<Test Status=\"passed\"><Name>fast</Name><Path>.</Path><FullName>./fast</FullName>\n"
+		+ "<Results><NamedMeasurement type=\"numeric/double\" name=\"Execution Time\"><Value>0.25</Value></NamedMeasurement>\n"
+		+ "<NamedMeasurement type=\"text/string\" name=\"Completion Status\"><Value>Completed</Value></NamedMeasurement>\n"
+		+ "<Measurement><Value>ok</Value></Measurement></Results></Test>\n"
+		+ "<Test Status=\"failed\"><Name>slow</Name><Path>.</Path>\n"
+		+ "<Results><NamedMeasurement type=\"numeric/double\" name=\"Execution Time\"><Value>1.5</Value></NamedMeasurement>\n"
+		+ "<NamedMeasurement type=\"text/string\" name=\"Exit Value\"><Value>3</Value></NamedMeasurement>\n"
+		+ "<NamedMeasurement type=\"text/string\" name=\"Completion Status\"><Value>Failed</Value></NamedMeasurement>\n"
+		+ "<Measurement><Value>expected &lt;1&gt;</Value></Measurement></Results></Test>\n"
+		+ "<Test Status=\"notrun\"><Name>disabled</Name><Path>.</Path>\n"
+		+ "<Results><NamedMeasurement type=\"text/string\" name=\"Completion Status\"><Value>Disabled</Value></NamedMeasurement>\n"
+		+ "<Measurement><Value></Value></Measurement></Results></Test>\n"
+		+ "</Testing>\n"
+		+ "</Site>\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readAndConvert() throws Exception {
+		final Path testXml = folder.getRoot().toPath().resolve("Test.xml");
+		Files.write(testXml, TEST_XML.getBytes(StandardCharsets.UTF_8));
+
+		final CTestResults results = CTestResults.read(testXml);
+
+		assertEquals(3, results.getResults().size());
+		assertEquals(1, results.getCount(CTestResults.Status.PASSED));
+		assertEquals(1, results.getCount(CTestResults.Status.FAILED));
+		assertEquals(1, results.getCount(CTestResults.Status.SKIPPED));
+		assertEquals(1.75, results.getTime(), 1e-9);
+
+		final CTestResults.Result slow = results.getResults().get(1);
+		assertEquals("slow", slow.getName());
+		assertEquals("Failed (exit value 3)", slow.getDetail());
+		assertEquals("expected <1>", slow.getOutput());
+
+		final Path report = folder.getRoot().toPath().resolve("reports/TEST-ctest.xml");
+		results.writeSurefireReport(report, "ctest");
+
+		final String xml = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+		assertTrue(xml.contains("<testsuite name=\"ctest\" tests=\"3\" failures=\"1\" errors=\"0\" skipped=\"1\" time=\"1.750\">"));
+		assertTrue(xml.contains("<failure message=\"Failed (exit value 3)\" type=\"ctest\">expected &lt;1&gt;</failure>"));
+	}
+
+	@Test
+	public void costDataSlowestFirst() {
+		final CTestCostData costData = CTestCostData.parse(Arrays.asList(
+			"fast 3 0.25", "name with spaces 2 4.5", "slow 10 2.0", "---", "slow"
+		));
+
+		assertEquals(Arrays.asList("name with spaces", "slow", "fast"), costData.getSlowestFirst());
+		assertEquals(Arrays.asList("slow"), costData.getFailed());
+	}
+
+	@Test
+	public void mergeShardReports() throws Exception {
+		final Path testXml = folder.getRoot().toPath().resolve("Test.xml");
+		Files.write(testXml, TEST_XML.getBytes(StandardCharsets.UTF_8));
+
+		final CTestResults results = CTestResults.read(testXml);
+		final Path shard0 = folder.getRoot().toPath().resolve("TEST-ctest-shard-0-of-2.xml");
+		final Path shard1 = folder.getRoot().toPath().resolve("TEST-ctest-shard-1-of-2.xml");
+
+		new CTestResults(results.getResults().subList(0, 1)).writeSurefireReport(shard0, "ctest-shard-0-of-2");
+		new CTestResults(results.getResults().subList(1, 3)).writeSurefireReport(shard1, "ctest-shard-1-of-2");
+
+		final CTestResults merged = CTestResults.merge(Arrays.asList(
+			CTestResults.readSurefireReport(shard0), CTestResults.readSurefireReport(shard1)
+		));
+
+		assertEquals(3, merged.getResults().size());
+		assertEquals(1, merged.getCount(CTestResults.Status.PASSED));
+		assertEquals(1, merged.getCount(CTestResults.Status.FAILED));
+		assertEquals(1, merged.getCount(CTestResults.Status.SKIPPED));
+		assertEquals(1.75, merged.getTime(), 1e-9);
+		assertEquals("expected <1>", merged.getResults().get(1).getOutput());
+	}
+}
@@ -0,0 +1,72 @@
+package com.borasoftware.balau.builder;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CompilerCacheTest {
+	@Test
+	public void parseCCache4Stats() {
+		final CompilerCache.Stats stats = CompilerCache.parseCCacheStats(Arrays.asList(
+			  "stats_updated_timestamp\t1700000000"
+			, "direct_cache_hit\t30"
+			, "preprocessed_cache_hit\t10"
+			, "cache_miss\t10"
+			, "cache_size_kibibyte\t2048"
+		));
+
+		assertEquals(40, stats.getHits());
+		assertEquals(10, stats.getMisses());
+		assertEquals(2048 * 1024, stats.getSize());
+		assertEquals(0.8, stats.getHitRate(), 1e-9);
+	}
+
+	@Test
+	public void parseSCCacheStats() {
+		final CompilerCache.Stats stats = CompilerCache.parseSCCacheStats(Collections.singletonList(
+			  "{\"stats\":{\"cache_hits\":{\"counts\":{\"C/C++\":7,\"Rust\":1}},"
+			+ "\"cache_misses\":{\"counts\":{\"C/C++\":2}}},\"cache_size\":4096}"
+		));
+
+		assertEquals(8, stats.getHits());
+		assertEquals(2, stats.getMisses());
+		assertEquals(4096, stats.getSize());
+	}
+
+	@Test
+	public void statsSince() {
+		final CompilerCache.Stats build = new CompilerCache.Stats(50, 10, 1000).since(new CompilerCache.Stats(20, 5, 400));
+
+		assertEquals(30, build.getHits());
+		assertEquals(5, build.getMisses());
+		assertEquals(600, build.getSize());
+	}
+
+	@Test
+	public void definesAndEnvironment() {
+		final CompilerCache cache = new CompilerCache(CompilerCache.Kind.CCACHE, Paths.get("/usr/bin/ccache"));
+		final Map<String, String> defines = cache.getDefines(null);
+
+		assertEquals(2, defines.size());
+		assertEquals(Paths.get("/usr/bin/ccache").toString(), defines.get("CMAKE_CXX_COMPILER_LAUNCHER"));
+
+		final Map<String, String> environment = cache.getEnvironment(new File("/cache"), "5G");
+		assertEquals(new File("/cache").getAbsolutePath(), environment.get("CCACHE_DIR"));
+		assertEquals("5G", environment.get("CCACHE_MAXSIZE"));
+	}
+
+	@Test
+	public void noneDisablesTheCache() throws Exception {
+		assertNull(CompilerCache.detect(new SystemStreamLog(), "none", null));
+		assertNull(CompilerCache.detect(new SystemStreamLog(), null, null));
+		assertNull(CompilerCache.detect(new SystemStreamLog(), "auto", Collections.singletonMap("PATH", "")));
+	}
+}
@@ -0,0 +1,90 @@
+package com.borasoftware.balau.builder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigureFingerprintTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void storedFingerprintLoadsEqual() throws Exception {
+		final Path source = createSourceTree();
+		final Path binary = source.resolve("target").resolve("cmake");
+		Files.createDirectories(binary);
+
+		final ConfigureFingerprint fingerprint = calculate(source, binary, "Ninja", "/opt/usr");
+
+		assertNull(ConfigureFingerprint.load(binary));
+		fingerprint.store(binary);
+
+		final ConfigureFingerprint loaded = ConfigureFingerprint.load(binary);
+
+		assertEquals(fingerprint, loaded);
+		assertTrue(fingerprint.differences(loaded).isEmpty());
+		assertEquals("Ninja", loaded.getGenerator());
+	}
+
+	@Test
+	public void changedInputsAreReported() throws Exception {
+		final Path source = createSourceTree();
+		final Path binary = source.resolve("target").resolve("cmake");
+		Files.createDirectories(binary);
+
+		final ConfigureFingerprint previous = calculate(source, binary, "Ninja", "/opt/usr");
+
+		Files.write(source.resolve("sub").resolve("Module.cmake"), "set(A 2)".getBytes(StandardCharsets.UTF_8));
+		final ConfigureFingerprint current = calculate(source, binary, "Ninja", "/usr/local");
+
+		final List<String> differences = current.differences(previous);
+
+		assertEquals(2, differences.size());
+		assertEquals("CMake define CMAKE_INSTALL_PREFIX changed", differences.get(0));
+		assertEquals("file sub/Module.cmake changed", differences.get(1));
+	}
+
+	@Test
+	public void binaryDirectoryIsNotScanned() throws Exception {
+		final Path source = createSourceTree();
+		final Path binary = source.resolve("target").resolve("cmake");
+		Files.createDirectories(binary);
+
+		final ConfigureFingerprint previous = calculate(source, binary, "", "/opt/usr");
+
+		Files.write(binary.resolve("generated.cmake"), "set(B 1)".getBytes(StandardCharsets.UTF_8));
+		final ConfigureFingerprint current = calculate(source, binary, "", "/opt/usr");
+
+		assertTrue(current.differences(previous).isEmpty());
+	}
+
+	private Path createSourceTree() throws Exception {
+		final Path source = folder.getRoot().toPath();
+		Files.createDirectories(source.resolve("sub"));
+		Files.write(source.resolve("CMakeLists.txt"), "project(A)".getBytes(StandardCharsets.UTF_8));
+		Files.write(source.resolve("sub").resolve("Module.cmake"), "set(A 1)".getBytes(StandardCharsets.UTF_8));
+		Files.write(source.resolve("sub").resolve("Source.cpp"), "int a;".getBytes(StandardCharsets.UTF_8));
+		return source;
+	}
+
+	private ConfigureFingerprint calculate(Path source, Path binary, String generator, String prefix) throws Exception {
+		final Map<String, String> defines = new HashMap<>();
+		defines.put("CMAKE_INSTALL_PREFIX", prefix);
+
+		return ConfigureFingerprint.calculate(
+			source, Collections.singletonList(binary), generator, defines, null, "cmake version 3.16.3"
+		);
+	}
+}
@@ -0,0 +1,87 @@
+package com.borasoftware.balau.builder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DiagnosticsParserTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void compilerDiagnosticsAreCountedOnce() {
+		final DiagnosticsParser parser = new DiagnosticsParser();
+
+		parser.consume("[ 25%] Building CXX object CMakeFiles/Lib.dir/src/Lib.cpp.o", false);
+		parser.consume("/src/Lib.hpp:12:5: warning: unused variable 'x' [-Wunused-variable]", false);
+		parser.consume("[ 50%] Building CXX object CMakeFiles/App.dir/src/App.cpp.o", false);
+		parser.consume("/src/Lib.hpp:12:5: warning: unused variable 'x' [-Wunused-variable]", false);
+		parser.consume("/src/App.cpp:3:1: error: expected ';' before '}' token", false);
+		parser.consume("/src/App.cpp:1:10: note: in expansion of macro 'A'", false);
+		parser.consume("make[2]: *** [CMakeFiles/App.dir/build.make:63: CMakeFiles/App.dir/src/App.cpp.o] Error 1", false);
+
+		assertEquals(1, parser.getCount(DiagnosticsParser.WARNING));
+		assertEquals(1, parser.getCount(DiagnosticsParser.ERROR));
+		assertEquals(1, parser.getCount(DiagnosticsParser.NOTE));
+		assertEquals(1, parser.getDuplicateCount());
+		assertEquals(2, parser.getDiagnostics().size());
+
+		final DiagnosticsParser.Diagnostic error = parser.getDiagnostics().get(1);
+
+		assertEquals("/src/App.cpp", error.file);
+		assertEquals(3, error.line);
+		assertEquals(1, error.column);
+		assertEquals("App", error.target);
+	}
+
+	@Test
+	public void cmakeDiagnosticsAreParsed() {
+		final DiagnosticsParser parser = new DiagnosticsParser();
+
+		parser.consume("CMake Warning (dev) at CMakeLists.txt:14 (add_library):", false);
+		parser.consume("", false);
+		parser.consume("  Policy CMP0028 is not set.", false);
+		parser.consume("CMake Error: The source directory \"/a/b\" does not exist.", false);
+
+		assertEquals(1, parser.getCount(DiagnosticsParser.WARNING));
+		assertEquals(1, parser.getCount(DiagnosticsParser.ERROR));
+
+		final DiagnosticsParser.Diagnostic warning = parser.getDiagnostics().get(0);
+
+		assertEquals("CMakeLists.txt", warning.file);
+		assertEquals(14, warning.line);
+		assertEquals("Policy CMP0028 is not set.", warning.message);
+	}
+
+	@Test
+	public void colouredDiagnosticsAreParsed() {
+		final DiagnosticsParser parser = new DiagnosticsParser();
+
+		parser.consume("\u001B[1m/src/A.cpp:4:2: \u001B[0;1;35mwarning: \u001B[0mshadowed\u001B[0m", false);
+
+		assertEquals(1, parser.getCount(DiagnosticsParser.WARNING));
+	}
+
+	@Test
+	public void summaryIsWritten() throws Exception {
+		final DiagnosticsParser parser = new DiagnosticsParser();
+		final Path summary = folder.getRoot().toPath().resolve("summary.json");
+
+		parser.consume("Scanning dependencies of target Lib", false);
+		parser.consume("/src/Lib.cpp:1:1: warning: a", false);
+		parser.writeSummary(summary, "compile");
+
+		final String json = new String(Files.readAllBytes(summary), StandardCharsets.UTF_8);
+
+		assertTrue(json.contains("\"goal\": \"compile\""));
+		assertTrue(json.contains("\"/src/Lib.cpp\": {\n      \"warning\": 1"));
+		assertTrue(json.contains("\"Lib\": {\n      \"warning\": 1"));
+	}
+}
@@ -0,0 +1,52 @@
+package com.borasoftware.balau.builder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FailureContextTest {
+	@Test
+	public void lastLinesAndFirstErrors() {
+		final FailureContext context = new FailureContext(3, 2);
+
+		for (int i = 0; i < 10; i++) {
+			context.consume("line" + i, false);
+		}
+
+		context.consume("/src/foo.cpp:3:5: error: expected ';'", false);
+		context.consume("make[2]: *** [foo.o] Error 1", false);
+		context.consume("FAILED: bar.o", false);
+		context.consume("error_handler.cpp compiled with -Werror", false);
+
+		assertEquals(
+			Arrays.asList("/src/foo.cpp:3:5: error: expected ';'", "make[2]: *** [foo.o] Error 1"),
+			context.getErrorLines()
+		);
+
+		assertEquals(
+			Arrays.asList("make[2]: *** [foo.o] Error 1", "FAILED: bar.o", "error_handler.cpp compiled with -Werror"),
+			context.getLastLines()
+		);
+
+		assertTrue(context.format().contains("Last 3 of 14 lines:"));
+	}
+
+	@Test
+	public void boundedLines() {
+		final FailureContext context = new FailureContext(2, 0);
+		final char[] characters = new char[FailureContext.MAXIMUM_LINE_LENGTH * 2];
+		Arrays.fill(characters, 'x');
+
+		context.consume(new String(characters), false);
+		context.consume("short", false);
+
+		assertEquals(FailureContext.MAXIMUM_LINE_LENGTH + 3, context.getLastLines().get(0).length());
+		assertEquals("short", context.getLastLines().get(1));
+		assertEquals(Collections.<String>emptyList(), context.getErrorLines());
+		assertEquals("", new FailureContext(0, 0).format());
+	}
+}
@@ -0,0 +1,114 @@
+package com.borasoftware.balau.builder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FileStateIndexTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void detectsChanges() throws Exception {
+		final Path source = folder.newFolder("src").toPath();
+		final Path index = folder.getRoot().toPath().resolve("index");
+
+		write(source.resolve("a.c"), "a");
+		write(source.resolve("sub/b.c"), "b");
+		write(source.resolve(".git/HEAD"), "ref");
+
+		final List<FileStateIndex.Entry> entries = FileStateIndex.scanTree(source, null, 2);
+		assertEquals(2, entries.size());
+
+		FileStateIndex.store(index, "key", entries, false);
+
+		assertTrue(FileStateIndex.matches(index, "key", FileStateIndex.scanTree(source, null, 2)));
+		assertFalse(FileStateIndex.matches(index, "other", FileStateIndex.scanTree(source, null, 2)));
+
+		write(source.resolve("sub/c.c"), "c");
+		assertFalse(FileStateIndex.matches(index, "key", FileStateIndex.scanTree(source, null, 2)));
+	}
+
+	@Test
+	public void missingOutputs() throws Exception {
+		final Path output = folder.getRoot().toPath().resolve("libx.a");
+		final Path index = folder.getRoot().toPath().resolve("index");
+
+		write(output, "archive");
+		FileStateIndex.store(index, "key", FileStateIndex.scanFiles(Collections.singletonList(output)), false);
+
+		Files.delete(output);
+		assertFalse(FileStateIndex.matches(index, "key", FileStateIndex.scanFiles(Collections.singletonList(output))));
+	}
+
+	@Test
+	public void corruptLength() throws Exception {
+		final Path source = folder.newFolder("src").toPath();
+		final Path index = folder.getRoot().toPath().resolve("index");
+
+		write(source.resolve("a.c"), "a");
+		FileStateIndex.store(index, "key", FileStateIndex.scanTree(source, null, 1), false);
+
+		// The length prefix of the key follows the magic and version.
+		final byte[] bytes = Files.readAllBytes(index);
+		bytes[8] = 0x7f;
+		Files.write(index, bytes);
+
+		assertFalse(FileStateIndex.matches(index, "key", FileStateIndex.scanTree(source, null, 1)));
+
+		// The index is not held open, so it can be replaced.
+		FileStateIndex.store(index, "key", FileStateIndex.scanTree(source, null, 1), false);
+		assertTrue(FileStateIndex.matches(index, "key", FileStateIndex.scanTree(source, null, 1)));
+	}
+
+	@Test
+	public void hashesIgnoreTouchedFiles() throws Exception {
+		final Path source = folder.newFolder("src").toPath();
+		final Path index = folder.getRoot().toPath().resolve("index");
+		final Path file = write(source.resolve("a.c"), "a");
+
+		Files.setLastModifiedTime(file, FileTime.fromMillis(1000000));
+		FileStateIndex.store(index, "key", FileStateIndex.scanTree(source, null, 1), true);
+		Files.setLastModifiedTime(file, FileTime.fromMillis(2000000));
+
+		assertTrue(FileStateIndex.matches(index, "key", FileStateIndex.scanTree(source, null, 1)));
+
+		write(file, "b");
+		Files.setLastModifiedTime(file, FileTime.fromMillis(3000000));
+
+		assertFalse(FileStateIndex.matches(index, "key", FileStateIndex.scanTree(source, null, 1)));
+	}
+
+	@Test
+	public void changedAfterScan() throws Exception {
+		final Path source = folder.newFolder("src").toPath();
+		final Path index = folder.getRoot().toPath().resolve("index");
+		final Path file = write(source.resolve("a.c"), "a");
+
+		Files.setLastModifiedTime(file, FileTime.fromMillis(1000000));
+		final List<FileStateIndex.Entry> scanned = FileStateIndex.scanTree(source, null, 1);
+
+		// Edited during the build, keeping the same size.
+		write(file, "b");
+		Files.setLastModifiedTime(file, FileTime.fromMillis(2000000));
+		FileStateIndex.store(index, "key", scanned, true);
+
+		assertFalse(FileStateIndex.matches(index, "key", FileStateIndex.scanTree(source, null, 1)));
+	}
+
+	private static Path write(Path file, String content) throws Exception {
+		Files.createDirectories(file.getParent());
+		return Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,57 @@
+package com.borasoftware.balau.builder;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GeneratorsTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void detectFromPath() throws Exception {
+		Assume.assumeTrue(File.separatorChar == '/');
+
+		final Path tools = folder.newFolder("tools").toPath();
+		final Path empty = folder.newFolder("empty").toPath();
+
+		for (String tool : Arrays.asList("ninja", "make")) {
+			final File file = Files.createFile(tools.resolve(tool)).toFile();
+			assertTrue(file.setExecutable(true));
+		}
+
+		assertEquals(
+			Arrays.asList("Ninja", "Unix Makefiles"),
+			Generators.detect(Collections.singletonMap("PATH", empty + File.pathSeparator + tools))
+		);
+
+		assertEquals(Collections.<String>emptyList(), Generators.detect(Collections.singletonMap("PATH", empty.toString())));
+	}
+
+	@Test
+	public void configuredGenerator() throws Exception {
+		final Path binDirectory = folder.getRoot().toPath();
+
+		assertNull(Generators.getConfiguredGenerator(binDirectory));
+
+		Files.write(binDirectory.resolve("CMakeCache.txt"), Arrays.asList(
+			"CMAKE_BUILD_TYPE:STRING=Release",
+			"//Name of generator.",
+			"CMAKE_GENERATOR:INTERNAL=Unix Makefiles"
+		), StandardCharsets.UTF_8);
+
+		assertEquals("Unix Makefiles", Generators.getConfiguredGenerator(binDirectory));
+	}
+}
@@ -0,0 +1,133 @@
+package com.borasoftware.balau.builder;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class JobServerTest {
+	@Test
+	public void leasesShareThePool() throws Exception {
+		final JobServer jobServer = JobServer.create(new SystemStreamLog(), 4, false);
+
+		final JobServer.Lease first = jobServer.acquire(3);
+		final JobServer.Lease second = jobServer.acquire(3);
+
+		assertEquals(3, first.getConcurrency());
+		assertEquals(1, second.getConcurrency());
+
+		first.close();
+		second.close();
+
+		final JobServer.Lease third = jobServer.acquire(8);
+		assertEquals(4, third.getConcurrency());
+		third.close();
+	}
+
+	@Test
+	public void leasesAreRebalancedBetweenActiveBuilds() throws Exception {
+		final JobServer jobServer = JobServer.create(new SystemStreamLog(), 4, false);
+		final JobServer.Lease first = jobServer.acquire(4);
+		final JobServer.Lease[] second = new JobServer.Lease[1];
+
+		// A lone build takes the whole pool.
+		assertEquals(4, first.getConcurrency());
+
+		final Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					second[0] = jobServer.acquire(4);
+				} catch (InterruptedException | IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+
+		thread.start();
+
+		while (jobServer.getActiveBuilds() < 2) {
+			Thread.sleep(10);
+		}
+
+		// The first build returns the slots above its share to the waiting build.
+		assertEquals(2, first.rebalance());
+		thread.join();
+		assertEquals(2, second[0].getConcurrency());
+
+		// The remaining build takes the slots freed by the completed build.
+		first.close();
+		assertEquals(4, second[0].rebalance());
+		second[0].close();
+		assertEquals(0, jobServer.getActiveBuilds());
+	}
+
+	@Test
+	public void inProcessPoolDoesNotChangeTheEnvironment() throws Exception {
+		final JobServer jobServer = JobServer.create(new SystemStreamLog(), 2, false);
+		final Map<String, String> environment = Collections.singletonMap("A", "B");
+
+		try (JobServer.Lease lease = jobServer.acquire(2)) {
+			assertFalse(jobServer.isFifo());
+			assertSame(environment, lease.getEnvironment(environment));
+			assertNull(lease.getEnvironment(null));
+		}
+	}
+
+	@Test
+	public void fifoPoolExposesTheJobServer() throws Exception {
+		final JobServer jobServer = JobServer.create(new SystemStreamLog(), 2, true);
+
+		if (!jobServer.isFifo()) {
+			// mkfifo is not available on this platform.
+			return;
+		}
+
+		try (JobServer.Lease lease = jobServer.acquire(2)) {
+			final String makeFlags = lease.getEnvironment(null).get("MAKEFLAGS");
+
+			assertEquals(0, lease.getConcurrency());
+			assertTrue(makeFlags.startsWith("-j2 --jobserver-auth=fifo:"));
+		}
+
+		// Both tokens are available again.
+		jobServer.acquire(1).close();
+		jobServer.acquire(1).close();
+	}
+
+	@Test
+	public void fifoTokensCanBeLeasedExplicitly() throws Exception {
+		final JobServer jobServer = JobServer.create(new SystemStreamLog(), 3, true);
+
+		if (!jobServer.isFifo()) {
+			// mkfifo is not available on this platform.
+			return;
+		}
+
+		final Map<String, String> environment = Collections.singletonMap("A", "B");
+
+		try (JobServer.Lease build = jobServer.acquire(3); JobServer.Lease tests = jobServer.acquireTokens(8)) {
+			// The build holds its implicit token, so two tokens remain.
+			assertEquals(0, build.getConcurrency());
+			assertEquals(2, tests.getConcurrency());
+			assertSame(environment, tests.getEnvironment(environment));
+		}
+
+		try (JobServer.Lease tests = jobServer.acquireTokens(3)) {
+			assertEquals(3, tests.getConcurrency());
+		}
+
+		// No token reader is left blocked on the FIFO.
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			assertFalse(thread.getName().equals("cmake-maven-plugin job token reader") && thread.isAlive());
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.borasoftware.balau.builder;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LaunchContextTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void resolveAndCacheVersion() throws Exception {
+		Assume.assumeTrue(File.separatorChar == '/');
+
+		final Path cmake = folder.getRoot().toPath().resolve("cmake");
+		writeScript(cmake, "3.20.1");
+
+		final LaunchContext context = LaunchContext.create(
+			cmake.toString(), Collections.singletonMap("EXTRA_PATH", "/opt/bin:%PATH%")
+		);
+
+		assertEquals(cmake.toAbsolutePath().toString(), context.getCMake());
+		assertEquals(cmake.resolveSibling("ctest").toAbsolutePath().toString(), context.getCTest());
+		assertEquals("/opt/bin:" + System.getenv("PATH"), context.getExpandedEnvironment().get("EXTRA_PATH"));
+		assertEquals("/opt/bin:%PATH%", context.getEnvironmentVariables().get("EXTRA_PATH"));
+		assertTrue(context.isValid());
+
+		final SystemStreamLog log = new SystemStreamLog();
+		assertEquals("cmake version 3.20.1", context.getVersion(log, folder.getRoot().toPath()));
+
+		// The version is cached by the context and shared with derived contexts.
+		writeScript(cmake, "3.21.0");
+		Files.setLastModifiedTime(cmake, FileTime.fromMillis(Files.getLastModifiedTime(cmake).toMillis() + 10000));
+
+		final LaunchContext derived = context.withEnvironment(Collections.singletonMap("MAKEFLAGS", "-j4"));
+		assertEquals("cmake version 3.20.1", derived.getVersion(log, folder.getRoot().toPath()));
+		assertEquals("-j4", derived.getExpandedEnvironment().get("MAKEFLAGS"));
+		assertSame(context, context.withEnvironment(null));
+
+		// A replaced binary invalidates the context.
+		assertFalse(context.isValid());
+		assertEquals(
+			"cmake version 3.21.0",
+			LaunchContext.create(cmake.toString(), null).getVersion(log, folder.getRoot().toPath())
+		);
+	}
+
+	@Test
+	public void keyDependsOnConfiguration() {
+		assertEquals(
+			LaunchContext.getKey("cmake", Collections.singletonMap("A", "1")),
+			LaunchContext.getKey("cmake", Collections.singletonMap("A", "1"))
+		);
+
+		assertFalse(LaunchContext.getKey("cmake", Collections.singletonMap("A", "1"))
+			.equals(LaunchContext.getKey("cmake", Collections.singletonMap("A", "2"))));
+
+		assertFalse(LaunchContext.getKey(null, null).equals(LaunchContext.getKey("/usr/bin/cmake", null)));
+	}
+
+	private static void writeScript(Path file, String version) throws Exception {
+		Files.write(file, Arrays.asList("#!/bin/sh", "echo \"cmake version " + version + "\""), StandardCharsets.UTF_8);
+		assertTrue(file.toFile().setExecutable(true));
+	}
+}
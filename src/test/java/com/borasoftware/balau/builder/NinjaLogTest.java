@@ -0,0 +1,113 @@
+package com.borasoftware.balau.builder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NinjaLogTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void onlyEntriesAfterTheOffsetAreRead() throws Exception {
+		final Path binary = folder.getRoot().toPath();
+		final Path file = binary.resolve(NinjaLog.FILE_NAME);
+
+		assertNull(NinjaLog.read(binary, NinjaLog.mark(binary)));
+
+		write(file, "# ninja log v5\n0\t100\t1\tCMakeFiles/Old.dir/a.cpp.o\tabc\n");
+		final NinjaLog.Position position = NinjaLog.mark(binary);
+
+		write(file,
+			  "0\t400\t1\tCMakeFiles/Lib.dir/b.cpp.o\t2\n"
+			+ "400\t900\t1\tCMakeFiles/Lib.dir/c.cpp.o\t3\n"
+			+ "0\t1000\t1\tCMakeFiles/Lib.dir/a.cpp.o\t1\n"
+			+ "1000\t1200\t1\tlib/libLib.a\t4\n"
+			+ "1200\t1500\t1\tbin/App\t5\n"
+			+ "1200\t1500\t1\tbin/App.map\t5\n"
+		);
+
+		final NinjaLog log = NinjaLog.read(binary, position);
+
+		assertEquals(5, log.getEdges().size());
+		assertEquals(1, log.getRunCount());
+		assertEquals(1500, log.getWallTime());
+		assertEquals(2400, log.getTotalEdgeTime());
+		assertEquals(0.8, log.getUtilisation(2), 0.0001);
+
+		final List<NinjaLog.Edge> slowest = log.getSlowest(true, 2);
+		assertEquals("CMakeFiles/Lib.dir/a.cpp.o", slowest.get(0).getOutput());
+		assertEquals("CMakeFiles/Lib.dir/c.cpp.o", slowest.get(1).getOutput());
+
+		final List<NinjaLog.Edge> criticalPath = log.getCriticalPath();
+		assertEquals(3, criticalPath.size());
+		assertEquals("CMakeFiles/Lib.dir/a.cpp.o", criticalPath.get(0).getOutput());
+		assertEquals("lib/libLib.a", criticalPath.get(1).getOutput());
+		assertEquals("bin/App", criticalPath.get(2).getOutput());
+		assertEquals(1500, NinjaLog.getTotalTime(criticalPath));
+	}
+
+	@Test
+	public void runsArePlacedOnASingleTimeBase() throws Exception {
+		final Path binary = folder.getRoot().toPath();
+		final Path file = binary.resolve(NinjaLog.FILE_NAME);
+
+		write(file, "# ninja log v5\n0\t100\t1\tCMakeFiles/Old.dir/a.cpp.o\tabc\n");
+		final NinjaLog.Position position = NinjaLog.mark(binary);
+
+		// Two Ninja runs, each with times relative to its own start.
+		write(file,
+			  "0\t500\t1\tCMakeFiles/A.dir/a.cpp.o\t1\n"
+			+ "500\t600\t1\tlib/libA.a\t2\n"
+			+ "0\t300\t1\tCMakeFiles/B.dir/b.cpp.o\t3\n"
+			+ "300\t400\t1\tlib/libB.a\t4\n"
+		);
+
+		final NinjaLog log = NinjaLog.read(binary, position);
+
+		assertEquals(2, log.getRunCount());
+		assertEquals(1000, log.getWallTime());
+		assertEquals(600, log.getEdges().get(2).start);
+
+		final List<NinjaLog.Edge> criticalPath = log.getCriticalPath();
+		assertEquals(4, criticalPath.size());
+		assertEquals("lib/libB.a", criticalPath.get(3).getOutput());
+	}
+
+	@Test
+	public void recompactedLogIsNotRead() throws Exception {
+		final Path binary = folder.getRoot().toPath();
+		final Path file = binary.resolve(NinjaLog.FILE_NAME);
+
+		write(file, "# ninja log v5\n0\t100\t1\ta.o\t1\n0\t100\t1\tb.o\t2\n");
+		final NinjaLog.Position position = NinjaLog.mark(binary);
+
+		// Rewritten shorter than the position.
+		Files.delete(file);
+		write(file, "# ninja log v5\n0\t100\t1\tb.o\t2\n");
+		assertNull(NinjaLog.read(binary, position));
+
+		// Rewritten longer than the position, so the position is mid-line or before a header.
+		Files.delete(file);
+		write(file, "# ninja log v5\n0\t100\t1\tbb.o\t2\n0\t100\t1\tcc.o\t3\n0\t100\t1\tdd.o\t4\n");
+		assertNull(NinjaLog.read(binary, position));
+
+		// Rewritten in place (same file) with a header after the position.
+		final NinjaLog.Position inPlace = NinjaLog.mark(binary);
+		write(file, "# ninja log v5\n0\t100\t1\te.o\t5\n");
+		assertNull(NinjaLog.read(binary, inPlace));
+	}
+
+	private void write(Path file, String content) throws Exception {
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+}
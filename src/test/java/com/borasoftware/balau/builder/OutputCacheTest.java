@@ -0,0 +1,154 @@
+package com.borasoftware.balau.builder;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OutputCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void keyDependsOnSourcesAndTargets() throws Exception {
+		final Path source = folder.newFolder("src").toPath();
+		final Path binary = folder.newFolder("bin").toPath();
+		write(source.resolve("CMakeLists.txt"), "project(x)");
+		write(source.resolve("main.c"), "int main() { return 0; }");
+
+		final List<String> targets = Collections.singletonList("all");
+		final String key = calculateKey(source, null, binary, null, null, targets);
+
+		assertEquals(key, calculateKey(source, null, binary, null, null, targets));
+		assertNotEquals(key, calculateKey(source, null, binary, null, null, Arrays.asList("x")));
+
+		write(source.resolve("main.c"), "int main() { return 1; }");
+		assertNotEquals(key, calculateKey(source, null, binary, null, null, targets));
+	}
+
+	@Test
+	public void keyDependsOnExternalInputsAndSettings() throws Exception {
+		final Path source = folder.newFolder("src").toPath();
+		final Path external = folder.newFolder("lib").toPath();
+		final Path binary = folder.newFolder("bin").toPath();
+		final List<Path> externals = Collections.singletonList(external);
+		write(source.resolve("CMakeLists.txt"), "project(x)");
+		write(external.resolve("Lib.hpp"), "int f();");
+
+		final List<String> targets = Collections.singletonList("all");
+		final String key = calculateKey(source, externals, binary, null, null, targets);
+
+		assertNotEquals(key, calculateKey(source, externals, binary, Collections.singletonList("-k"), null, targets));
+		assertNotEquals(key, calculateKey(source, externals, binary, null, Collections.singletonMap("CC", "clang"), targets));
+		assertNotEquals(key, OutputCache.calculateKey(
+			source, externals, null, binary, "Ninja", "cmake version 3.28.1", null, null, null, targets
+		));
+
+		write(external.resolve("Lib.hpp"), "int f(int);");
+		assertNotEquals(key, calculateKey(source, externals, binary, null, null, targets));
+	}
+
+	@Test
+	public void storeAndRestore() throws Exception {
+		final Path binary = folder.newFolder("bin").toPath();
+		final Path restored = folder.newFolder("restored").toPath();
+		final OutputCache cache = new OutputCache(new SystemStreamLog(), folder.newFolder("cache").toPath(), 1 << 20);
+		final String key = Digests.digest("key");
+
+		write(binary.resolve("lib/libx.a"), "archive");
+		write(binary.resolve("app"), "executable");
+
+		assertEquals(-1, cache.restore(key, restored));
+
+		cache.store(key, binary, Collections.<String>emptyList());
+		assertEquals(-1, cache.restore(key, restored));
+
+		cache.store(key, binary, Arrays.asList("lib/libx.a", "app"));
+
+		assertEquals(2, cache.restore(key, restored));
+		assertEquals("archive", read(restored.resolve("lib/libx.a")));
+		assertEquals("executable", read(restored.resolve("app")));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() throws Exception {
+		final Path binary = folder.newFolder("bin").toPath();
+		final Path root = folder.newFolder("cache").toPath();
+		final OutputCache cache = new OutputCache(new SystemStreamLog(), root, 25);
+		final String first = Digests.digest("first");
+		final String second = Digests.digest("second");
+		final String third = Digests.digest("third");
+
+		write(binary.resolve("out"), "0123456789");
+
+		cache.store(first, binary, Collections.singletonList("out"));
+		cache.store(second, binary, Collections.singletonList("out"));
+		setLastUsed(root, second, 1000);
+		setLastUsed(root, first, 2000);
+
+		cache.store(third, binary, Collections.singletonList("out"));
+
+		assertFalse(Files.exists(entry(root, second)));
+		assertTrue(Files.exists(entry(root, first)));
+		assertTrue(Files.exists(entry(root, third)));
+	}
+
+	@Test
+	public void deletesAbandonedTemporaries() throws Exception {
+		final Path root = folder.newFolder("cache").toPath();
+		final OutputCache cache = new OutputCache(new SystemStreamLog(), root, 1 << 20);
+		final Path abandoned = root.resolve(".tmp-abandoned");
+		final Path active = root.resolve(".tmp-active");
+
+		write(abandoned.resolve("files/out"), "0123456789");
+		write(active.resolve("files/out"), "0123456789");
+		Files.setLastModifiedTime(abandoned, FileTime.fromMillis(1000));
+
+		cache.evict();
+
+		assertFalse(Files.exists(abandoned));
+		assertTrue(Files.exists(active));
+	}
+
+	private static String calculateKey(Path source,
+	                                   List<Path> externalDirectories,
+	                                   Path binary,
+	                                   List<String> makeOptions,
+	                                   Map<String, String> environmentVariables,
+	                                   List<String> targets) throws Exception {
+		return OutputCache.calculateKey(
+			source, externalDirectories, null, binary, "Ninja", "cmake version 3.16.3", null, makeOptions, environmentVariables, targets
+		);
+	}
+
+	private static Path entry(Path root, String key) {
+		return root.resolve(key.substring(0, 2)).resolve(key);
+	}
+
+	private static void setLastUsed(Path root, String key, long millis) throws Exception {
+		Files.setLastModifiedTime(entry(root, key).resolve(OutputCache.MANIFEST), FileTime.fromMillis(millis));
+	}
+
+	private static void write(Path file, String content) throws Exception {
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String read(Path file) throws Exception {
+		return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+	}
+}
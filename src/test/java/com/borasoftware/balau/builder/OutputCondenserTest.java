@@ -0,0 +1,47 @@
+package com.borasoftware.balau.builder;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutputCondenserTest {
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	@Test
+	public void makeProgress() {
+		final OutputCondenser condenser = new OutputCondenser(1000, 0);
+
+		assertTrue(condenser.suppress("Scanning dependencies of target foo"));
+		assertTrue(condenser.suppress("[ 25%] Building CXX object src/CMakeFiles/foo.dir/foo.cpp.o"));
+		assertTrue(condenser.suppress("[ 50%] Linking CXX static library libfoo.a"));
+		assertFalse(condenser.suppress("/src/foo.cpp:3:5: warning: unused variable 'x' [-Wunused-variable]"));
+		assertTrue(condenser.suppress("[ 50%] Built target foo"));
+		assertTrue(condenser.suppress("make[2]: Entering directory '/build'"));
+
+		assertNull(condenser.getSummary(SECOND / 2));
+		assertEquals("Progress: 50%, 2 steps, 1 targets built, 2.0 steps/s (5 lines condensed).", condenser.getSummary(SECOND));
+
+		// Nothing has been suppressed since the last summary.
+		assertNull(condenser.getSummary(3 * SECOND));
+		assertNull(condenser.getFinalSummary(3 * SECOND));
+	}
+
+	@Test
+	public void ninjaAndCTestProgress() {
+		final OutputCondenser condenser = new OutputCondenser(1000, 0);
+
+		assertTrue(condenser.suppress("[3/12] Building CXX object CMakeFiles/foo.dir/foo.cpp.o"));
+		assertFalse(condenser.suppress("FAILED: CMakeFiles/foo.dir/bar.cpp.o"));
+		assertEquals("Progress: 25%, 3/12 steps, 3.0 steps/s (1 lines condensed).", condenser.getFinalSummary(SECOND));
+
+		assertTrue(condenser.suppress("    Start 2: bar"));
+		assertTrue(condenser.suppress("2/4 Test #2: bar ..............................   Passed    0.01 sec"));
+		assertFalse(condenser.suppress("3/4 Test #3: baz ..............................***Failed    0.01 sec"));
+		assertEquals(3, condenser.getSuppressed());
+	}
+}
@@ -0,0 +1,228 @@
+package com.borasoftware.balau.builder;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessOutputTest {
+	private static class RecordingLog extends SystemStreamLog {
+		final List<String> info = new ArrayList<>();
+		final List<String> warn = new ArrayList<>();
+
+		@Override
+		public void info(CharSequence content) {
+			// Each call to the logger is recorded, so that multi-line calls are detected.
+			info.add(content.toString());
+		}
+
+		@Override
+		public void warn(CharSequence content) {
+			warn.add(content.toString());
+		}
+	}
+
+	@Test
+	public void allLinesAreLoggedInOrder() throws Exception {
+		final RecordingLog log = new RecordingLog();
+		final ProcessOutput output = new ProcessOutput(log);
+		output.setBatchSize(7);
+		output.setQueueCapacity(16);
+
+		output.run("sh", start("i=0; while [ $i -lt 1000 ]; do echo line$i; i=$((i+1)); done", true));
+
+		assertEquals(1000, log.info.size());
+
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("line" + i, log.info.get(i));
+		}
+	}
+
+	@Test
+	public void separateErrorStreamIsLoggedAsWarnings() throws Exception {
+		final RecordingLog log = new RecordingLog();
+		final ProcessOutput output = new ProcessOutput(log);
+		output.setSeparateErrorStream(true);
+
+		output.run("sh", start("echo out; echo err 1>&2", false));
+
+		assertEquals(Arrays.asList("out"), log.info);
+		assertEquals(Arrays.asList("err"), log.warn);
+	}
+
+	@Test
+	public void outputIsDecodedWithTheSpecifiedCharset() throws Exception {
+		final RecordingLog log = new RecordingLog();
+		final ProcessOutput output = new ProcessOutput(log);
+		output.setCharset(StandardCharsets.UTF_8);
+
+		output.run("sh", start("printf '\\303\\251t\\303\\251\\n'", true));
+
+		assertEquals(Arrays.asList("été"), log.info);
+	}
+
+	@Test
+	public void condensedOutputWritesTheRawLog() throws Exception {
+		final RecordingLog log = new RecordingLog();
+		final ProcessOutput output = new ProcessOutput(log);
+		final Path logFile = Files.createTempFile("process-output", ".log");
+
+		try {
+			output.setCondenseInterval(60000);
+			output.setLogFile(logFile);
+
+			output.run("sh", start(
+				"i=0; while [ $i -lt 100 ]; do echo \"[ $i%] Building C object obj$i.o\"; i=$((i+1)); done; echo warning: w", true
+			));
+
+			assertEquals(3, log.info.size());
+			assertTrue(log.info.get(0).startsWith("The complete output is written to "));
+			assertEquals("warning: w", log.info.get(1));
+			assertTrue(log.info.get(2).startsWith("Progress: 99%, 100 steps"));
+			assertEquals(101, Files.readAllLines(logFile, StandardCharsets.UTF_8).size());
+
+			// Later runs append to the log file.
+			output.run("sh", start("echo again", true));
+
+			final List<String> lines = Files.readAllLines(logFile, StandardCharsets.UTF_8);
+			assertEquals(102, lines.size());
+			assertEquals("[ 0%] Building C object obj0.o", lines.get(0));
+			assertEquals("again", lines.get(101));
+		} finally {
+			Files.deleteIfExists(logFile);
+		}
+	}
+
+	@Test
+	public void failingProcessThrows() throws Exception {
+		final RecordingLog log = new RecordingLog();
+		boolean threw = false;
+
+		try {
+			new ProcessOutput(log).run("sh", start("echo failing; exit 3", true));
+		} catch (MojoExecutionException e) {
+			threw = true;
+			assertTrue(e.getMessage().contains("exit status of 3"));
+		}
+
+		assertTrue(threw);
+		assertEquals(Arrays.asList("failing"), log.info);
+	}
+
+	@Test
+	public void failureContextIsReported() throws Exception {
+		final RecordingLog log = new RecordingLog();
+		final ProcessOutput output = new ProcessOutput(log);
+		final Path report = Files.createTempFile("process-output", "-failure.txt");
+		boolean threw = false;
+
+		try {
+			output.setFailureContext(2, 1);
+			output.setFailureReport(report);
+
+			output.run("sh", start(
+				"echo 'foo.c:1:1: error: first'; echo 'foo.c:2:1: error: second'; echo one; echo two; exit 2", true
+			));
+		} catch (MojoExecutionException e) {
+			threw = true;
+			assertTrue(e.getMessage().contains("foo.c:1:1: error: first"));
+			assertFalse(e.getMessage().contains("foo.c:2:1: error: second"));
+			assertTrue(e.getMessage().contains("Last 2 of 4 lines:"));
+
+			final String contents = new String(Files.readAllBytes(report), StandardCharsets.UTF_8);
+			assertTrue(contents.startsWith("sh command failed with exit status of 2"));
+			assertTrue(contents.contains("  two"));
+		} finally {
+			Files.deleteIfExists(report);
+		}
+
+		assertTrue(threw);
+	}
+
+	@Test
+	public void interruptDestroysTheProcessTree() throws Exception {
+		final Path pidFile = Files.createTempFile("process-output", ".pid");
+		final ProcessOutput output = new ProcessOutput(new RecordingLog());
+		final Process process = start("sleep 60 & echo $! > '" + pidFile + "'; echo started; wait", true);
+		final Exception[] thrown = new Exception[1];
+
+		try {
+			final Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						output.run("sh", process);
+					} catch (Exception e) {
+						thrown[0] = e;
+					}
+				}
+			};
+
+			thread.start();
+
+			while (Files.size(pidFile) == 0) {
+				Thread.sleep(10);
+			}
+
+			final String pid = new String(Files.readAllBytes(pidFile), StandardCharsets.UTF_8).trim();
+
+			thread.interrupt();
+			thread.join();
+
+			assertTrue(thrown[0] instanceof InterruptedException);
+			assertFalse(isAlive(process));
+
+			// The child of the shell has been destroyed too.
+			assertTrue(new ProcessBuilder("kill", "-0", pid).start().waitFor() != 0);
+		} finally {
+			Files.deleteIfExists(pidFile);
+		}
+	}
+
+	@Test
+	public void failingConsumerDestroysTheProcess() throws Exception {
+		final ProcessOutput output = new ProcessOutput(new RecordingLog());
+		final Process process = start("while true; do echo line; done", true);
+		boolean threw = false;
+
+		output.setQueueCapacity(4);
+		output.addConsumer(new OutputConsumer() {
+			@Override
+			public void consume(String line, boolean error) {
+				throw new IllegalStateException("consumer failed");
+			}
+		});
+
+		try {
+			output.run("sh", process);
+		} catch (IllegalStateException e) {
+			threw = true;
+		}
+
+		assertTrue(threw);
+		assertFalse(isAlive(process));
+	}
+
+	private static boolean isAlive(Process process) {
+		try {
+			process.exitValue();
+			return false;
+		} catch (IllegalThreadStateException e) {
+			return true;
+		}
+	}
+
+	private Process start(String script, boolean redirectErrorStream) throws Exception {
+		return new ProcessBuilder("sh", "-c", script).redirectErrorStream(redirectErrorStream).start();
+	}
+}
@@ -0,0 +1,90 @@
+package com.borasoftware.balau.builder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestShardsTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void balanceByCost() {
+		final Map<String, Double> costs = new HashMap<>();
+		costs.put("a", 10.0);
+		costs.put("b", 6.0);
+		costs.put("c", 5.0);
+		costs.put("d", 4.0);
+		costs.put("e", 1.0);
+
+		final TestShards shards = TestShards.assign(Arrays.asList("e", "d", "c", "b", "a"), costs, 2);
+
+		assertEquals(Arrays.asList("a", "d"), shards.getTests(0));
+		assertEquals(Arrays.asList("b", "c", "e"), shards.getTests(1));
+		assertEquals(14.0, shards.getCost(0), 1e-9);
+		assertEquals(12.0, shards.getCost(1), 1e-9);
+	}
+
+	@Test
+	public void deterministicWithoutCosts() {
+		final List<String> tests = Arrays.asList("t3", "t1", "t4", "t2", "t5");
+		final TestShards shards = TestShards.assign(tests, null, 3);
+		final TestShards reordered = TestShards.assign(Arrays.asList("t5", "t4", "t3", "t2", "t1"), null, 3);
+		final List<String> all = new ArrayList<>();
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(shards.getTests(i), reordered.getTests(i));
+			all.addAll(shards.getTests(i));
+		}
+
+		assertEquals(5, all.size());
+		assertTrue(all.containsAll(tests));
+		assertEquals(Arrays.asList("t1", "t4"), shards.getTests(0));
+	}
+
+	@Test
+	public void sequentialShardsWithUpdatedCosts() throws Exception {
+		final List<String> tests = Arrays.asList("a", "b", "c", "d", "e", "f");
+		final Path costData = folder.getRoot().toPath().resolve(CTestCostData.FILE_NAME);
+		final Path shardCostFile = folder.getRoot().toPath().resolve("shard-costs.txt");
+
+		Files.createDirectories(costData.getParent());
+		writeCosts(costData, 10.0, 8.0, 6.0, 4.0, 2.0, 1.0);
+		Files.copy(costData, shardCostFile, StandardCopyOption.REPLACE_EXISTING);
+
+		final List<String> covered = new ArrayList<>(TestShards.assignFromFile(tests, shardCostFile, 2).getTests(0));
+
+		// Running shard 0 makes CTest rewrite the cost data in the binary directory.
+		writeCosts(costData, 1.0, 2.0, 4.0, 6.0, 8.0, 10.0);
+
+		covered.addAll(TestShards.assignFromFile(tests, shardCostFile, 2).getTests(1));
+
+		assertEquals(tests.size(), covered.size());
+		assertEquals(new HashSet<>(tests), new HashSet<>(covered));
+	}
+
+	private void writeCosts(Path file, double ... costs) throws Exception {
+		final StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < costs.length; i++) {
+			builder.append((char) ('a' + i)).append(" 1 ").append(costs[i]).append('\n');
+		}
+
+		builder.append("---\n");
+		Files.write(file, builder.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -6,7 +6,10 @@ import org.junit.Test;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class UtilitiesTest {
 	@Test
@@ -68,4 +71,28 @@ public class UtilitiesTest {
 
 		assertEquals("jkl:mno:", path);
 	}
+
+	@Test
+	public void divideConcurrency() {
+		assertArrayEquals(new int[] { 4, 3, 3 }, Utilities.divideConcurrency(10, 3));
+		assertArrayEquals(new int[] { 1, 1, 1 }, Utilities.divideConcurrency(2, 3));
+		assertArrayEquals(new int[] { 8 }, Utilities.divideConcurrency(8, 1));
+	}
+
+	@Test
+	public void multiConfigGenerators() {
+		assertTrue(Utilities.isMultiConfigGenerator("Ninja Multi-Config"));
+		assertTrue(Utilities.isMultiConfigGenerator("Visual Studio 17 2022"));
+		assertTrue(Utilities.isMultiConfigGenerator("Xcode"));
+		assertFalse(Utilities.isMultiConfigGenerator("Ninja"));
+		assertFalse(Utilities.isMultiConfigGenerator(null));
+	}
+
+	@Test
+	public void ninjaGenerators() {
+		assertTrue(Utilities.isNinjaGenerator("Ninja"));
+		assertTrue(Utilities.isNinjaGenerator("Ninja Multi-Config"));
+		assertFalse(Utilities.isNinjaGenerator("Unix Makefiles"));
+		assertFalse(Utilities.isNinjaGenerator(null));
+	}
 }
@@ -0,0 +1,99 @@
+package com.borasoftware.balau.cleaner;
+
+import com.borasoftware.balau.listener.AbstractBuildListener;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CleanerTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void parallelDeleteRemovesTree() throws Exception {
+		final Path root = folder.newFolder("build").toPath();
+		final int files = createTree(root, 3, 4);
+
+		final CountingListener listener = new CountingListener();
+		new Cleaner(new SystemStreamLog(), false, listener).delete(root.toFile(), null, false, true, false, 4);
+
+		assertFalse(Files.exists(root));
+		assertEquals(files + 1, listener.deleted);
+	}
+
+	@Test
+	public void parallelDeleteDoesNotFollowSymlinks() throws Exception {
+		final Path root = folder.newFolder("build").toPath();
+		final Path outside = folder.newFolder("outside").toPath();
+		final Path kept = Files.write(outside.resolve("kept.txt"), "x".getBytes(StandardCharsets.UTF_8));
+
+		createTree(root, 2, 3);
+		Files.createSymbolicLink(root.resolve("link"), outside);
+
+		new Cleaner(new SystemStreamLog(), false).delete(root.toFile(), null, false, true, false, 4);
+
+		assertFalse(Files.exists(root));
+		assertTrue(Files.exists(kept));
+	}
+
+	@Test
+	public void parallelDeleteKeepsUnselectedEntries() throws Exception {
+		final Path root = folder.newFolder("build").toPath();
+		createTree(root, 2, 3);
+		final Path kept = Files.write(root.resolve("d0").resolve("keep.txt"), "x".getBytes(StandardCharsets.UTF_8));
+
+		final Selector selector = new Selector() {
+			@Override
+			public boolean isSelected(String pathname) {
+				return !pathname.endsWith("keep.txt");
+			}
+
+			@Override
+			public boolean couldHoldSelected(String pathname) {
+				return true;
+			}
+		};
+
+		new Cleaner(new SystemStreamLog(), false).delete(root.toFile(), selector, false, true, false, 4);
+
+		assertTrue(Files.exists(kept));
+		assertFalse(Files.exists(root.resolve("d1")));
+		assertFalse(Files.exists(root.resolve("d0").resolve("f0.txt")));
+	}
+
+	private static int createTree(Path directory, int depth, int width) throws IOException {
+		int count = 0;
+
+		for (int i = 0; i < width; i++) {
+			Files.write(directory.resolve("f" + i + ".txt"), "x".getBytes(StandardCharsets.UTF_8));
+			++count;
+
+			if (depth > 0) {
+				final Path child = Files.createDirectory(directory.resolve("d" + i));
+				count += createTree(child, depth - 1, width) + 1;
+			}
+		}
+
+		return count;
+	}
+
+	private static class CountingListener extends AbstractBuildListener {
+		long deleted;
+
+		@Override
+		public void cleanFinished(Path directory, long deleted, long failures, long millis) {
+			this.deleted = deleted;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.borasoftware.balau.cleaner;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SoftCleanSelectorTest {
+	private static final byte[] ELF = { 0x7f, 'E', 'L', 'F', 0, 0 };
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void sequentialSoftClean() throws Exception {
+		softClean(1);
+	}
+
+	@Test
+	public void parallelSoftClean() throws Exception {
+		softClean(4);
+	}
+
+	private void softClean(int parallelism) throws Exception {
+		final Path root = folder.newFolder("cmake").toPath();
+
+		final Path cache = write(root.resolve("CMakeCache.txt"), "x".getBytes(StandardCharsets.UTF_8), false);
+		final Path makefile = write(root.resolve("Makefile"), "all:".getBytes(StandardCharsets.UTF_8), false);
+		final Path compilerId = write(root.resolve("CMakeFiles/3.16.3/CompilerIdC/a.out"), ELF, true);
+		final Path object = write(root.resolve("CMakeFiles/app.dir/main.c.o"), ELF, false);
+		final Path library = write(root.resolve("libfoo.a"), "!<arch>".getBytes(StandardCharsets.UTF_8), false);
+		final Path shared = write(root.resolve("libbar.so.1.2"), ELF, true);
+		final Path executable = write(root.resolve("app"), ELF, true);
+		final Path script = write(root.resolve("run.sh"), "#!/bin/sh".getBytes(StandardCharsets.UTF_8), true);
+		final Path ccache = write(root.resolve(".ccache/0/1/x.o"), ELF, false);
+
+		new Cleaner(new SystemStreamLog(), false)
+			.delete(root.toFile(), new SoftCleanSelector(root), false, true, false, parallelism);
+
+		assertTrue(Files.exists(cache));
+		assertTrue(Files.exists(makefile));
+		assertTrue(Files.exists(compilerId));
+		assertTrue(Files.exists(script));
+		assertTrue(Files.exists(ccache));
+		assertTrue(Files.isDirectory(object.getParent()));
+
+		assertFalse(Files.exists(object));
+		assertFalse(Files.exists(library));
+		assertFalse(Files.exists(shared));
+		assertFalse(Files.exists(executable));
+	}
+
+	private static Path write(Path path, byte[] content, boolean executable) throws Exception {
+		Files.createDirectories(path.getParent());
+		Files.write(path, content);
+
+		if (executable) {
+			assertTrue(path.toFile().setExecutable(true));
+		}
+
+		return path;
+	}
+}
@@ -0,0 +1,82 @@
+package com.borasoftware.balau.cleaner;
+
+import com.borasoftware.balau.listener.AbstractBuildListener;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TombstonesTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void buryAndDeleteInBackground() throws Exception {
+		final Path cmake = folder.newFolder("cmake").toPath();
+		Files.createDirectories(cmake.resolve("a/b"));
+		Files.write(cmake.resolve("a/b/c.o"), "x".getBytes(StandardCharsets.UTF_8));
+
+		final Path tombstone = Tombstones.bury(cmake);
+
+		assertFalse(Files.exists(cmake));
+		assertTrue(Files.isDirectory(tombstone));
+
+		final List<Path> found = Tombstones.find(folder.getRoot().toPath());
+		assertEquals(1, found.size());
+		assertEquals(tombstone, found.get(0));
+
+		Tombstones.deleteInBackground(new SystemStreamLog(), found, null, false, 2).join();
+
+		assertFalse(Files.exists(tombstone));
+		assertTrue(Tombstones.find(folder.getRoot().toPath()).isEmpty());
+	}
+
+	@Test
+	public void tombstonesBeingDeletedAreNotLeftovers() throws Exception {
+		final Path cmake = folder.newFolder("cmake").toPath();
+		Files.write(cmake.resolve("a.o"), "x".getBytes(StandardCharsets.UTF_8));
+
+		final Path tombstone = Tombstones.bury(cmake);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		final AbstractBuildListener blockingListener = new AbstractBuildListener() {
+			@Override
+			public void cleanStarted(Path directory) {
+				started.countDown();
+
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		final Thread deleter = Tombstones.deleteInBackground(
+			new SystemStreamLog(), Tombstones.find(folder.getRoot().toPath()), blockingListener, false, 1
+		);
+
+		started.await();
+
+		try {
+			assertTrue(Files.isDirectory(tombstone));
+			assertTrue(Tombstones.find(folder.getRoot().toPath()).isEmpty());
+		} finally {
+			release.countDown();
+		}
+
+		deleter.join();
+		assertFalse(Files.exists(tombstone));
+	}
+}
@@ -0,0 +1,93 @@
+package com.borasoftware.balau.fileapi;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FileApiTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writeQueryOnce() throws Exception {
+		final Path binary = folder.getRoot().toPath();
+
+		assertTrue(FileApi.writeQuery(binary));
+		assertFalse(FileApi.writeQuery(binary));
+		assertTrue(Files.exists(binary.resolve(".cmake/api/v1/query/" + FileApi.CLIENT + "/codemodel-v2")));
+	}
+
+	@Test
+	public void noReply() throws Exception {
+		assertNull(FileApi.read(folder.getRoot().toPath()));
+	}
+
+	@Test
+	public void readReply() throws Exception {
+		final Path binary = folder.getRoot().toPath();
+		final Path reply = Files.createDirectories(binary.resolve(".cmake/api/v1/reply"));
+
+		write(reply.resolve("index-2019-01-01T00-00-00-0000.json"), "{\"reply\":{}}");
+		write(reply.resolve("index-2020-01-01T00-00-00-0000.json"),
+			"{\"cmake\":{\"version\":{\"string\":\"3.16.3\"}},\"objects\":[],\"reply\":{\"" + FileApi.CLIENT + "\":{"
+			+ "\"codemodel-v2\":{\"kind\":\"codemodel\",\"version\":{\"major\":2,\"minor\":0},\"jsonFile\":\"codemodel.json\"},"
+			+ "\"cache-v2\":{\"jsonFile\":\"cache.json\"},"
+			+ "\"toolchains-v1\":{\"error\":\"unknown request kind 'toolchains'\"}}}}");
+		write(reply.resolve("codemodel.json"),
+			"{\"paths\":{\"source\":\"/src\",\"build\":\"/bin\"},\"configurations\":[{\"name\":\"Release\","
+			+ "\"directories\":[{\"source\":\".\"}],\"targets\":["
+			+ "{\"name\":\"app\",\"id\":\"app::@1\",\"jsonFile\":\"target-app.json\"},"
+			+ "{\"name\":\"core\",\"id\":\"core::@1\",\"jsonFile\":\"target-core.json\"},"
+			+ "{\"name\":\"tests\",\"id\":\"tests::@1\",\"jsonFile\":\"target-tests.json\"}]}]}");
+		write(reply.resolve("target-app.json"),
+			"{\"name\":\"app\",\"id\":\"app::@1\",\"type\":\"EXECUTABLE\",\"artifacts\":[{\"path\":\"app\"}],"
+			+ "\"dependencies\":[{\"id\":\"core::@1\",\"backtrace\":1}],\"sources\":[{\"path\":\"main.c\",\"compileGroupIndex\":0}],"
+			+ "\"compileGroups\":[{\"language\":\"C\",\"includes\":[{\"path\":\"/ext/include\"},"
+			+ "{\"path\":\"/usr/include/zlib\",\"isSystem\":true}],\"sourceIndexes\":[0]}]}");
+		write(reply.resolve("target-core.json"),
+			"{\"name\":\"core\",\"id\":\"core::@1\",\"type\":\"STATIC_LIBRARY\",\"artifacts\":[{\"path\":\"libcore.a\"}],"
+			+ "\"sources\":[{\"path\":\"core.c\"}]}");
+		write(reply.resolve("target-tests.json"),
+			"{\"name\":\"tests\",\"id\":\"tests::@1\",\"type\":\"EXECUTABLE\",\"artifacts\":[{\"path\":\"tests\"}]}");
+		write(reply.resolve("cache.json"),
+			"{\"entries\":[{\"name\":\"CMAKE_BUILD_TYPE\",\"value\":\"Release\",\"type\":\"STRING\",\"properties\":[]}]}");
+
+		final FileApiReply model = FileApi.read(binary);
+
+		assertEquals(3, model.getTargets().size());
+		assertEquals("Release", model.getCache().get("CMAKE_BUILD_TYPE"));
+		assertTrue(model.getToolchains().isEmpty());
+
+		final Target app = model.getTargetById("app::@1");
+		assertEquals("EXECUTABLE", app.getType());
+		assertEquals("Release", app.getConfiguration());
+		assertEquals(Collections.singletonList("app"), app.getArtifacts());
+		assertEquals(Collections.singletonList("main.c"), app.getSources());
+		assertEquals(Collections.singletonList("/ext/include"), app.getIncludeDirectories());
+
+		final List<String> names = new ArrayList<>();
+
+		for (Target target : model.getTargets(Collections.singletonList("app"))) {
+			names.add(target.getName());
+		}
+
+		assertEquals(Arrays.asList("app", "core"), names);
+	}
+
+	private static void write(Path file, String content) throws Exception {
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	}
+}
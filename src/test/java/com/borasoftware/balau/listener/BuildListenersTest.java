@@ -0,0 +1,95 @@
+package com.borasoftware.balau.listener;
+
+import com.borasoftware.balau.builder.ProcessOutput;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BuildListenersTest {
+	public static class RecordingListener extends AbstractBuildListener {
+		static final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+		@Override
+		public void processStarted(long processId, List<String> commandLine, Path workingDirectory, Map<String, String> environment) {
+			events.add("started " + commandLine.get(0));
+		}
+
+		@Override
+		public void processOutput(long processId, String chunk, boolean error) {
+			events.add("output " + chunk);
+		}
+
+		@Override
+		public void processExited(long processId, int exitStatus, long wallTimeMillis) {
+			events.add("exited " + exitStatus);
+		}
+	}
+
+	public static class FailingListener extends AbstractBuildListener {
+		@Override
+		public void processOutput(long processId, String chunk, boolean error) {
+			throw new IllegalStateException("failing listener");
+		}
+	}
+
+	public static class ThrowingListener extends AbstractBuildListener {
+		public ThrowingListener() {
+			throw new IllegalStateException("throwing constructor");
+		}
+	}
+
+	@Test
+	public void namedListenersReceiveProcessEvents() throws Exception {
+		final SystemStreamLog log = new SystemStreamLog();
+		final BuildListeners listeners = BuildListeners.load(
+			  log
+			, getClass().getClassLoader()
+			, Arrays.asList(FailingListener.class.getName(), RecordingListener.class.getName())
+		);
+
+		assertFalse(listeners.isEmpty());
+		RecordingListener.events.clear();
+
+		final ProcessOutput output = new ProcessOutput(log);
+		output.setListeners(listeners);
+
+		final ProcessBuilder builder = new ProcessBuilder("sh", "-c", "echo hello").redirectErrorStream(true);
+		builder.directory(new File("."));
+		output.run("sh", output.start(builder, null));
+
+		assertEquals(Arrays.asList("started sh", "output hello", "exited 0"), RecordingListener.events);
+	}
+
+	@Test
+	public void constructorExceptionsAreWrapped() {
+		try {
+			BuildListeners.load(
+				  new SystemStreamLog()
+				, getClass().getClassLoader()
+				, Collections.singletonList(ThrowingListener.class.getName())
+			);
+
+			fail("The listener constructor did not throw.");
+		} catch (MojoExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+
+	@Test
+	public void noListenersIsEmpty() throws Exception {
+		assertTrue(BuildListeners.load(new SystemStreamLog(), getClass().getClassLoader(), null).isEmpty());
+	}
+}